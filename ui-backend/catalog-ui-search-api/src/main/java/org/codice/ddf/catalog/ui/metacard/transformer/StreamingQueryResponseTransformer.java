@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.metacard.transformer;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.transform.CatalogTransformerException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query response transformer that writes its output a page of results at a time, rather than
+ * building the whole document from a complete query response. Exports served through a streaming
+ * transformer only ever hold a single page of results in memory.
+ *
+ * <p>Implementations are registered with the same {@code id} and {@code mime-type} service
+ * properties as a {@link ddf.catalog.transform.QueryResponseTransformer}.
+ *
+ * <p><b> This code is experimental. While this interface is functional and tested, it may change or
+ * be removed in a future version of the library. </b>
+ */
+public interface StreamingQueryResponseTransformer {
+
+  /** @return the mime-type of the content written by this transformer */
+  String getMimeType();
+
+  /**
+   * Returns whether an export with {@code arguments} can be written a page at a time. When it
+   * cannot, for example because its layout depends on every result, the export is built by the
+   * query response transformer with the same id instead.
+   */
+  default boolean canStream(Map<String, Serializable> arguments) {
+    return true;
+  }
+
+  /**
+   * Starts a new document on {@code output}. Any header is written before this method returns.
+   *
+   * @param output the stream to write to; it is not closed by the returned writer
+   * @param arguments the transformation arguments
+   * @return a writer that accepts the results of the export a page at a time
+   */
+  ResultPageWriter open(OutputStream output, Map<String, Serializable> arguments)
+      throws CatalogTransformerException, IOException;
+
+  /**
+   * Writes pages of results to an open document. Closing the writer completes the document, for
+   * example by writing a footer, and flushes anything that is still buffered.
+   */
+  interface ResultPageWriter extends Closeable {
+
+    void write(List<Result> results) throws CatalogTransformerException, IOException;
+  }
+}
@@ -13,7 +13,10 @@
  */
 package org.codice.ddf.catalog.ui.subscription;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public interface SubscriptionsPersistentStore {
 
@@ -68,6 +71,17 @@ public interface SubscriptionsPersistentStore {
    */
   Set<String> getEmails(String id);
 
+  /**
+   * Get the sets of emails that have been associated with several IDs. Implementations should
+   * override this to look the IDs up together rather than one at a time.
+   *
+   * @param ids must be non-null and elements must be non-blank
+   * @return a non-null map from each of the IDs to its non-null set of email addresses
+   */
+  default Map<String, Set<String>> getEmails(Set<String> ids) {
+    return ids.stream().collect(Collectors.toMap(Function.identity(), this::getEmails));
+  }
+
   /**
    * Get the set of subscription ids that have been associated with an email.
    *
@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui;
+
+import com.google.common.net.HttpHeaders;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Compresses responses with the content coding that the client prefers, as given by the q-values of
+ * its {@code Accept-Encoding} header. Supports gzip and deflate at a configurable level, leaves
+ * responses smaller than the minimum size uncompressed, and reuses {@link Deflater}s across
+ * responses. The compressed form of the most recent response from each of the cached paths is kept,
+ * so that endpoints that return the same JSON to every client only compress it once.
+ */
+public class ResponseCompression {
+
+  public static final String GZIP = "gzip";
+
+  public static final String DEFLATE = "deflate";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCompression.class);
+
+  private static final List<String> SUPPORTED_ENCODINGS = Arrays.asList(GZIP, DEFLATE);
+
+  private static final Set<String> CACHED_PATHS =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("/config", "/metacardtype")));
+
+  private static final int MAX_POOLED_DEFLATERS = 16;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final byte[] GZIP_HEADER = {
+    0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private final BlockingQueue<Deflater> gzipDeflaters =
+      new ArrayBlockingQueue<>(MAX_POOLED_DEFLATERS);
+
+  private final BlockingQueue<Deflater> deflateDeflaters =
+      new ArrayBlockingQueue<>(MAX_POOLED_DEFLATERS);
+
+  private final Map<String, CompressedBody> compressedBodies = new ConcurrentHashMap<>();
+
+  private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  private volatile int minimumCompressionSize = 1024;
+
+  /**
+   * @return the content coding to send a response in, or {@code null} if compression is disabled
+   *     or the client does not accept a supported coding
+   */
+  @Nullable
+  public String getContentEncoding(@Nullable String acceptEncoding) {
+    return compressionLevel == Deflater.NO_COMPRESSION ? null : negotiate(acceptEncoding);
+  }
+
+  /**
+   * @param acceptEncoding the value of the {@code Accept-Encoding} header
+   * @return the supported content coding with the highest q-value, preferring gzip when they are
+   *     equal, or {@code null} if the response should not be compressed
+   */
+  @Nullable
+  public static String negotiate(@Nullable String acceptEncoding) {
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return null;
+    }
+
+    Map<String, Double> qValues = new HashMap<>();
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parameters = coding.split(";");
+      String name = parameters[0].trim().toLowerCase();
+      if (name.isEmpty()) {
+        continue;
+      }
+      qValues.put("x-gzip".equals(name) ? GZIP : name, qValue(parameters));
+    }
+
+    String encoding = null;
+    double best = 0;
+    for (String supported : SUPPORTED_ENCODINGS) {
+      double q = qValues.getOrDefault(supported, qValues.getOrDefault("*", 0.0));
+      if (q > best) {
+        encoding = supported;
+        best = q;
+      }
+    }
+    return encoding;
+  }
+
+  private static double qValue(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i].trim();
+      if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Compresses the body of a buffered Spark response and writes it, committing the response. Does
+   * nothing if the response has no body, is already committed or encoded, or is below the minimum
+   * size.
+   */
+  public void compress(Request request, Response response) throws IOException {
+    HttpServletResponse raw = response.raw();
+    String body = response.body();
+    if (body == null || raw.isCommitted() || raw.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+      return;
+    }
+
+    byte[] content = body.getBytes(StandardCharsets.UTF_8);
+    if (content.length < minimumCompressionSize) {
+      return;
+    }
+
+    raw.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    String encoding = getContentEncoding(request.headers(HttpHeaders.ACCEPT_ENCODING));
+    if (encoding == null) {
+      return;
+    }
+
+    byte[] compressed;
+    String path = request.pathInfo();
+    if (path != null && CACHED_PATHS.contains(path)) {
+      compressed = compressCached(path + " " + encoding, body, content, encoding);
+    } else {
+      compressed = compress(content, encoding);
+    }
+
+    if (raw.getContentType() == null) {
+      raw.setContentType("text/html; charset=utf-8");
+    }
+    raw.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+    raw.setContentLength(compressed.length);
+    raw.getOutputStream().write(compressed);
+    // Committing the response keeps Spark from writing the uncompressed body
+    raw.flushBuffer();
+  }
+
+  private byte[] compressCached(String key, String body, byte[] content, String encoding) {
+    CompressedBody cached = compressedBodies.get(key);
+    if (cached != null && cached.body.equals(body)) {
+      return cached.compressed;
+    }
+
+    byte[] compressed = compress(content, encoding);
+    compressedBodies.put(key, new CompressedBody(body, compressed));
+    return compressed;
+  }
+
+  /** @return {@code content} compressed with {@code encoding}, which must be gzip or deflate */
+  public byte[] compress(byte[] content, String encoding) {
+    boolean gzip = GZIP.equals(encoding);
+    BlockingQueue<Deflater> pool = gzip ? gzipDeflaters : deflateDeflaters;
+    Deflater deflater = pool.poll();
+    if (deflater == null) {
+      deflater = new Deflater(compressionLevel, gzip);
+    } else {
+      deflater.setLevel(compressionLevel);
+    }
+
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 4 + 32);
+      if (gzip) {
+        output.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+      }
+
+      deflater.setInput(content);
+      deflater.finish();
+      byte[] buffer = new byte[Math.min(BUFFER_SIZE, content.length + 64)];
+      while (!deflater.finished()) {
+        int length = deflater.deflate(buffer);
+        output.write(buffer, 0, length);
+      }
+
+      if (gzip) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        writeIntLittleEndian(output, (int) crc.getValue());
+        writeIntLittleEndian(output, content.length);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.reset();
+      if (!pool.offer(deflater)) {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Wraps a stream whose length is not known ahead of time. Writes are compressed as they are
+   * flushed, so callers can flush to send what has been written so far.
+   */
+  public OutputStream wrap(OutputStream output, String encoding) throws IOException {
+    int level = compressionLevel;
+    if (GZIP.equals(encoding)) {
+      return new GZIPOutputStream(output, BUFFER_SIZE, true) {
+        {
+          def.setLevel(level);
+        }
+      };
+    }
+    return new DeflaterOutputStream(output, new Deflater(level), BUFFER_SIZE, true) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        def.end();
+      }
+    };
+  }
+
+  private static void writeIntLittleEndian(ByteArrayOutputStream output, int value) {
+    output.write(value & 0xff);
+    output.write((value >> 8) & 0xff);
+    output.write((value >> 16) & 0xff);
+    output.write((value >> 24) & 0xff);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setCompressionLevel(int compressionLevel) {
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+        || compressionLevel > Deflater.BEST_COMPRESSION) {
+      LOGGER.debug("Ignoring invalid compression level {}", compressionLevel);
+      return;
+    }
+    this.compressionLevel = compressionLevel;
+    compressedBodies.clear();
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setMinimumCompressionSize(int minimumCompressionSize) {
+    this.minimumCompressionSize = Math.max(0, minimumCompressionSize);
+  }
+
+  private static class CompressedBody {
+
+    private final String body;
+
+    private final byte[] compressed;
+
+    private CompressedBody(String body, byte[] compressed) {
+      this.body = body;
+      this.compressed = compressed;
+    }
+  }
+}
@@ -94,6 +94,8 @@ public class SparkServlet extends HttpServlet {
 
   private MatcherFilter matcherFilter;
 
+  private ResponseCompression responseCompression = new ResponseCompression();
+
   public synchronized void setRequestSupplier(
       BiFunction<HttpServletRequest, String, HttpServletRequestWrapper> requestSupplier) {
     this.requestSupplier = requestSupplier;
@@ -107,6 +109,10 @@ public class SparkServlet extends HttpServlet {
     this.filterMappingPattern = filterMappingPattern;
   }
 
+  public void setResponseCompression(ResponseCompression responseCompression) {
+    this.responseCompression = responseCompression;
+  }
+
   @Override
   public void init(ServletConfig config) throws ServletException {
     super.init(config);
@@ -122,24 +128,7 @@ public class SparkServlet extends HttpServlet {
         new MatcherFilter(
             ServletRoutes.get(), StaticFilesConfiguration.servletInstance, false, false);
 
-    after(
-        (request, response) -> {
-          if (response.raw().containsHeader("Content-Encoding")) {
-            return;
-          }
-
-          String acceptEncoding = request.headers("Accept-Encoding");
-
-          boolean shouldGzip =
-              StringUtils.isNotBlank(acceptEncoding)
-                  && acceptEncoding.toLowerCase().contains("gzip");
-
-          if (!shouldGzip) {
-            return;
-          }
-
-          response.header("Content-Encoding", "gzip");
-        });
+    after(responseCompression::compress);
   }
 
   @Override
@@ -27,8 +27,11 @@ import com.google.gson.GsonBuilder;
 import ddf.catalog.configuration.HistorianConfiguration;
 import ddf.platform.resource.bundle.locator.ResourceBundleLocator;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -42,12 +45,16 @@ import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.apache.commons.collections.Factory;
 import org.apache.commons.collections.MapUtils;
+import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.StringUtils;
 import org.codice.ddf.branding.BrandingPlugin;
 import org.codice.ddf.catalog.ui.alias.AttributeAliases;
+import org.codice.ddf.catalog.ui.util.JsonSnapshot;
 import org.codice.ddf.platform.util.uuidgenerator.UuidGenerator;
 import org.codice.gsonsupport.GsonTypeAdapters.LongDoubleTypeAdapter;
 import org.codice.proxy.http.HttpProxyService;
@@ -250,6 +257,15 @@ public class ConfigurationApplication implements SparkApplication {
 
   private volatile Map<String, String> i18n = Collections.emptyMap();
 
+  /**
+   * Invalidated once per configuration update by {@link #refresh(Map)}, and by the setters of the
+   * services this application is given. Also rebuilt periodically, since the config includes the
+   * state of services such as branding and attribute aliases that do not notify this application
+   * when they change.
+   */
+  private final JsonSnapshot<Map<String, Object>> configSnapshot =
+      new JsonSnapshot<>(this::getConfig, GSON::toJson, TimeUnit.MINUTES.toMillis(1));
+
   public void setI18n(ResourceBundleLocator resourceBundleLocator) {
     try {
       ResourceBundle resourceBundle = resourceBundleLocator.getBundle(INTRIGUE_BASE_NAME);
@@ -275,11 +291,13 @@ public class ConfigurationApplication implements SparkApplication {
           Locale.getDefault(),
           e);
     }
+    configSnapshot.invalidate();
   }
 
   @VisibleForTesting
   void setI18n(Map<String, String> i18n) {
     this.i18n = i18n;
+    configSnapshot.invalidate();
   }
 
   @VisibleForTesting
@@ -293,6 +311,7 @@ public class ConfigurationApplication implements SparkApplication {
 
   public void setEditorAttributes(Set<String> editorAttributes) {
     this.editorAttributes = editorAttributes;
+    configSnapshot.invalidate();
   }
 
   public Set<String> getRequiredAttributes() {
@@ -507,6 +526,75 @@ public class ConfigurationApplication implements SparkApplication {
     }
   }
 
+  /** Discards the cached config, so that it is rebuilt the next time it is requested. */
+  public void invalidateConfig() {
+    configSnapshot.invalidate();
+  }
+
+  /**
+   * Applies an update of one of the application's configurations through its setters, as blueprint
+   * does for the initial configuration, and then invalidates the cached config once so that it is
+   * rebuilt from the new values. Called by blueprint.
+   */
+  public void refresh(Map<String, Object> properties) {
+    if (properties != null) {
+      properties.forEach(this::setProperty);
+    }
+    invalidateConfig();
+  }
+
+  /**
+   * Calls the setter of a configuration property with its value. Arrays and collections are passed
+   * to setters that take a list, and strings are converted for setters that take a boolean or a
+   * number.
+   */
+  private void setProperty(String name, Object value) {
+    if (StringUtils.isEmpty(name) || value == null) {
+      return;
+    }
+    String setterName = "set" + StringUtils.capitalize(name);
+    for (Method method : getClass().getMethods()) {
+      if (method.getName().equals(setterName) && method.getParameterCount() == 1) {
+        Class<?> type = ClassUtils.primitiveToWrapper(method.getParameterTypes()[0]);
+        Object argument = convert(value, type);
+        if (argument != null) {
+          try {
+            method.invoke(this, argument);
+          } catch (IllegalAccessException | InvocationTargetException e) {
+            LOGGER.debug("Unable to set configuration property {}", name, e);
+          }
+          return;
+        }
+      }
+    }
+    LOGGER.trace("Ignoring configuration property {}", name);
+  }
+
+  @Nullable
+  private static Object convert(Object value, Class<?> type) {
+    if (type.isInstance(value)) {
+      return value;
+    } else if (type.isAssignableFrom(List.class) && value instanceof Object[]) {
+      return new ArrayList<>(Arrays.asList((Object[]) value));
+    } else if (type.isAssignableFrom(List.class) && value instanceof Collection) {
+      return new ArrayList<>((Collection<?>) value);
+    } else if (value instanceof String) {
+      String string = ((String) value).trim();
+      try {
+        if (type == Boolean.class) {
+          return Boolean.valueOf(string);
+        } else if (type == Integer.class) {
+          return Integer.valueOf(string);
+        } else if (type == Long.class) {
+          return Long.valueOf(string);
+        }
+      } catch (NumberFormatException e) {
+        LOGGER.debug("Unable to convert configuration value {} to {}", string, type, e);
+      }
+    }
+    return null;
+  }
+
   public Map<String, Object> getConfig() {
     Map<String, Object> config = new HashMap<>();
 
@@ -591,7 +679,7 @@ public class ConfigurationApplication implements SparkApplication {
 
   @Override
   public void init() {
-    get("/config", (req, res) -> this.getConfig(), GSON::toJson);
+    get("/config", configSnapshot::serve);
 
     exception(
         Exception.class,
@@ -627,6 +715,7 @@ public class ConfigurationApplication implements SparkApplication {
 
   public void setBranding(BrandingPlugin branding) {
     this.branding = branding;
+    configSnapshot.invalidate();
   }
 
   public String getFormat() {
@@ -635,6 +724,7 @@ public class ConfigurationApplication implements SparkApplication {
 
   public void setFormat(String format) {
     this.format = format;
+    configSnapshot.invalidate();
   }
 
   public Integer getTimeout() {
@@ -872,6 +962,7 @@ public class ConfigurationApplication implements SparkApplication {
 
   public void setHttpProxy(HttpProxyService httpProxy) {
     this.httpProxy = httpProxy;
+    configSnapshot.invalidate();
   }
 
   public Integer getResultCount() {
@@ -1182,9 +1273,10 @@ public class ConfigurationApplication implements SparkApplication {
     if (historian != null) {
       LOGGER.trace("Historian provided, enabled = {}", historian.isHistoryEnabled());
       this.historianConfiguration = historian;
-      return;
+    } else {
+      LOGGER.trace("Historian was null, enabled = false");
     }
-    LOGGER.trace("Historian was null, enabled = false");
+    configSnapshot.invalidate();
   }
 
   public String getTheme() {
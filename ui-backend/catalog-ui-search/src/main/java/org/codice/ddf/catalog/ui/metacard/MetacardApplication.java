@@ -34,6 +34,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.net.HttpHeaders;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
@@ -82,11 +83,15 @@ import ddf.catalog.util.impl.ResultIterable;
 import ddf.security.SubjectIdentity;
 import ddf.security.SubjectUtils;
 import ddf.security.common.audit.SecurityLogger;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -112,6 +117,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.subject.ExecutionException;
+import org.codice.ddf.catalog.ui.ResponseCompression;
 import org.codice.ddf.catalog.ui.config.ConfigurationApplication;
 import org.codice.ddf.catalog.ui.enumeration.ExperimentalEnumerationExtractor;
 import org.codice.ddf.catalog.ui.metacard.associations.Associated;
@@ -204,6 +210,8 @@ public class MetacardApplication implements SparkApplication {
 
   private final AssociatedQueryMetacardsHandler queryMetacardsHandler;
 
+  private ResponseCompression responseCompression = new ResponseCompression();
+
   public MetacardApplication(
       CatalogFramework catalogFramework,
       FilterBuilder filterBuilder,
@@ -241,6 +249,11 @@ public class MetacardApplication implements SparkApplication {
     this.queryMetacardsHandler = queryMetacardsHandler;
   }
 
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setResponseCompression(ResponseCompression responseCompression) {
+    this.responseCompression = responseCompression;
+  }
+
   private String getSubjectEmail() {
     return SubjectUtils.getEmailAddress(SecurityUtils.getSubject());
   }
@@ -255,7 +268,7 @@ public class MetacardApplication implements SparkApplication {
 
   @Override
   public void init() {
-    get("/metacardtype", (req, res) -> util.getJson(util.getMetacardTypeMap()));
+    get("/metacardtype", util::getMetacardTypeJson);
 
     get(
         "/metacard/:id",
@@ -283,7 +296,7 @@ public class MetacardApplication implements SparkApplication {
         APPLICATION_JSON,
         (req, res) -> {
           Map<String, Object> stringObjectMap =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
           MetacardImpl metacard = new MetacardImpl();
           stringObjectMap
               .keySet()
@@ -297,7 +310,7 @@ public class MetacardApplication implements SparkApplication {
         "/metacards",
         APPLICATION_JSON,
         (req, res) -> {
-          List<String> ids = GSON.fromJson(util.safeGetBody(req), LIST_STRING);
+          List<String> ids = GSON.fromJson(util.safeGetBodyReader(req), LIST_STRING);
           List<Metacard> metacards =
               util.getMetacardsWithTagById(ids, "*")
                   .entrySet()
@@ -306,14 +319,31 @@ public class MetacardApplication implements SparkApplication {
                   .map(Result::getMetacard)
                   .collect(Collectors.toList());
 
-          return util.metacardsToJson(metacards);
+          // Written straight to the response so a few hundred metacards are not buffered twice
+          res.type(APPLICATION_JSON);
+          res.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+          String encoding =
+              responseCompression.getContentEncoding(req.headers(HttpHeaders.ACCEPT_ENCODING));
+          if (encoding != null) {
+            res.header(HttpHeaders.CONTENT_ENCODING, encoding);
+          }
+
+          OutputStream output = res.raw().getOutputStream();
+          try (Writer writer =
+              new BufferedWriter(
+                  new OutputStreamWriter(
+                      encoding != null ? responseCompression.wrap(output, encoding) : output,
+                      StandardCharsets.UTF_8))) {
+            util.writeMetacardsJson(metacards, writer);
+          }
+          return "";
         });
 
     delete(
         "/metacards",
         APPLICATION_JSON,
         (req, res) -> {
-          List<String> ids = GSON.fromJson(util.safeGetBody(req), LIST_STRING);
+          List<String> ids = GSON.fromJson(util.safeGetBodyReader(req), LIST_STRING);
           DeleteResponse deleteResponse =
               catalogFramework.delete(
                   new DeleteRequestImpl(new ArrayList<>(ids), Metacard.ID, null));
@@ -477,6 +507,42 @@ public class MetacardApplication implements SparkApplication {
         },
         util::getJson);
 
+    /*
+     * Pages through workspace summaries without transforming the workspaces. The start and count
+     * query parameters work as they do for /queries, sort_by is asc or desc, attr is the summary
+     * field to sort on and fields is a comma separated list of the summary fields to return.
+     */
+    get(
+        "/workspaces/summaries",
+        (req, res) -> {
+          WorkspaceSummaryRequest summaryRequest = new WorkspaceSummaryRequest(req, filterBuilder);
+          String email = getSubjectEmail();
+          // NOTE: the isEmpty is to guard against users with no email (such as guest).
+          Set<String> ids =
+              isEmpty(email) ? Collections.emptySet() : subscriptions.getSubscriptions(email);
+
+          QueryResponse response = catalogFramework.query(summaryRequest.getQueryRequest());
+          List<Map<String, Object>> workspaces =
+              response
+                  .getResults()
+                  .stream()
+                  .map(Result::getMetacard)
+                  .filter(Objects::nonNull)
+                  .map(metacard -> summaryRequest.summarize(metacard, ids))
+                  .collect(Collectors.toList());
+
+          return ImmutableMap.of(
+              "start",
+              summaryRequest.getStart(),
+              "count",
+              summaryRequest.getCount(),
+              "hits",
+              response.getHits(),
+              "workspaces",
+              workspaces);
+        },
+        util::getJson);
+
     get(
         "/workspaces/:id",
         (req, res) -> {
@@ -535,7 +601,7 @@ public class MetacardApplication implements SparkApplication {
         APPLICATION_JSON,
         (req, res) -> {
           Map<String, Object> incoming =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
 
           List<QueryMetacardImpl> queries =
               ((List<Map<String, Object>>)
@@ -564,7 +630,7 @@ public class MetacardApplication implements SparkApplication {
           List<String> existingQueryIds = existingWorkspace.getQueries();
 
           Map<String, Object> updatedWorkspace =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
 
           List<QueryMetacardImpl> updatedQueryMetacards =
               ((List<Map<String, Object>>)
@@ -727,7 +793,7 @@ public class MetacardApplication implements SparkApplication {
         "/annotations",
         (req, res) -> {
           Map<String, Object> incoming =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
           String workspaceId = incoming.get("workspace").toString();
           String queryId = incoming.get("parent").toString();
           String annotation = incoming.get("note").toString();
@@ -796,7 +862,7 @@ public class MetacardApplication implements SparkApplication {
         APPLICATION_JSON,
         (req, res) -> {
           Map<String, Object> incoming =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
           String noteMetacardId = req.params(":id");
           String note = incoming.get("note").toString();
           Metacard metacard;
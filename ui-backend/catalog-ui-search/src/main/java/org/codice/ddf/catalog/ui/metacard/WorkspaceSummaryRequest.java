@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.metacard;
+
+import com.google.common.collect.ImmutableMap;
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.types.Core;
+import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.filter.impl.SortByImpl;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.lang.StringUtils;
+import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceConstants;
+import org.opengis.filter.sort.SortOrder;
+import spark.Request;
+
+/**
+ * Builds the query for one page of workspace summaries and projects each workspace metacard onto
+ * the requested summary fields. Summaries are read straight from the metacard attributes, so unlike
+ * {@code GET /workspaces} no workspace is run through the workspace transformer; clients fetch the
+ * full workspace from {@code GET /workspaces/:id} when it is opened.
+ */
+public class WorkspaceSummaryRequest {
+  public static final String SUBSCRIBED = "subscribed";
+
+  private static final int MIN_START = 1;
+
+  private static final int MAX_PAGE_SIZE = 100;
+
+  private static final String START = "start";
+
+  private static final String COUNT = "count";
+
+  private static final String ATTR = "attr";
+
+  private static final String FIELDS = "fields";
+
+  private static final String ASCENDING = "asc";
+
+  private static final String SORT_BY = "sort_by";
+
+  /** Summary field names, in response order, mapped to the attribute each one is read from. */
+  private static final Map<String, String> FIELD_ATTRIBUTES =
+      ImmutableMap.<String, String>builder()
+          .put("id", Core.ID)
+          .put("title", Core.TITLE)
+          .put("owner", Core.METACARD_OWNER)
+          .put("modified", Core.MODIFIED)
+          .build();
+
+  private final FilterBuilder filterBuilder;
+
+  private final Request req;
+
+  private QueryRequest queryRequest;
+
+  private int start;
+
+  private int count;
+
+  private Set<String> fields;
+
+  public WorkspaceSummaryRequest(Request req, FilterBuilder filterBuilder) {
+    this.req = req;
+    this.filterBuilder = filterBuilder;
+    initializeQueryRequest();
+  }
+
+  private void initializeQueryRequest() {
+    this.start = Math.max(getOrDefaultParam(req, START, MIN_START), MIN_START);
+    this.count = Math.min(Math.max(getOrDefaultParam(req, COUNT, MAX_PAGE_SIZE), 0), MAX_PAGE_SIZE);
+    this.fields = getFields(req);
+
+    String attr = FIELD_ATTRIBUTES.getOrDefault(req.queryParams(ATTR), Core.MODIFIED);
+
+    queryRequest =
+        new QueryRequestImpl(
+            new QueryImpl(
+                filterBuilder
+                    .attribute(Core.METACARD_TAGS)
+                    .is()
+                    .equalTo()
+                    .text(WorkspaceConstants.WORKSPACE_TAG),
+                start,
+                count,
+                new SortByImpl(attr, getSortOrder(req)),
+                true,
+                TimeUnit.SECONDS.toMillis(10)),
+            false);
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public QueryRequest getQueryRequest() {
+    return queryRequest;
+  }
+
+  /**
+   * @param metacard a workspace metacard
+   * @param subscriptions the ids of the workspaces the current user is subscribed to
+   * @return the requested summary fields of the workspace, with missing attributes as {@code null}
+   */
+  public Map<String, Object> summarize(Metacard metacard, Set<String> subscriptions) {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    for (String field : fields) {
+      if (SUBSCRIBED.equals(field)) {
+        summary.put(SUBSCRIBED, subscriptions.contains(metacard.getId()));
+      } else {
+        Attribute attribute = metacard.getAttribute(FIELD_ATTRIBUTES.get(field));
+        Serializable value = attribute == null ? null : attribute.getValue();
+        summary.put(field, value);
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Reads the comma separated {@code fields} parameter, ignoring unknown fields. All summary fields
+   * are returned when the parameter is missing or names no known field.
+   */
+  private static Set<String> getFields(Request request) {
+    Set<String> known = new LinkedHashSet<>(FIELD_ATTRIBUTES.keySet());
+    known.add(SUBSCRIBED);
+
+    String value = request.queryParams(FIELDS);
+    if (StringUtils.isBlank(value)) {
+      return known;
+    }
+
+    Set<String> requested =
+        Arrays.stream(value.split(","))
+            .map(String::trim)
+            .map(String::toLowerCase)
+            .collect(Collectors.toSet());
+    Set<String> fields =
+        known
+            .stream()
+            .filter(requested::contains)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    return fields.isEmpty() ? known : fields;
+  }
+
+  private static int getOrDefaultParam(Request request, String key, int defaultValue) {
+    String value = request.queryParams(key);
+
+    if (value != null) {
+      return Integer.parseInt(value);
+    }
+
+    return defaultValue;
+  }
+
+  private static SortOrder getSortOrder(Request request) {
+    String value = request.queryParams(SORT_BY);
+
+    if (ASCENDING.equals(value)) {
+      return SortOrder.ASCENDING;
+    } else {
+      return SortOrder.DESCENDING;
+    }
+  }
+}
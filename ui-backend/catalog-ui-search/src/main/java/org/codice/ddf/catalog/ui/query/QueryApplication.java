@@ -15,22 +15,47 @@ package org.codice.ddf.catalog.ui.query;
 
 import static javax.ws.rs.core.HttpHeaders.CONTENT_TYPE;
 import static spark.Spark.before;
+import static spark.Spark.delete;
 import static spark.Spark.exception;
 import static spark.Spark.get;
 import static spark.Spark.post;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import ddf.catalog.federation.FederationException;
 import ddf.catalog.plugin.OAuthPluginException;
+import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
+import org.codice.ddf.catalog.ui.ResponseCompression;
 import org.codice.ddf.catalog.ui.metacard.EntityTooLargeException;
+import org.codice.ddf.catalog.ui.query.cql.CqlQueryResponseImpl;
 import org.codice.ddf.catalog.ui.query.cql.CqlRequestImpl;
+import org.codice.ddf.catalog.ui.query.export.ByteRange;
+import org.codice.ddf.catalog.ui.query.export.ExportJob;
+import org.codice.ddf.catalog.ui.query.export.ExportJobService;
 import org.codice.ddf.catalog.ui.query.geofeature.FeatureService;
 import org.codice.ddf.catalog.ui.query.handlers.CqlTransformHandler;
 import org.codice.ddf.catalog.ui.query.suggestion.DmsCoordinateProcessor;
@@ -42,6 +67,7 @@ import org.codice.ddf.catalog.ui.query.validate.CqlValidationHandler;
 import org.codice.ddf.catalog.ui.util.CqlQueriesImpl;
 import org.codice.ddf.catalog.ui.util.EndpointUtil;
 import org.codice.ddf.catalog.ui.ws.JsonRpc;
+import org.codice.ddf.catalog.ui.ws.ProgressiveFunction;
 import org.codice.ddf.spatial.geocoding.Suggestion;
 import org.codice.gsonsupport.GsonTypeAdapters.DateLongFormatTypeAdapter;
 import org.codice.gsonsupport.GsonTypeAdapters.LongDoubleTypeAdapter;
@@ -49,6 +75,8 @@ import org.geotools.geojson.feature.FeatureJSON;
 import org.opengis.feature.simple.SimpleFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
 import spark.servlet.SparkApplication;
 
 public class QueryApplication implements SparkApplication, Function {
@@ -73,6 +101,15 @@ public class QueryApplication implements SparkApplication, Function {
 
   private static final String URL_KEY = "url";
 
+  private static final String BYTES = "bytes";
+
+  private static final String EXPORT_JOB_PATH = "/cql/export/:jobId";
+
+  private static final String EXPORT_NOT_FOUND = "Export not found";
+
+  private static final Type CQL_REQUEST_LIST_TYPE =
+      new TypeToken<List<CqlRequestImpl>>() {}.getType();
+
   private final LatLonCoordinateProcessor latLonCoordinateProcessor;
 
   private final DmsCoordinateProcessor dmsCoordinateProcessor;
@@ -91,6 +128,16 @@ public class QueryApplication implements SparkApplication, Function {
 
   private CqlQueriesImpl cqlQueryUtil;
 
+  private ExportJobService exportJobService;
+
+  private ResponseCompression responseCompression = new ResponseCompression();
+
+  private boolean streamingResponses = false;
+
+  private int maxHitCountBatchSize = 100;
+
+  private int maxQueryBatchSize = 50;
+
   public QueryApplication(
       CqlTransformHandler cqlTransformHandler,
       CqlValidationHandler cqlValidationHandler,
@@ -115,7 +162,11 @@ public class QueryApplication implements SparkApplication, Function {
         APPLICATION_JSON,
         (req, res) -> {
           try {
-            CqlRequestImpl cqlRequest = GSON.fromJson(util.safeGetBody(req), CqlRequestImpl.class);
+            CqlRequestImpl cqlRequest =
+                GSON.fromJson(util.safeGetBodyReader(req), CqlRequestImpl.class);
+            if (streamingResponses) {
+              return streamCqlQuery(cqlRequest, res);
+            }
             CqlQueryResponse cqlQueryResponse = cqlQueryUtil.executeCqlQuery(cqlRequest);
             return GSON.toJson(cqlQueryResponse);
           } catch (OAuthPluginException e) {
@@ -124,8 +175,91 @@ public class QueryApplication implements SparkApplication, Function {
           }
         });
 
+    post(
+        "/cql/batch",
+        APPLICATION_JSON,
+        (req, res) -> {
+          List<CqlRequestImpl> cqlRequests =
+              GSON.fromJson(util.safeGetBodyReader(req), CQL_REQUEST_LIST_TYPE);
+          if (cqlRequests == null || cqlRequests.isEmpty()) {
+            res.status(400);
+            return GSON.toJson(ImmutableMap.of(MESSAGE, "No query requests were provided"));
+          }
+          if (cqlRequests.size() > maxQueryBatchSize) {
+            res.status(400);
+            return GSON.toJson(
+                ImmutableMap.of(
+                    MESSAGE,
+                    String.format(
+                        "At most %d query requests may be sent at once", maxQueryBatchSize)));
+          }
+          return streamCqlQueries(req, res, cqlRequests);
+        });
+
+    post(
+        "/cql/count",
+        APPLICATION_JSON,
+        (req, res) -> {
+          List<CqlRequestImpl> cqlRequests =
+              GSON.fromJson(util.safeGetBodyReader(req), CQL_REQUEST_LIST_TYPE);
+          if (cqlRequests == null || cqlRequests.isEmpty()) {
+            res.status(400);
+            return GSON.toJson(ImmutableMap.of(MESSAGE, "No count requests were provided"));
+          }
+          if (cqlRequests.size() > maxHitCountBatchSize) {
+            res.status(400);
+            return GSON.toJson(
+                ImmutableMap.of(
+                    MESSAGE,
+                    String.format(
+                        "At most %d count requests may be sent at once", maxHitCountBatchSize)));
+          }
+          return GSON.toJson(cqlQueryUtil.executeHitCountQueries(cqlRequests));
+        });
+
     post("/cql/transform/:transformerId", cqlTransformHandler, GSON::toJson);
 
+    post(
+        "/cql/transform/:transformerId/jobs",
+        (req, res) -> {
+          ExportJob job;
+          try {
+            job = exportJobService.submit(req.params(":transformerId"), util.safeGetBody(req));
+          } catch (IllegalArgumentException e) {
+            res.status(404);
+            return GSON.toJson(ImmutableMap.of(MESSAGE, "Service not found"));
+          } catch (RejectedExecutionException e) {
+            res.status(503);
+            return GSON.toJson(ImmutableMap.of(MESSAGE, "Too many exports are queued"));
+          }
+          res.status(202);
+          return GSON.toJson(job);
+        });
+
+    get(
+        EXPORT_JOB_PATH,
+        (req, res) -> {
+          ExportJob job = exportJobService.getJob(req.params(":jobId"));
+          if (job == null) {
+            res.status(404);
+            return GSON.toJson(ImmutableMap.of(MESSAGE, EXPORT_NOT_FOUND));
+          }
+          return GSON.toJson(job);
+        });
+
+    delete(
+        EXPORT_JOB_PATH,
+        (req, res) -> {
+          if (!exportJobService.cancel(req.params(":jobId"))) {
+            res.status(404);
+            return GSON.toJson(ImmutableMap.of(MESSAGE, EXPORT_NOT_FOUND));
+          }
+          res.status(204);
+          return "";
+        });
+
+    get(EXPORT_JOB_PATH + "/download", this::downloadExport);
+
     post("/cql/validator/:validatorId", cqlValidationHandler, GSON::toJson);
 
     get(
@@ -179,8 +313,201 @@ public class QueryApplication implements SparkApplication, Function {
         });
   }
 
+  private String streamCqlQuery(CqlRequestImpl cqlRequest, Response res)
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException,
+          IOException {
+    long allocatedAtStart = currentThreadAllocatedBytes();
+    CqlQueryResponseImpl cqlQueryResponse = cqlQueryUtil.executeStreamingCqlQuery(cqlRequest);
+
+    OutputStream outputStream = res.raw().getOutputStream();
+    JsonWriter writer =
+        GSON.newJsonWriter(
+            new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+    try {
+      cqlQueryResponse.writeTo(
+          GSON,
+          writer,
+          () -> {
+            long allocated = currentThreadAllocatedBytes() - allocatedAtStart;
+            LOGGER.debug(
+                "Query {} completed in {} ms, allocating {} bytes",
+                cqlQueryResponse.getId(),
+                cqlQueryResponse.getStatus().getElapsed(),
+                allocated);
+            return allocated;
+          });
+      writer.close();
+    } catch (IOException | RuntimeException e) {
+      if (!res.raw().isCommitted()) {
+        res.raw().resetBuffer();
+        throw e;
+      }
+      // The status and part of the body have already been sent, so the exception handler can no
+      // longer turn this into an error response. Ending the stream leaves the client with JSON that
+      // does not parse rather than a response that looks complete.
+      LOGGER.error("Unable to write the results of query {}", cqlQueryResponse.getId(), e);
+      outputStream.close();
+    }
+
+    return "";
+  }
+
+  /**
+   * Writes the responses to a batch of queries as a JSON array, in the order the queries complete.
+   * Each response is flushed as soon as it is written so clients can render it before the slower
+   * queries in the batch finish.
+   */
+  private String streamCqlQueries(Request req, Response res, List<CqlRequestImpl> cqlRequests)
+      throws IOException {
+    res.type(APPLICATION_JSON);
+    res.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    String encoding =
+        responseCompression.getContentEncoding(req.headers(HttpHeaders.ACCEPT_ENCODING));
+    if (encoding != null) {
+      res.header(HttpHeaders.CONTENT_ENCODING, encoding);
+    }
+
+    OutputStream outputStream = res.raw().getOutputStream();
+    JsonWriter writer =
+        GSON.newJsonWriter(
+            new BufferedWriter(
+                new OutputStreamWriter(
+                    encoding != null
+                        ? responseCompression.wrap(outputStream, encoding)
+                        : outputStream,
+                    StandardCharsets.UTF_8)));
+    try {
+      writer.beginArray();
+      cqlQueryUtil.executeCqlQueries(
+          cqlRequests,
+          cqlQueryResponse -> {
+            try {
+              GSON.toJson(cqlQueryResponse, cqlQueryResponse.getClass(), writer);
+              writer.flush();
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+      writer.endArray();
+      writer.close();
+    } catch (IOException | RuntimeException e) {
+      if (!res.raw().isCommitted()) {
+        res.raw().resetBuffer();
+        if (encoding != null) {
+          // The exception handler's response is not compressed
+          res.raw().setHeader(HttpHeaders.CONTENT_ENCODING, null);
+        }
+        if (e instanceof UncheckedIOException) {
+          throw ((UncheckedIOException) e).getCause();
+        }
+        throw e;
+      }
+      // As with a single query, the responses already sent cannot be turned into an error response.
+      // Ending the stream without closing the array leaves JSON that does not parse.
+      LOGGER.error("Unable to write the results of a batch of {} queries", cqlRequests.size(), e);
+      outputStream.close();
+    }
+
+    return "";
+  }
+
+  /**
+   * Serves a complete export, or the single byte range of it requested in the {@code Range} header,
+   * so that an interrupted download can be resumed.
+   */
+  private String downloadExport(Request req, Response res) throws IOException {
+    ExportJob job = exportJobService.getJob(req.params(":jobId"));
+    Path file = job == null ? null : exportJobService.getFile(job);
+    if (file == null) {
+      res.status(404);
+      return GSON.toJson(ImmutableMap.of(MESSAGE, EXPORT_NOT_FOUND));
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long length = channel.size();
+      ByteRange range = ByteRange.parse(req.headers(HttpHeaders.RANGE), length);
+
+      res.header(HttpHeaders.ACCEPT_RANGES, BYTES);
+      res.header(
+          HttpHeaders.CONTENT_DISPOSITION,
+          String.format("attachment;filename=\"%s\"", job.getFileName()));
+      if (range != null && !range.isSatisfiable()) {
+        res.status(416);
+        res.header(HttpHeaders.CONTENT_RANGE, range.getContentRange());
+        return "";
+      }
+
+      long position = range == null ? 0 : range.getStart();
+      long remaining = range == null ? length : range.getLength();
+      if (range != null) {
+        res.status(206);
+        res.header(HttpHeaders.CONTENT_RANGE, range.getContentRange());
+      } else {
+        res.status(200);
+      }
+      res.type(job.getMimeType());
+      res.raw().setContentLengthLong(remaining);
+
+      try (WritableByteChannel output = Channels.newChannel(res.raw().getOutputStream())) {
+        while (remaining > 0) {
+          long transferred = channel.transferTo(position, remaining, output);
+          if (transferred <= 0) {
+            break;
+          }
+          position += transferred;
+          remaining -= transferred;
+        }
+      }
+    }
+
+    return "";
+  }
+
+  /** @return bytes allocated by the current thread so far, or 0 if the JVM cannot report it */
+  private static long currentThreadAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      long allocated =
+          ((com.sun.management.ThreadMXBean) threadMXBean)
+              .getThreadAllocatedBytes(Thread.currentThread().getId());
+      return Math.max(allocated, 0);
+    }
+    return 0;
+  }
+
   @Override
   public Object apply(Object req) {
+    return executeJsonRpcQuery(req, cqlQueryUtil::executeCqlQuery);
+  }
+
+  /**
+   * @return a JSON-RPC method that queries each requested source separately, sending each source's
+   *     response as a progress notification as soon as it arrives and then the merged response
+   */
+  public ProgressiveFunction getProgressiveQuery() {
+    return (req, progress) ->
+        executeJsonRpcQuery(
+            req,
+            cqlRequest -> cqlQueryUtil.executeProgressiveCqlQuery(cqlRequest, progress::accept));
+  }
+
+  /** @return a JSON-RPC method that reports the status of an export job, given its id */
+  public Function<Object, Object> getExportStatus() {
+    return req -> {
+      if (!(req instanceof List) || ((List) req).size() != 1) {
+        return JsonRpc.invalidParams("must pass exactly 1 parameter", req);
+      }
+
+      Object param = ((List) req).get(0);
+      ExportJob job = param instanceof String ? exportJobService.getJob((String) param) : null;
+      if (job == null) {
+        return JsonRpc.error(404, EXPORT_NOT_FOUND);
+      }
+      return job;
+    };
+  }
+
+  private Object executeJsonRpcQuery(Object req, JsonRpcQuery query) {
     if (!(req instanceof List)) {
       return JsonRpc.invalidParams("parameters not a list", req);
     }
@@ -206,7 +533,7 @@ public class QueryApplication implements SparkApplication, Function {
     }
 
     try {
-      return cqlQueryUtil.executeCqlQuery(cqlRequest);
+      return query.execute(cqlRequest);
     } catch (OAuthPluginException e) {
       return JsonRpc.error(
           e.getErrorType().getStatusCode(),
@@ -234,4 +561,29 @@ public class QueryApplication implements SparkApplication, Function {
   public void setCqlQueryUtil(CqlQueriesImpl cqlQueryUtil) {
     this.cqlQueryUtil = cqlQueryUtil;
   }
+
+  public void setExportJobService(ExportJobService exportJobService) {
+    this.exportJobService = exportJobService;
+  }
+
+  public void setResponseCompression(ResponseCompression responseCompression) {
+    this.responseCompression = responseCompression;
+  }
+
+  public void setStreamingResponses(boolean streamingResponses) {
+    this.streamingResponses = streamingResponses;
+  }
+
+  public void setMaxHitCountBatchSize(int maxHitCountBatchSize) {
+    this.maxHitCountBatchSize = maxHitCountBatchSize;
+  }
+
+  public void setMaxQueryBatchSize(int maxQueryBatchSize) {
+    this.maxQueryBatchSize = maxQueryBatchSize;
+  }
+
+  @FunctionalInterface
+  private interface JsonRpcQuery {
+    CqlQueryResponse execute(CqlRequestImpl cqlRequest) throws Exception;
+  }
 }
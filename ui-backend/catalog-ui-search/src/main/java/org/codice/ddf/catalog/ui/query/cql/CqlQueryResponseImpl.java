@@ -15,8 +15,11 @@ package org.codice.ddf.catalog.ui.query.cql;
 
 import static ddf.catalog.Constants.EXPERIMENTAL_FACET_RESULTS_KEY;
 
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import ddf.action.ActionRegistry;
-import ddf.catalog.data.AttributeDescriptor;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.Result;
@@ -28,22 +31,23 @@ import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.source.UnsupportedQueryException;
 import ddf.catalog.source.solr.SolrMetacardClientImpl;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 import org.codice.ddf.catalog.ui.query.delegate.SearchTerm;
+import org.codice.ddf.catalog.ui.query.delegate.SearchTermMatcher;
 import org.codice.ddf.catalog.ui.query.delegate.SearchTermsDelegate;
 import org.codice.ddf.catalog.ui.query.utility.CqlQueryResponse;
 import org.codice.ddf.catalog.ui.query.utility.CqlResult;
 import org.codice.ddf.catalog.ui.query.utility.MetacardAttribute;
 import org.codice.ddf.catalog.ui.query.utility.Status;
-import org.codice.ddf.catalog.ui.security.LogSanitizer;
 import org.codice.ddf.catalog.ui.transformer.TransformerDescriptors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +58,9 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
 
   private static final SearchTermsDelegate SEARCH_TERMS_DELEGATE = new SearchTermsDelegate();
 
-  private final List<CqlResult> results;
+  private static final int STREAMING_BATCH_SIZE = 100;
+
+  private List<CqlResult> results;
 
   private final String id;
 
@@ -71,6 +77,10 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
   // Transient so as not to be serialized to/from JSON
   private final transient QueryResponse queryResponse;
 
+  private final transient Function<Result, CqlResult> resultTransform;
+
+  private final transient ResultTransformExecutor transformExecutor;
+
   public CqlQueryResponseImpl(
       String id,
       QueryRequest request,
@@ -81,19 +91,48 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
       FilterAdapter filterAdapter,
       ActionRegistry actionRegistry,
       TransformerDescriptors descriptors) {
+    this(
+        id,
+        request,
+        queryResponse,
+        source,
+        elapsedTime,
+        normalize,
+        filterAdapter,
+        actionRegistry,
+        descriptors,
+        new MetacardAttributeCache(),
+        ResultTransformExecutor.sequential(),
+        false);
+  }
+
+  /**
+   * @param metacardAttributeCache supplies the attributes of each metacard type in the response
+   * @param transformExecutor runs the per-result transform, possibly in parallel
+   * @param deferResults when true the per-result transform is not run up front; results are
+   *     produced one at a time by {@link #writeTo(Gson, JsonWriter, LongSupplier)} or on the first
+   *     call to {@link #getResults()}
+   */
+  public CqlQueryResponseImpl(
+      String id,
+      QueryRequest request,
+      QueryResponse queryResponse,
+      String source,
+      long elapsedTime,
+      boolean normalize,
+      FilterAdapter filterAdapter,
+      ActionRegistry actionRegistry,
+      TransformerDescriptors descriptors,
+      MetacardAttributeCache metacardAttributeCache,
+      ResultTransformExecutor transformExecutor,
+      boolean deferResults) {
     this.id = id;
 
     this.queryResponse = queryResponse;
 
-    status = new StatusImpl(queryResponse, source, elapsedTime);
+    this.transformExecutor = transformExecutor;
 
-    AtomicBoolean logOnceState = new AtomicBoolean(false);
-    Consumer<String> logOnce =
-        (str) -> {
-          if (logOnceState.compareAndSet(false, true)) {
-            LOGGER.debug(str);
-          }
-        };
+    status = new StatusImpl(queryResponse, source, elapsedTime);
 
     types =
         queryResponse
@@ -108,43 +147,25 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
             .collect(
                 Collectors.toMap(
                     MetacardType::getName,
-                    mt ->
-                        mt.getAttributeDescriptors()
-                            .stream()
-                            .collect(
-                                Collectors.toMap(
-                                    AttributeDescriptor::getName,
-                                    MetacardAttributeImpl::new,
-                                    (ad1, ad2) -> {
-                                      logOnce.accept(
-                                          "Removed duplicate attribute descriptor(s). For more information:\n"
-                                              + "(log:set trace org.codice.ddf.catalog.ui.query.cql)");
-                                      LOGGER.trace(
-                                          "Removed duplicate attribute descriptor.({})",
-                                          LogSanitizer.sanitize(ad1));
-                                      return ad1;
-                                    })),
+                    metacardAttributeCache::getAttributes,
                     (mt1, mt2) -> {
                       LOGGER.debug("Removed duplicate metacard type.");
                       return mt1;
                     }));
 
-    final Set<SearchTerm> searchTerms = extractSearchTerms(request.getQuery(), filterAdapter);
-    results =
-        queryResponse
-            .getResults()
-            .stream()
-            .map(
-                result ->
-                    new CqlResultImpl(
-                        result,
-                        searchTerms,
-                        queryResponse.getRequest(),
-                        normalize,
-                        filterAdapter,
-                        actionRegistry))
-            .map(cqlResult -> new CqlResultImpl(cqlResult, descriptors))
-            .collect(Collectors.toList());
+    final SearchTermMatcher searchTermMatcher =
+        new SearchTermMatcher(extractSearchTerms(request.getQuery(), filterAdapter));
+    final SpatialQueryContext spatialQueryContext =
+        SpatialQueryContext.create(queryResponse.getRequest().getQuery(), filterAdapter);
+    resultTransform =
+        result ->
+            new CqlResultImpl(
+                new CqlResultImpl(
+                    result, searchTermMatcher, spatialQueryContext, normalize, actionRegistry),
+                descriptors);
+    if (!deferResults) {
+      results = transformResults();
+    }
 
     this.facets = getFacetResults(queryResponse.getPropertyValue(EXPERIMENTAL_FACET_RESULTS_KEY));
     this.didYouMeanFields =
@@ -156,6 +177,63 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
         (Boolean) queryResponse.getProperties().get(SolrMetacardClientImpl.SPELLCHECK_KEY);
   }
 
+  private List<CqlResult> transformResults() {
+    return transformExecutor.transform(queryResponse.getResults(), resultTransform);
+  }
+
+  /**
+   * Writes this response with the same JSON shape Gson would produce for it, transforming and
+   * writing results a batch at a time so the full result list never has to be held in memory.
+   *
+   * @param allocatedBytes reports the bytes allocated while serving the request; written to the
+   *     status as {@code allocated} once all results have been written
+   */
+  public void writeTo(Gson gson, JsonWriter writer, LongSupplier allocatedBytes)
+      throws IOException {
+    writer.beginObject();
+
+    writer.name("results").beginArray();
+    if (results != null) {
+      for (CqlResult result : results) {
+        gson.toJson(result, result.getClass(), writer);
+      }
+    } else {
+      for (List<Result> batch :
+          Lists.partition(queryResponse.getResults(), STREAMING_BATCH_SIZE)) {
+        for (CqlResult cqlResult : transformExecutor.transform(batch, resultTransform)) {
+          gson.toJson(cqlResult, cqlResult.getClass(), writer);
+        }
+      }
+    }
+    writer.endArray();
+
+    writeField(gson, writer, "id", id);
+    writeField(gson, writer, "types", types);
+
+    JsonObject statusJson = gson.toJsonTree(status).getAsJsonObject();
+    statusJson.addProperty("allocated", allocatedBytes.getAsLong());
+    writer.name("status");
+    gson.toJson(statusJson, writer);
+
+    writeField(gson, writer, "facets", facets);
+    writeField(gson, writer, "showingResultsForFields", showingResultsForFields);
+    writeField(gson, writer, "didYouMeanFields", didYouMeanFields);
+    writeField(gson, writer, "userSpellcheckIsOn", userSpellcheckIsOn);
+
+    writer.endObject();
+    writer.flush();
+  }
+
+  private static void writeField(Gson gson, JsonWriter writer, String name, Object value)
+      throws IOException {
+    writer.name(name);
+    if (value == null) {
+      writer.nullValue();
+    } else {
+      gson.toJson(value, value.getClass(), writer);
+    }
+  }
+
   private Map<String, List<FacetValueCount>> getFacetResults(Serializable facetResults) {
     if (!(facetResults instanceof List)) return Collections.emptyMap();
     List<Object> list = (List<Object>) facetResults;
@@ -176,7 +254,7 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
     } catch (UnsupportedQueryException e) {
       LOGGER.debug("Unable to parse search terms", e);
     }
-    return searchTerms;
+    return searchTerms == null ? Collections.emptySet() : searchTerms;
   }
 
   public QueryResponse getQueryResponse() {
@@ -184,6 +262,9 @@ public class CqlQueryResponseImpl implements CqlQueryResponse {
   }
 
   public List<CqlResult> getResults() {
+    if (results == null) {
+      results = transformResults();
+    }
     return results;
   }
 
@@ -28,7 +28,9 @@ import ddf.catalog.operation.impl.FacetedQueryRequest;
 import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
 import ddf.catalog.operation.impl.TermFacetPropertiesImpl;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -106,6 +108,35 @@ public class CqlRequestImpl implements CqlRequest {
 
   private boolean excludeUnnecessaryAttributes = true;
 
+  public CqlRequestImpl() {}
+
+  /** Creates a copy of {@code other} that can be changed without affecting it. */
+  public CqlRequestImpl(CqlRequestImpl other) {
+    this.id = other.id;
+    this.src = other.src;
+    this.srcs = other.srcs == null ? null : new ArrayList<>(other.srcs);
+    this.timeout = other.timeout;
+    this.start = other.start;
+    this.count = other.count;
+    this.cql = other.cql;
+    this.queryType = other.queryType;
+    this.batchId = other.batchId;
+    this.spellcheck = other.spellcheck;
+    this.phonetics = other.phonetics;
+    this.cacheId = other.cacheId;
+    this.sorts =
+        other.sorts == null
+            ? null
+            : other
+                .sorts
+                .stream()
+                .map(sort -> new Sort(sort.getAttribute(), sort.getDirection()))
+                .collect(Collectors.toList());
+    this.facets = other.facets == null ? null : new LinkedHashSet<>(other.facets);
+    this.normalize = other.normalize;
+    this.excludeUnnecessaryAttributes = other.excludeUnnecessaryAttributes;
+  }
+
   public List<String> getSrcs() {
     return srcs;
   }
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+/** The number of hits for a count-only query, as returned by the {@code /cql/count} endpoint. */
+public class HitCount {
+
+  private final String id;
+
+  private final String source;
+
+  private final long hits;
+
+  private final long elapsed;
+
+  private final boolean successful;
+
+  public HitCount(String id, String source, long hits, long elapsed, boolean successful) {
+    this.id = id;
+    this.source = source;
+    this.hits = hits;
+    this.elapsed = elapsed;
+    this.successful = successful;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getElapsed() {
+    return elapsed;
+  }
+
+  public boolean isSuccessful() {
+    return successful;
+  }
+}
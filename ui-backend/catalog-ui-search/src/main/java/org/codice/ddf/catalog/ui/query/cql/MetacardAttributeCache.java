@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.MetacardType;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.codice.ddf.catalog.ui.query.utility.MetacardAttribute;
+import org.codice.ddf.catalog.ui.security.LogSanitizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the {@code MetacardAttribute} maps returned in the {@code types} of query responses, keyed
+ * by metacard type name. Entries are rebuilt when a result carries a type with the same name but
+ * different descriptors, and evicted when a {@code MetacardType} service with that name is
+ * registered or removed.
+ *
+ * <p>Type instances that have already been matched to an entry are remembered by identity, so most
+ * lookups do not compare descriptors. The hit and rebuild counts are registered as an MBean.
+ */
+public class MetacardAttributeCache implements MetacardAttributeCacheMBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetacardAttributeCache.class);
+
+  private static final String OBJECT_NAME =
+      "org.codice.ddf.catalog.ui.query.cql:type=MetacardAttributeCache";
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /** Weak keys are compared by identity, and entries go away with their type instances. */
+  private final Cache<MetacardType, Entry> entriesByType =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong rebuilds = new AtomicLong();
+
+  private final AtomicBoolean duplicateLogged = new AtomicBoolean(false);
+
+  /** @return an unmodifiable map of attribute name to attribute for the given type */
+  public Map<String, MetacardAttribute> getAttributes(MetacardType metacardType) {
+    Entry entry = entriesByType.getIfPresent(metacardType);
+    if (entry != null) {
+      hits.incrementAndGet();
+      return entry.attributes;
+    }
+
+    entry = entries.get(metacardType.getName());
+    if (entry != null && entry.isFor(metacardType)) {
+      entriesByType.put(metacardType, entry);
+      hits.incrementAndGet();
+      return entry.attributes;
+    }
+
+    entry = new Entry(metacardType, buildAttributes(metacardType));
+    entries.put(metacardType.getName(), entry);
+    entriesByType.put(metacardType, entry);
+    long rebuildCount = rebuilds.incrementAndGet();
+    LOGGER.debug(
+        "Built attributes for metacard type {} (hits={}, rebuilds={})",
+        LogSanitizer.sanitize(metacardType.getName()),
+        hits.get(),
+        rebuildCount);
+    return entry.attributes;
+  }
+
+  private Map<String, MetacardAttribute> buildAttributes(MetacardType metacardType) {
+    return Collections.unmodifiableMap(
+        metacardType
+            .getAttributeDescriptors()
+            .stream()
+            .collect(
+                Collectors.toMap(
+                    AttributeDescriptor::getName,
+                    MetacardAttributeImpl::new,
+                    (ad1, ad2) -> {
+                      if (duplicateLogged.compareAndSet(false, true)) {
+                        LOGGER.debug(
+                            "Removed duplicate attribute descriptor(s). For more information:\n"
+                                + "(log:set trace org.codice.ddf.catalog.ui.query.cql)");
+                      }
+                      LOGGER.trace(
+                          "Removed duplicate attribute descriptor.({})",
+                          LogSanitizer.sanitize(ad1));
+                      return ad1;
+                    })));
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @Override
+  public long getRebuildCount() {
+    return rebuilds.get();
+  }
+
+  /** Registers the cache's counters with the platform MBean server. Called by blueprint. */
+  public void init() {
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (!mBeanServer.isRegistered(objectName)) {
+        mBeanServer.registerMBean(this, objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.info("Unable to register the metacard attribute cache MBean", e);
+    }
+  }
+
+  /** Unregisters the cache's MBean. Called by blueprint. */
+  public void destroy() {
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (mBeanServer.isRegistered(objectName)) {
+        mBeanServer.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.debug("Unable to unregister the metacard attribute cache MBean", e);
+    }
+  }
+
+  /**
+   * Evicts the cached attributes for a newly registered {@code MetacardType}. Called by blueprint
+   * when a {@code MetacardType} service is registered.
+   */
+  public void bind(MetacardType metacardType) {
+    evict(metacardType);
+  }
+
+  /**
+   * Evicts the cached attributes for a removed {@code MetacardType}. Called by blueprint when a
+   * {@code MetacardType} service is removed.
+   */
+  public void unbind(MetacardType metacardType) {
+    evict(metacardType);
+  }
+
+  private void evict(MetacardType metacardType) {
+    if (metacardType != null && metacardType.getName() != null) {
+      LOGGER.trace("Evicting cached attributes for metacard type {}", metacardType.getName());
+      entries.remove(metacardType.getName());
+      entriesByType
+          .asMap()
+          .keySet()
+          .removeIf(cachedType -> Objects.equals(cachedType.getName(), metacardType.getName()));
+    }
+  }
+
+  private static class Entry {
+    private final MetacardType metacardType;
+
+    private final Map<String, MetacardAttribute> attributes;
+
+    private Entry(MetacardType metacardType, Map<String, MetacardAttribute> attributes) {
+      this.metacardType = metacardType;
+      this.attributes = attributes;
+    }
+
+    private boolean isFor(MetacardType other) {
+      return metacardType == other
+          || Objects.equals(
+              metacardType.getAttributeDescriptors(), other.getAttributeDescriptors());
+    }
+  }
+}
@@ -0,0 +1,482 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import static ddf.catalog.Constants.ADDITIONAL_SORT_BYS;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.Update;
+import ddf.catalog.operation.UpdateResponse;
+import ddf.catalog.operation.impl.QueryResponseImpl;
+import ddf.catalog.plugin.PostIngestPlugin;
+import ddf.security.SubjectUtils;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.codice.ddf.catalog.ui.query.utility.CqlRequest;
+import org.codice.ddf.catalog.ui.security.Constants;
+import org.geotools.filter.text.ecql.ECQL;
+import org.opengis.filter.sort.SortBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the results of CQL queries so that paging back and forth through, or re-requesting, the
+ * same query does not go back to the {@code CatalogFramework} and its federated sources.
+ *
+ * <p>Entries are keyed by the normalized CQL, sources, sorts, page, facets and the name and roles
+ * of the subject running the query, so results are never shared between users. Entries expire after
+ * a fixed time, are bounded by the total number of cached results, and are invalidated when a
+ * metacard they contain is updated or deleted, or when a metacard is created in a source they
+ * queried. Every ingest also starts a new generation, and a response from a query that started in
+ * an earlier generation is not cached, since it may have been read before the ingest.
+ *
+ * <p>The cache's statistics are registered as an MBean by the instance that blueprint creates.
+ */
+public class QueryResultCache implements PostIngestPlugin, QueryResultCacheMBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueryResultCache.class);
+
+  private static final String OBJECT_NAME =
+      "org.codice.ddf.catalog.ui.query.cql:type=QueryResultCache";
+
+  private static final long DEFAULT_TTL_SECONDS = 60;
+
+  private static final long DEFAULT_MAX_RESULTS = 10_000;
+
+  private final AtomicLong cachedResults = new AtomicLong();
+
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile boolean enabled = false;
+
+  private long ttlSeconds = DEFAULT_TTL_SECONDS;
+
+  private long maxResults = DEFAULT_MAX_RESULTS;
+
+  private volatile Cache<List<Object>, Entry> cache = createCache();
+
+  private final List<QueryResultCache> dependentCaches = new CopyOnWriteArrayList<>();
+
+  /**
+   * @return the key to cache the given request under, or {@code null} if caching is disabled or
+   *     there is no subject to scope the entry to
+   */
+  @Nullable
+  public List<Object> createKey(CqlRequest cqlRequest, QueryRequest request) {
+    if (!enabled) {
+      return null;
+    }
+
+    List<Object> subjectKey = getSubjectKey();
+    if (subjectKey == null) {
+      return null;
+    }
+
+    return Arrays.asList(
+        subjectKey,
+        normalizeCql(cqlRequest.getCql()),
+        request.isEnterprise(),
+        request.getSourceIds() == null ? null : new TreeSet<>(request.getSourceIds()),
+        request.getQuery().getStartIndex(),
+        request.getQuery().getPageSize(),
+        sortKey(request),
+        new TreeSet<>(cqlRequest.getFacets()),
+        request.getPropertyValue("mode"),
+        request.getPropertyValue("excludeAttributes"),
+        request.getPropertyValue("spellcheck"),
+        request.getPropertyValue("phonetics"));
+  }
+
+  /**
+   * @return a response for {@code request} built from the cached entry for {@code key}, or {@code
+   *     null} if there is none
+   */
+  @Nullable
+  public QueryResponse get(@Nullable List<Object> key, QueryRequest request) {
+    if (key == null) {
+      return null;
+    }
+
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return null;
+    }
+
+    LOGGER.debug("Serving {} cached results. {}", entry.results.size(), this);
+    return new QueryResponseImpl(
+        request, new ArrayList<>(entry.results), true, entry.hits, new HashMap<>(entry.properties));
+  }
+
+  /**
+   * @return the current generation, which callers read before running a query and pass to {@link
+   *     #put(List, long, QueryResponse, Collection)} with its response
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Caches {@code response} under {@code key}. Responses that reported processing problems are not
+   * cached, since they may be missing results from a source that was briefly unavailable.
+   */
+  public void put(
+      @Nullable List<Object> key,
+      QueryResponse response,
+      Collection<QueryResponse> sourceResponses) {
+    put(key, generation.get(), response, sourceResponses);
+  }
+
+  /**
+   * Caches {@code response} under {@code key} unless there has been an ingest since {@code
+   * queryGeneration}, the generation read before the query was run.
+   */
+  public void put(
+      @Nullable List<Object> key,
+      long queryGeneration,
+      QueryResponse response,
+      Collection<QueryResponse> sourceResponses) {
+    if (key == null
+        || queryGeneration != generation.get()
+        || sourceResponses
+            .stream()
+            .filter(Objects::nonNull)
+            .map(QueryResponse::getProcessingDetails)
+            .anyMatch(details -> details != null && !details.isEmpty())) {
+      return;
+    }
+
+    Entry entry = new Entry(response);
+    cachedResults.addAndGet(entry.results.size());
+    cache.put(key, entry);
+    // An ingest that started after the check above may have missed this entry
+    if (queryGeneration != generation.get()) {
+      cache.invalidate(key);
+    }
+  }
+
+  /**
+   * Registers a cache that is not itself a {@code PostIngestPlugin}, so that its entries are
+   * invalidated by the same ingests as this cache's.
+   */
+  public void addDependentCache(QueryResultCache dependentCache) {
+    dependentCaches.add(dependentCache);
+  }
+
+  @Override
+  public CreateResponse process(CreateResponse input) {
+    dependentCaches.forEach(dependentCache -> dependentCache.process(input));
+    generation.incrementAndGet();
+    if (cache.size() == 0) {
+      return input;
+    }
+
+    Set<String> sourceIds =
+        input
+            .getCreatedMetacards()
+            .stream()
+            .filter(Objects::nonNull)
+            .map(Metacard::getSourceId)
+            .collect(Collectors.toSet());
+    if (sourceIds.isEmpty()) {
+      return input;
+    }
+
+    List<List<Object>> keys =
+        cache
+            .asMap()
+            .entrySet()
+            .stream()
+            .filter(e -> e.getValue().couldContainFrom(sourceIds))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    if (!keys.isEmpty()) {
+      cache.invalidateAll(keys);
+      LOGGER.debug("Invalidated {} cached queries after create. {}", keys.size(), this);
+    }
+    return input;
+  }
+
+  @Override
+  public UpdateResponse process(UpdateResponse input) {
+    dependentCaches.forEach(dependentCache -> dependentCache.process(input));
+    invalidate(input.getUpdatedMetacards().stream().map(Update::getNewMetacard));
+    return input;
+  }
+
+  @Override
+  public DeleteResponse process(DeleteResponse input) {
+    dependentCaches.forEach(dependentCache -> dependentCache.process(input));
+    invalidate(input.getDeletedMetacards().stream());
+    return input;
+  }
+
+  private void invalidate(Stream<Metacard> metacards) {
+    generation.incrementAndGet();
+    if (cache.size() == 0) {
+      return;
+    }
+
+    Set<String> ids =
+        metacards.filter(Objects::nonNull).map(Metacard::getId).collect(Collectors.toSet());
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    List<List<Object>> keys =
+        cache
+            .asMap()
+            .entrySet()
+            .stream()
+            .filter(e -> !Collections.disjoint(e.getValue().ids, ids))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    if (!keys.isEmpty()) {
+      cache.invalidateAll(keys);
+      LOGGER.debug("Invalidated {} cached queries after ingest. {}", keys.size(), this);
+    }
+  }
+
+  /** @return the name and roles of the current subject, or {@code null} if there is none */
+  @Nullable
+  protected List<Object> getSubjectKey() {
+    Subject subject = ThreadContext.getSubject();
+    if (subject == null) {
+      return null;
+    }
+
+    return Arrays.asList(
+        SubjectUtils.getName(subject),
+        new TreeSet<>(SubjectUtils.getAttribute(subject, Constants.ROLES_CLAIM_URI)));
+  }
+
+  private static String normalizeCql(String cql) {
+    try {
+      return ECQL.toCQL(ECQL.toFilter(cql));
+    } catch (Exception e) {
+      return cql;
+    }
+  }
+
+  private static List<String> sortKey(QueryRequest request) {
+    List<SortBy> sortBys = new ArrayList<>();
+    sortBys.add(request.getQuery().getSortBy());
+    Serializable additionalSorts = request.getPropertyValue(ADDITIONAL_SORT_BYS);
+    if (additionalSorts instanceof SortBy[]) {
+      sortBys.addAll(Arrays.asList((SortBy[]) additionalSorts));
+    }
+    return sortBys
+        .stream()
+        .filter(Objects::nonNull)
+        .map(
+            sortBy ->
+                (sortBy.getPropertyName() == null ? "" : sortBy.getPropertyName().getPropertyName())
+                    + " "
+                    + sortBy.getSortOrder())
+        .collect(Collectors.toList());
+  }
+
+  private Cache<List<Object>, Entry> createCache() {
+    return CacheBuilder.newBuilder()
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .maximumWeight(maxResults)
+        .weigher((List<Object> key, Entry entry) -> Math.max(1, entry.results.size()))
+        .removalListener(this::onRemoval)
+        .recordStats()
+        .build();
+  }
+
+  private void onRemoval(RemovalNotification<List<Object>, Entry> notification) {
+    Entry entry = notification.getValue();
+    if (entry != null) {
+      cachedResults.addAndGet(-entry.results.size());
+    }
+  }
+
+  private void rebuild() {
+    Cache<List<Object>, Entry> old = cache;
+    cache = createCache();
+    old.invalidateAll();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  @Override
+  public double getHitRate() {
+    return getStats().hitRate();
+  }
+
+  @Override
+  public long getHitCount() {
+    return getStats().hitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return getStats().missCount();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return getStats().evictionCount();
+  }
+
+  @Override
+  public long getCachedQueryCount() {
+    return cache.size();
+  }
+
+  /** @return the number of results currently held, which is what bounds the cache's memory use */
+  @Override
+  public long getCachedResultCount() {
+    return cachedResults.get();
+  }
+
+  /** Registers the cache's statistics with the platform MBean server. Called by blueprint. */
+  public void init() {
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (!mBeanServer.isRegistered(objectName)) {
+        mBeanServer.registerMBean(this, objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.info("Unable to register the query result cache MBean", e);
+    }
+  }
+
+  /** Unregisters the cache's MBean. Called by blueprint. */
+  public void destroy() {
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (mBeanServer.isRegistered(objectName)) {
+        mBeanServer.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.debug("Unable to unregister the query result cache MBean", e);
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setResultCacheEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      cache.invalidateAll();
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setResultCacheTtlSeconds(long ttlSeconds) {
+    if (ttlSeconds != this.ttlSeconds) {
+      this.ttlSeconds = Math.max(0, ttlSeconds);
+      rebuild();
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setResultCacheMaxResults(long maxResults) {
+    if (maxResults != this.maxResults) {
+      this.maxResults = Math.max(0, maxResults);
+      rebuild();
+    }
+  }
+
+  @Override
+  public String toString() {
+    CacheStats stats = getStats();
+    return String.format(
+        "QueryResultCache{entries=%d, results=%d, hitRate=%.2f, evictions=%d}",
+        cache.size(), cachedResults.get(), stats.hitRate(), stats.evictionCount());
+  }
+
+  private static class Entry {
+
+    private final List<Result> results;
+
+    private final long hits;
+
+    private final Map<String, Serializable> properties;
+
+    private final Set<String> ids;
+
+    private final boolean enterprise;
+
+    private final Set<String> sourceIds;
+
+    private Entry(QueryResponse response) {
+      this.results = Collections.unmodifiableList(new ArrayList<>(response.getResults()));
+      this.hits = response.getHits();
+      this.properties = new HashMap<>(response.getProperties());
+      this.ids =
+          results
+              .stream()
+              .map(Result::getMetacard)
+              .filter(Objects::nonNull)
+              .map(Metacard::getId)
+              .filter(Objects::nonNull)
+              .collect(Collectors.toSet());
+      QueryRequest request = response.getRequest();
+      this.enterprise = request == null || request.isEnterprise();
+      this.sourceIds =
+          request == null || request.getSourceIds() == null
+              ? Collections.emptySet()
+              : new HashSet<>(request.getSourceIds());
+    }
+
+    /**
+     * @return whether a metacard created in one of {@code createdSourceIds} could match the query,
+     *     which is the case unless the query was limited to other sources. A {@code null} source
+     *     id matches every query.
+     */
+    private boolean couldContainFrom(Set<String> createdSourceIds) {
+      return enterprise
+          || sourceIds.isEmpty()
+          || createdSourceIds.contains(null)
+          || !Collections.disjoint(sourceIds, createdSourceIds);
+    }
+  }
+}
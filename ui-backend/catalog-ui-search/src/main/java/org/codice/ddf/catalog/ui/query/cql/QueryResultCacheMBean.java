@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+/** Statistics of the {@link QueryResultCache}, exposed over JMX. */
+public interface QueryResultCacheMBean {
+
+  /** @return the fraction of lookups that were served from the cache */
+  double getHitRate();
+
+  /** @return the number of lookups that were served from the cache */
+  long getHitCount();
+
+  /** @return the number of lookups that were not in the cache */
+  long getMissCount();
+
+  /** @return the number of queries evicted because of the size limit or expiration */
+  long getEvictionCount();
+
+  /** @return the number of cached queries */
+  long getCachedQueryCount();
+
+  /** @return the number of results held across all cached queries */
+  long getCachedResultCount();
+}
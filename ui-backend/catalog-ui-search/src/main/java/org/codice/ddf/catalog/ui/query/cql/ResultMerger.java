@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import static ddf.catalog.Constants.ADDITIONAL_SORT_BYS;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.operation.QueryRequest;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * Merges the results returned by several sources into a single page, ordered by the sorts of the
+ * original request. Each source is expected to have returned its first {@code start + count - 1}
+ * results so that the merged page is the same one a federated query would have returned.
+ */
+public class ResultMerger {
+
+  private ResultMerger() {}
+
+  public static List<Result> merge(
+      Collection<List<Result>> sourceResults, QueryRequest request, int start, int count) {
+    List<Result> merged = new ArrayList<>();
+    sourceResults.forEach(merged::addAll);
+    merged.sort(comparator(request));
+
+    int from = Math.min(Math.max(start - 1, 0), merged.size());
+    int to = Math.min(from + Math.max(count, 0), merged.size());
+    return new ArrayList<>(merged.subList(from, to));
+  }
+
+  static Comparator<Result> comparator(QueryRequest request) {
+    List<SortBy> sortBys = new ArrayList<>();
+    sortBys.add(request.getQuery().getSortBy());
+    Serializable additionalSorts = request.getPropertyValue(ADDITIONAL_SORT_BYS);
+    if (additionalSorts instanceof SortBy[]) {
+      sortBys.addAll(Arrays.asList((SortBy[]) additionalSorts));
+    }
+
+    return sortBys
+        .stream()
+        .filter(Objects::nonNull)
+        .filter(sortBy -> sortBy.getPropertyName() != null)
+        .map(ResultMerger::sortComparator)
+        .reduce(Comparator::thenComparing)
+        .orElse((r1, r2) -> 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Comparator<Result> sortComparator(SortBy sortBy) {
+    String property = sortBy.getPropertyName().getPropertyName();
+    Function<Result, Comparable> key;
+    if (Result.RELEVANCE.equals(property)) {
+      key = Result::getRelevanceScore;
+    } else if (Result.DISTANCE.equals(property)) {
+      key = Result::getDistanceInMeters;
+    } else if (Result.TEMPORAL.equals(property)) {
+      key = result -> attributeValue(result, Metacard.EFFECTIVE);
+    } else {
+      key = result -> attributeValue(result, property);
+    }
+
+    Comparator<Comparable> order = ResultMerger::compareValues;
+    if (SortOrder.DESCENDING.equals(sortBy.getSortOrder())) {
+      order = order.reversed();
+    }
+    return Comparator.comparing(key, Comparator.nullsLast(order));
+  }
+
+  /**
+   * Compares values by their natural order. Sources may return values of different types for the
+   * same attribute, so numbers of different types are compared by value, and values that are not
+   * comparable with each other are ordered by type and then by their string form.
+   */
+  @SuppressWarnings("unchecked")
+  private static int compareValues(Comparable value1, Comparable value2) {
+    if (value1 instanceof Number
+        && value2 instanceof Number
+        && !value1.getClass().equals(value2.getClass())) {
+      return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+    }
+    try {
+      return value1.compareTo(value2);
+    } catch (ClassCastException e) {
+      int byType = value1.getClass().getName().compareTo(value2.getClass().getName());
+      return byType != 0 ? byType : value1.toString().compareTo(value2.toString());
+    }
+  }
+
+  private static Comparable attributeValue(Result result, String attributeName) {
+    if (result.getMetacard() == null) {
+      return null;
+    }
+    Attribute attribute = result.getMetacard().getAttribute(attributeName);
+    if (attribute == null || !(attribute.getValue() instanceof Comparable)) {
+      return null;
+    }
+    return (Comparable) attribute.getValue();
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.QueryResponse;
+import ddf.security.SubjectUtils;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.codice.ddf.catalog.ui.query.utility.CqlRequest;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads ahead the page after the one a user was just served and holds it briefly in a buffer scoped
+ * to that user, so that moving to the next page does not wait on the catalog. Prefetches run in the
+ * background as the requesting subject and are skipped, rather than queued, once either the overall
+ * or the per-user limit on concurrent prefetches is reached. Buffered pages are invalidated by
+ * ingest in the same way as the entries of a {@link QueryResultCache}.
+ */
+public class ResultPagePrefetcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultPagePrefetcher.class);
+
+  private static final int DEFAULT_MAX_CONCURRENT_PREFETCHES = 8;
+
+  private static final int DEFAULT_MAX_CONCURRENT_PREFETCHES_PER_USER = 2;
+
+  private static final long DEFAULT_TTL_SECONDS = 30;
+
+  private static final long MAX_BUFFERED_RESULTS = 5_000;
+
+  private final ThreadPoolExecutor executor =
+      new ThreadPoolExecutor(
+          DEFAULT_MAX_CONCURRENT_PREFETCHES,
+          DEFAULT_MAX_CONCURRENT_PREFETCHES,
+          60L,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          StandardThreadFactoryBuilder.newThreadFactory("cqlPagePrefetchThread"));
+
+  private final QueryResultCache buffer = new QueryResultCache();
+
+  private final Map<String, Integer> userPrefetches = new ConcurrentHashMap<>();
+
+  private volatile boolean enabled = false;
+
+  private volatile Semaphore prefetchPermits = new Semaphore(DEFAULT_MAX_CONCURRENT_PREFETCHES);
+
+  private volatile int maxConcurrentPrefetchesPerUser = DEFAULT_MAX_CONCURRENT_PREFETCHES_PER_USER;
+
+  public ResultPagePrefetcher() {
+    buffer.setResultCacheEnabled(true);
+    buffer.setResultCacheTtlSeconds(DEFAULT_TTL_SECONDS);
+    buffer.setResultCacheMaxResults(MAX_BUFFERED_RESULTS);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Invalidates buffered pages along with the entries of {@code cache}, which receives the
+   * catalog's ingest events.
+   */
+  public void invalidateWith(QueryResultCache cache) {
+    cache.addDependentCache(buffer);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** @return the prefetched response for {@code request}, or {@code null} if there is none */
+  @Nullable
+  public QueryResponse get(CqlRequest cqlRequest, QueryRequest request) {
+    if (!enabled) {
+      return null;
+    }
+    return buffer.get(buffer.createKey(cqlRequest, request), request);
+  }
+
+  /** @return the buffer's generation, to be read before the prefetch query is run */
+  public long getGeneration() {
+    return buffer.getGeneration();
+  }
+
+  /**
+   * Buffers a prefetched page unless there has been an ingest since {@code generation}. Called from
+   * the prefetch task, so the subject is still bound.
+   */
+  public void put(
+      CqlRequest cqlRequest,
+      QueryRequest request,
+      long generation,
+      QueryResponse response,
+      Collection<QueryResponse> sourceResponses) {
+    buffer.put(buffer.createKey(cqlRequest, request), generation, response, sourceResponses);
+  }
+
+  /**
+   * Runs {@code prefetch} in the background as the current subject.
+   *
+   * @return {@code false} if the prefetch was skipped because prefetching is disabled, there is no
+   *     subject, or a concurrency limit was reached
+   */
+  public boolean submit(Callable<?> prefetch) {
+    Subject subject = ThreadContext.getSubject();
+    if (!enabled || subject == null) {
+      return false;
+    }
+
+    String user = getUserName(subject);
+    Semaphore permits = prefetchPermits;
+    if (!permits.tryAcquire()) {
+      LOGGER.debug("Skipping page prefetch, the overall prefetch limit has been reached");
+      return false;
+    }
+    if (!acquireUserPrefetch(user)) {
+      permits.release();
+      LOGGER.debug("Skipping page prefetch, the per-user prefetch limit has been reached");
+      return false;
+    }
+
+    Callable<?> task = subject.associateWith(prefetch);
+    try {
+      executor.submit(
+          () -> {
+            try {
+              task.call();
+            } catch (Exception e) {
+              LOGGER.debug("Unable to prefetch the next page of results", e);
+            } finally {
+              releaseUserPrefetch(user);
+              permits.release();
+            }
+          });
+      return true;
+    } catch (RejectedExecutionException e) {
+      releaseUserPrefetch(user);
+      permits.release();
+      LOGGER.debug("Page prefetch pool is unavailable", e);
+      return false;
+    }
+  }
+
+  protected String getUserName(Subject subject) {
+    return SubjectUtils.getName(subject);
+  }
+
+  private boolean acquireUserPrefetch(String user) {
+    AtomicBoolean acquired = new AtomicBoolean(false);
+    userPrefetches.compute(
+        user,
+        (key, count) -> {
+          int current = count == null ? 0 : count;
+          if (current >= maxConcurrentPrefetchesPerUser) {
+            return count;
+          }
+          acquired.set(true);
+          return current + 1;
+        });
+    return acquired.get();
+  }
+
+  private void releaseUserPrefetch(String user) {
+    userPrefetches.computeIfPresent(user, (key, count) -> count <= 1 ? null : count - 1);
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+    LOGGER.debug("Setting max concurrent page prefetches : {}", maxConcurrentPrefetches);
+    this.prefetchPermits = new Semaphore(Math.max(0, maxConcurrentPrefetches));
+    int poolSize = Math.max(1, maxConcurrentPrefetches);
+    // The core size may not exceed the maximum size, so they are changed in a different order when
+    // growing and shrinking the pool
+    if (poolSize > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(poolSize);
+      executor.setCorePoolSize(poolSize);
+    } else {
+      executor.setCorePoolSize(poolSize);
+      executor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  public void setMaxConcurrentPrefetchesPerUser(int maxConcurrentPrefetchesPerUser) {
+    this.maxConcurrentPrefetchesPerUser = Math.max(0, maxConcurrentPrefetchesPerUser);
+  }
+
+  public void setTtlSeconds(long ttlSeconds) {
+    buffer.setResultCacheTtlSeconds(ttlSeconds);
+  }
+
+  public void destroy() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs per-result transforms on a bounded pool of worker threads. Lists smaller than the parallel
+ * threshold are transformed on the calling thread. Work submitted to the pool runs as the subject
+ * bound to the calling thread and results are always returned in the order of the input list.
+ */
+public class ResultTransformExecutor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultTransformExecutor.class);
+
+  /** Same as the default of the resultTransformThreads property of the query application. */
+  private static final int DEFAULT_THREAD_POOL_SIZE = 8;
+
+  private static final int DEFAULT_PARALLEL_THRESHOLD = 25;
+
+  private volatile ExecutorService executor;
+
+  private volatile int threadPoolSize;
+
+  private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+  public ResultTransformExecutor() {
+    this(DEFAULT_THREAD_POOL_SIZE);
+  }
+
+  public ResultTransformExecutor(int threadPoolSize) {
+    this.threadPoolSize = threadPoolSize;
+    this.executor = newExecutor(threadPoolSize);
+  }
+
+  /** Sequential transformer that never leaves the calling thread. */
+  public static ResultTransformExecutor sequential() {
+    return new ResultTransformExecutor(0);
+  }
+
+  public <T, R> List<R> transform(List<T> items, Function<T, R> transform) {
+    ExecutorService currentExecutor = executor;
+    if (currentExecutor == null || items.size() < parallelThreshold) {
+      return items.stream().map(transform).collect(Collectors.toList());
+    }
+
+    Subject subject = ThreadContext.getSubject();
+    List<Future<R>> futures = new ArrayList<>(items.size());
+    try {
+      for (T item : items) {
+        Callable<R> task = () -> transform.apply(item);
+        futures.add(currentExecutor.submit(subject == null ? task : subject.associateWith(task)));
+      }
+    } catch (RejectedExecutionException e) {
+      LOGGER.debug("Result transform pool is unavailable, transforming on the calling thread", e);
+      futures.forEach(future -> future.cancel(true));
+      return items.stream().map(transform).collect(Collectors.toList());
+    }
+
+    List<R> results = new ArrayList<>(items.size());
+    for (Future<R> future : futures) {
+      results.add(getResult(future));
+    }
+    return results;
+  }
+
+  private static <R> R getResult(Future<R> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while transforming results", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to transform result", e.getCause());
+    }
+  }
+
+  public int getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /** @param parallelThreshold minimum number of results before the pool is used */
+  public void setParallelThreshold(int parallelThreshold) {
+    LOGGER.debug("Setting result transform parallel threshold : {}", parallelThreshold);
+    this.parallelThreshold = Math.max(1, parallelThreshold);
+  }
+
+  /** @param threadPoolSize number of transform threads; 0 transforms on the request thread */
+  public synchronized void setThreadPoolSize(int threadPoolSize) {
+    if (threadPoolSize == this.threadPoolSize) {
+      return;
+    }
+    LOGGER.debug("Setting result transform thread pool size : {}", threadPoolSize);
+    ExecutorService previous = executor;
+    this.threadPoolSize = threadPoolSize;
+    this.executor = newExecutor(threadPoolSize);
+    if (previous != null) {
+      previous.shutdown();
+    }
+  }
+
+  public synchronized void destroy() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private static ExecutorService newExecutor(int threadPoolSize) {
+    if (threadPoolSize <= 0) {
+      return null;
+    }
+    return Executors.newFixedThreadPool(
+        threadPoolSize, StandardThreadFactoryBuilder.newThreadFactory("cqlResultTransformThread"));
+  }
+}
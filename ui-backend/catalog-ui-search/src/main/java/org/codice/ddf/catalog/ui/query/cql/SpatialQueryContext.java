@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import ddf.catalog.data.Result;
+import ddf.catalog.filter.FilterAdapter;
+import ddf.catalog.operation.Query;
+import ddf.catalog.source.UnsupportedQueryException;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.codice.ddf.catalog.ui.query.delegate.WktQueryDelegate;
+import org.locationtech.spatial4j.context.SpatialContext;
+import org.locationtech.spatial4j.context.SpatialContextFactory;
+import org.locationtech.spatial4j.context.jts.JtsSpatialContextFactory;
+import org.locationtech.spatial4j.context.jts.ValidationRule;
+import org.locationtech.spatial4j.distance.DistanceUtils;
+import org.locationtech.spatial4j.io.ShapeReader;
+import org.locationtech.spatial4j.shape.Point;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The spatial part of a query, resolved once per response. The query geometry is adapted and parsed
+ * once, and the centers of result locations are cached by WKT so the same location is only parsed
+ * once across results and requests.
+ */
+public class SpatialQueryContext {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SpatialQueryContext.class);
+
+  // For queries we use repairConvexHull which my cause false positives to be returned but this
+  // is better than potentially missing some results due to false negatives.
+  private static final Map<String, String> SPATIAL_CONTEXT_ARGUMENTS =
+      ImmutableMap.of(
+          "spatialContextFactory",
+          JtsSpatialContextFactory.class.getName(),
+          "validationRule",
+          ValidationRule.repairConvexHull.name(),
+          "allowMultiOverlap",
+          "true");
+
+  private static final SpatialContext SPATIAL_CONTEXT =
+      SpatialContextFactory.makeSpatialContext(
+          SPATIAL_CONTEXT_ARGUMENTS, SpatialQueryContext.class.getClassLoader());
+
+  private static final ShapeReader WKT_READER = SPATIAL_CONTEXT.getFormats().getWktReader();
+
+  private static final WktQueryDelegate WKT_QUERY_DELEGATE = new WktQueryDelegate();
+
+  private static final Pattern POINT_WKT =
+      Pattern.compile(
+          "\\s*POINT\\s*\\(\\s*([-+]?[0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?)\\s+"
+              + "([-+]?[0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?)\\s*\\)\\s*",
+          Pattern.CASE_INSENSITIVE);
+
+  /** Bounded by the total length of the cached WKT strings. */
+  private static final Cache<String, Point> LOCATION_CENTERS =
+      CacheBuilder.newBuilder()
+          .maximumWeight(1 << 20)
+          .weigher((String wkt, Point center) -> wkt.length())
+          .build();
+
+  private static final SpatialQueryContext NO_SPATIAL_QUERY = new SpatialQueryContext(null);
+
+  private final Point queryCenter;
+
+  private SpatialQueryContext(Point queryCenter) {
+    this.queryCenter = queryCenter;
+  }
+
+  public static SpatialQueryContext create(Query query, FilterAdapter filterAdapter) {
+    try {
+      String queryWkt = filterAdapter.adapt(query, WKT_QUERY_DELEGATE);
+      if (StringUtils.isNotBlank(queryWkt)) {
+        return new SpatialQueryContext(WKT_READER.read(queryWkt).getCenter());
+      }
+    } catch (IOException | ParseException | UnsupportedQueryException e) {
+      LOGGER.debug("Unable to parse query wkt", e);
+    }
+    return NO_SPATIAL_QUERY;
+  }
+
+  /**
+   * @return the distance in meters between the centers of the result location and the query
+   *     geometry, the distance reported by the source when either is unavailable, or null if the
+   *     distance is not a valid number of meters
+   */
+  public Double distanceInMeters(Result result) {
+    Double resultDistance = result.getDistanceInMeters();
+
+    if (queryCenter != null
+        && result.getMetacard() != null
+        && StringUtils.isNotBlank(result.getMetacard().getLocation())) {
+      try {
+        Point locationCenter = getCenter(result.getMetacard().getLocation());
+        resultDistance =
+            DistanceUtils.degrees2Dist(
+                    SPATIAL_CONTEXT.calcDistance(locationCenter, queryCenter),
+                    DistanceUtils.EARTH_MEAN_RADIUS_KM)
+                * 1000;
+      } catch (IOException | ParseException e) {
+        LOGGER.debug("Unable to parse result location wkt", e);
+      }
+    }
+
+    if (resultDistance != null && (resultDistance < 0 || resultDistance > Double.MAX_VALUE)) {
+      resultDistance = null;
+    }
+    return resultDistance;
+  }
+
+  private static Point getCenter(String wkt) throws IOException, ParseException {
+    Matcher point = POINT_WKT.matcher(wkt);
+    if (point.matches()) {
+      return SPATIAL_CONTEXT.makePoint(
+          Double.parseDouble(point.group(1)), Double.parseDouble(point.group(2)));
+    }
+
+    Point center = LOCATION_CENTERS.getIfPresent(wkt);
+    if (center == null) {
+      center = WKT_READER.read(wkt).getCenter();
+      LOCATION_CENTERS.put(wkt, center);
+    }
+    return center;
+  }
+}
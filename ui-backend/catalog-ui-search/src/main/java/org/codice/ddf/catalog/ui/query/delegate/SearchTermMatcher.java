@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.delegate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts how often a set of {@link SearchTerm}s occur in text attribute values. The terms are
+ * compiled once per query: exact and prefix ({@code abc*}) terms into a character trie and other
+ * wildcard terms into glob patterns, so values are scanned once without splitting them into token
+ * arrays or running a regular expression per token.
+ *
+ * <p>Tokens are delimited the same way as splitting each line of the value on {@code
+ * [\s\p{Punct}]+}, and the {@code *} entry of the result holds the total number of tokens seen.
+ * Characters are compared case-insensitively one at a time, so locale-specific lower casing that
+ * changes the length of a string is not applied. Only the first {@code maxScanChars} characters of
+ * each value are scanned.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ */
+public class SearchTermMatcher {
+
+  public static final int DEFAULT_MAX_SCAN_CHARS = 1 << 20;
+
+  private static final String ALL_TOKENS = "*";
+
+  private static final String PUNCTUATION = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+  private static final String REGEX_CHARACTERS = "\\^$.|?+()[]{}";
+
+  private final String[] keys;
+
+  private final Node root;
+
+  private final List<GlobTerm> globTerms = new ArrayList<>();
+
+  private final List<FallbackTerm> fallbackTerms = new ArrayList<>();
+
+  private final int maxScanChars;
+
+  public SearchTermMatcher(Collection<SearchTerm> searchTerms) {
+    this(searchTerms, DEFAULT_MAX_SCAN_CHARS);
+  }
+
+  public SearchTermMatcher(Collection<SearchTerm> searchTerms, int maxScanChars) {
+    this.maxScanChars = Math.max(1, maxScanChars);
+
+    Map<String, Integer> keyIndexes = new LinkedHashMap<>();
+    NodeBuilder rootBuilder = new NodeBuilder();
+
+    for (SearchTerm searchTerm : searchTerms) {
+      String term = searchTerm.getTerm();
+      if (ALL_TOKENS.equals(term)) {
+        continue;
+      }
+      // Duplicate terms each count a match, just as matching every term against every token does
+      int keyIndex = keyIndexes.computeIfAbsent(term, key -> keyIndexes.size());
+
+      int firstWildcard = term.indexOf('*');
+      if (containsRegexCharacter(term)) {
+        fallbackTerms.add(new FallbackTerm(searchTerm, keyIndex));
+      } else if (firstWildcard < 0) {
+        rootBuilder.descend(term).exactKeys.add(keyIndex);
+      } else if (isPrefixTerm(term, firstWildcard)) {
+        rootBuilder.descend(term.substring(0, firstWildcard)).prefixKeys.add(keyIndex);
+      } else {
+        globTerms.add(new GlobTerm(term.toCharArray(), keyIndex));
+      }
+    }
+
+    this.keys = keyIndexes.keySet().toArray(new String[0]);
+    this.root = rootBuilder.build();
+  }
+
+  /**
+   * @param values text attribute values of a single metacard
+   * @return the number of tokens matching each term that matched at least once, plus the total
+   *     number of tokens under {@code *} when there is at least one value
+   */
+  public Map<String, Integer> countMatches(List<String> values) {
+    Map<String, Integer> matches = new HashMap<>();
+    if (values.isEmpty()) {
+      return matches;
+    }
+
+    int[] counts = new int[keys.length];
+    int totalTokens = 0;
+    for (String value : values) {
+      totalTokens += scan(value, counts);
+    }
+
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        matches.put(keys[i], counts[i]);
+      }
+    }
+    matches.put(ALL_TOKENS, totalTokens);
+    return matches;
+  }
+
+  private int scan(String value, int[] counts) {
+    int limit = Math.min(value.length(), maxScanChars);
+    int tokens = 0;
+    int position = 0;
+    while (position < limit) {
+      int lineEnd = position;
+      while (lineEnd < limit && !isLineTerminator(value.charAt(lineEnd))) {
+        lineEnd++;
+      }
+      tokens += scanLine(value, position, lineEnd, counts);
+
+      position = lineEnd + 1;
+      if (lineEnd + 1 < limit
+          && value.charAt(lineEnd) == '\r'
+          && value.charAt(lineEnd + 1) == '\n') {
+        position++;
+      }
+    }
+    return tokens;
+  }
+
+  private int scanLine(String value, int start, int end, int[] counts) {
+    if (start == end) {
+      matchToken(value, start, start, counts);
+      return 1;
+    }
+
+    int tokens = 0;
+    int tokenStart = -1;
+    for (int i = start; i < end; i++) {
+      if (isDelimiter(value.charAt(i))) {
+        if (tokenStart >= 0) {
+          matchToken(value, tokenStart, i, counts);
+          tokens++;
+          tokenStart = -1;
+        }
+      } else if (tokenStart < 0) {
+        tokenStart = i;
+      }
+    }
+    if (tokenStart >= 0) {
+      matchToken(value, tokenStart, end, counts);
+      tokens++;
+    }
+
+    // Splitting a line that starts with a delimiter yields a leading empty token, unless the
+    // line holds nothing but delimiters
+    if (tokens > 0 && isDelimiter(value.charAt(start))) {
+      matchToken(value, start, start, counts);
+      tokens++;
+    }
+    return tokens;
+  }
+
+  private void matchToken(String value, int start, int end, int[] counts) {
+    Node node = root;
+    increment(node.prefixKeys, counts);
+    for (int i = start; i < end && node != null; i++) {
+      node = node.child(Character.toLowerCase(value.charAt(i)));
+      if (node != null) {
+        increment(node.prefixKeys, counts);
+      }
+    }
+    if (node != null) {
+      increment(node.exactKeys, counts);
+    }
+
+    for (GlobTerm globTerm : globTerms) {
+      if (globMatch(globTerm.pattern, value, start, end)) {
+        counts[globTerm.keyIndex]++;
+      }
+    }
+
+    if (!fallbackTerms.isEmpty()) {
+      String token = value.substring(start, end).toLowerCase();
+      for (FallbackTerm fallbackTerm : fallbackTerms) {
+        if (fallbackTerm.searchTerm.match(token)) {
+          counts[fallbackTerm.keyIndex]++;
+        }
+      }
+    }
+  }
+
+  private static void increment(int[] keyIndexes, int[] counts) {
+    for (int keyIndex : keyIndexes) {
+      counts[keyIndex]++;
+    }
+  }
+
+  /** Matches the whole token against a pattern in which {@code *} matches any run of characters. */
+  private static boolean globMatch(char[] pattern, String value, int start, int end) {
+    int p = 0;
+    int v = start;
+    int starP = -1;
+    int starV = -1;
+    while (v < end) {
+      if (p < pattern.length && pattern[p] == '*') {
+        starP = p++;
+        starV = v;
+      } else if (p < pattern.length && pattern[p] == Character.toLowerCase(value.charAt(v))) {
+        p++;
+        v++;
+      } else if (starP >= 0) {
+        p = starP + 1;
+        v = ++starV;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length && pattern[p] == '*') {
+      p++;
+    }
+    return p == pattern.length;
+  }
+
+  private static boolean isPrefixTerm(String term, int firstWildcard) {
+    for (int i = firstWildcard; i < term.length(); i++) {
+      if (term.charAt(i) != '*') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean containsRegexCharacter(String term) {
+    for (int i = 0; i < term.length(); i++) {
+      if (REGEX_CHARACTERS.indexOf(term.charAt(i)) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r';
+  }
+
+  private static boolean isDelimiter(char c) {
+    switch (c) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case 0x0B:
+      case '\f':
+      case '\r':
+        return true;
+      default:
+        return c < 0x80 && PUNCTUATION.indexOf(c) >= 0;
+    }
+  }
+
+  private static class Node {
+    private static final int[] NO_KEYS = new int[0];
+
+    private final char[] labels;
+
+    private final Node[] children;
+
+    private final int[] exactKeys;
+
+    private final int[] prefixKeys;
+
+    private Node(char[] labels, Node[] children, int[] exactKeys, int[] prefixKeys) {
+      this.labels = labels;
+      this.children = children;
+      this.exactKeys = exactKeys;
+      this.prefixKeys = prefixKeys;
+    }
+
+    private Node child(char label) {
+      int index = Arrays.binarySearch(labels, label);
+      return index >= 0 ? children[index] : null;
+    }
+
+    private static int[] toArray(List<Integer> keys) {
+      return keys.isEmpty() ? NO_KEYS : keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  private static class NodeBuilder {
+    private final TreeMap<Character, NodeBuilder> children = new TreeMap<>();
+
+    private final List<Integer> exactKeys = new ArrayList<>();
+
+    private final List<Integer> prefixKeys = new ArrayList<>();
+
+    private NodeBuilder descend(String path) {
+      NodeBuilder node = this;
+      for (int i = 0; i < path.length(); i++) {
+        node = node.children.computeIfAbsent(path.charAt(i), c -> new NodeBuilder());
+      }
+      return node;
+    }
+
+    private Node build() {
+      char[] labels = new char[children.size()];
+      Node[] nodes = new Node[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+        labels[i] = entry.getKey();
+        nodes[i] = entry.getValue().build();
+        i++;
+      }
+      return new Node(labels, nodes, Node.toArray(exactKeys), Node.toArray(prefixKeys));
+    }
+  }
+
+  private static class GlobTerm {
+    private final char[] pattern;
+
+    private final int keyIndex;
+
+    private GlobTerm(char[] pattern, int keyIndex) {
+      this.pattern = pattern;
+      this.keyIndex = keyIndex;
+    }
+  }
+
+  private static class FallbackTerm {
+    private final SearchTerm searchTerm;
+
+    private final int keyIndex;
+
+    private FallbackTerm(SearchTerm searchTerm, int keyIndex) {
+      this.searchTerm = searchTerm;
+      this.keyIndex = keyIndex;
+    }
+  }
+}
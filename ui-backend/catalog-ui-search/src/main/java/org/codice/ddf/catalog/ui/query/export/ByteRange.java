@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.export;
+
+import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A single byte range from an HTTP {@code Range} header, resolved against the length of the content
+ * being served. Requests for multiple ranges are served as the whole content, which the HTTP
+ * specification allows.
+ */
+public class ByteRange {
+
+  private static final String BYTES_UNIT = "bytes=";
+
+  private final long start;
+
+  private final long end;
+
+  private final long contentLength;
+
+  private ByteRange(long start, long end, long contentLength) {
+    this.start = start;
+    this.end = end;
+    this.contentLength = contentLength;
+  }
+
+  /**
+   * @param header the value of the {@code Range} header
+   * @param contentLength the length of the content being served
+   * @return the requested range, or {@code null} if the whole content should be served
+   */
+  @Nullable
+  public static ByteRange parse(@Nullable String header, long contentLength) {
+    if (header == null || !header.startsWith(BYTES_UNIT) || header.indexOf(',') >= 0) {
+      return null;
+    }
+
+    String spec = header.substring(BYTES_UNIT.length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+
+    String first = spec.substring(0, dash).trim();
+    String last = spec.substring(dash + 1).trim();
+    if (!StringUtils.isNumeric(first) || !StringUtils.isNumeric(last)) {
+      return null;
+    }
+
+    try {
+      if (first.isEmpty()) {
+        if (last.isEmpty()) {
+          return null;
+        }
+        long suffixLength = Math.min(Long.parseLong(last), contentLength);
+        return new ByteRange(contentLength - suffixLength, contentLength - 1, contentLength);
+      }
+
+      long start = Long.parseLong(first);
+      long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+      if (end < start) {
+        return null;
+      }
+      return new ByteRange(start, Math.min(end, contentLength - 1), contentLength);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** @return whether any of the range lies within the content */
+  public boolean isSatisfiable() {
+    return start < contentLength && start <= end;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getLength() {
+    return end - start + 1;
+  }
+
+  /** @return the value of the {@code Content-Range} header of a response serving this range */
+  public String getContentRange() {
+    return isSatisfiable()
+        ? String.format("bytes %d-%d/%d", start, end, contentLength)
+        : String.format("bytes */%d", contentLength);
+  }
+}
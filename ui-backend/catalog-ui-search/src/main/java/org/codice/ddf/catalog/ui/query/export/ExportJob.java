@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.export;
+
+import java.nio.file.Path;
+import java.util.concurrent.Future;
+
+/** The status of an asynchronous export, as reported to the user who submitted it. */
+public class ExportJob {
+
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    COMPLETE,
+    FAILED,
+    CANCELLED;
+
+    public boolean isDone() {
+      return this != QUEUED && this != RUNNING;
+    }
+  }
+
+  private final String id;
+
+  private final String transformerId;
+
+  private final long submitted;
+
+  private volatile Status status = Status.QUEUED;
+
+  private volatile long completed;
+
+  private volatile long size;
+
+  private volatile String mimeType;
+
+  private volatile String fileName;
+
+  private volatile String message;
+
+  private final transient String owner;
+
+  private transient volatile Path file;
+
+  private transient volatile Future<?> future;
+
+  public ExportJob(String id, String transformerId, String owner) {
+    this.id = id;
+    this.transformerId = transformerId;
+    this.owner = owner;
+    this.submitted = System.currentTimeMillis();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getTransformerId() {
+    return transformerId;
+  }
+
+  public long getSubmitted() {
+    return submitted;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /** @return when the export finished, or 0 if it is still queued or running */
+  public long getCompleted() {
+    return completed;
+  }
+
+  /** @return the size in bytes of the finished export */
+  public long getSize() {
+    return size;
+  }
+
+  public String getMimeType() {
+    return mimeType;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  String getOwner() {
+    return owner;
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  Future<?> getFuture() {
+    return future;
+  }
+
+  void setFuture(Future<?> future) {
+    this.future = future;
+  }
+
+  void running(Path file) {
+    this.file = file;
+    this.status = Status.RUNNING;
+  }
+
+  void complete(Path file, long size, String mimeType, String fileName) {
+    this.file = file;
+    this.size = size;
+    this.mimeType = mimeType;
+    this.fileName = fileName;
+    done(Status.COMPLETE, null);
+  }
+
+  void done(Status status, String message) {
+    this.message = message;
+    this.completed = System.currentTimeMillis();
+    this.status = status;
+  }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.export;
+
+import ddf.security.SubjectUtils;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.codice.ddf.catalog.ui.query.export.ExportJob.Status;
+import org.codice.ddf.catalog.ui.query.handlers.CqlTransformHandler;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs exports in the background on a bounded pool of workers, writing each to a file in the export
+ * directory so that it can be downloaded, and resumed, once it is complete. Jobs run as, and are
+ * only visible to, the subject that submitted them. Finished exports are removed once they are
+ * older than the retention period, and the oldest are removed first when the total size of the
+ * exports exceeds the storage limit.
+ */
+public class ExportJobService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExportJobService.class);
+
+  private static final String PARTIAL_SUFFIX = ".part";
+
+  private static final int DEFAULT_EXPORT_THREADS = 2;
+
+  private static final int MAX_QUEUED_EXPORTS = 50;
+
+  private static final long EVICTION_PERIOD_SECONDS = 60;
+
+  private final CqlTransformHandler transformHandler;
+
+  private final ThreadPoolExecutor executor =
+      new ThreadPoolExecutor(
+          DEFAULT_EXPORT_THREADS,
+          DEFAULT_EXPORT_THREADS,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<>(MAX_QUEUED_EXPORTS),
+          StandardThreadFactoryBuilder.newThreadFactory("cqlExportThread"));
+
+  private final ScheduledExecutorService evictionExecutor =
+      Executors.newSingleThreadScheduledExecutor(
+          StandardThreadFactoryBuilder.newThreadFactory("cqlExportEvictionThread"));
+
+  private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+  private volatile Path exportDirectory =
+      Paths.get(System.getProperty("java.io.tmpdir"), "catalog-ui-search-exports");
+
+  private volatile long maxExportStorageBytes = 1024L * 1024 * 1024;
+
+  private volatile long exportRetentionMillis = TimeUnit.MINUTES.toMillis(60);
+
+  public ExportJobService(CqlTransformHandler transformHandler) {
+    this.transformHandler = transformHandler;
+    evictionExecutor.scheduleWithFixedDelay(
+        this::evict, EVICTION_PERIOD_SECONDS, EVICTION_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Queues an export of the query in {@code body} as the current subject.
+   *
+   * @throws IllegalArgumentException if there is no transformer with {@code transformerId}
+   * @throws RejectedExecutionException if too many exports are already queued
+   */
+  public ExportJob submit(String transformerId, String body) {
+    if (!transformHandler.hasTransformer(transformerId)) {
+      throw new IllegalArgumentException("Service not found");
+    }
+
+    Subject subject = ThreadContext.getSubject();
+    ExportJob job = new ExportJob(UUID.randomUUID().toString(), transformerId, getOwner(subject));
+    Callable<Object> task =
+        () -> {
+          run(job, body);
+          return null;
+        };
+
+    jobs.put(job.getId(), job);
+    try {
+      job.setFuture(executor.submit(subject == null ? task : subject.associateWith(task)));
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.getId());
+      throw e;
+    }
+    return job;
+  }
+
+  /** @return the job with {@code id}, or {@code null} if the current subject did not submit it */
+  @Nullable
+  public ExportJob getJob(String id) {
+    ExportJob job = id == null ? null : jobs.get(id);
+    if (job == null || !Objects.equals(job.getOwner(), getOwner(ThreadContext.getSubject()))) {
+      return null;
+    }
+    return job;
+  }
+
+  /**
+   * @return the file of a complete export, or {@code null} if the export is not complete or has
+   *     been removed
+   */
+  @Nullable
+  public Path getFile(ExportJob job) {
+    Path file = job.getFile();
+    if (job.getStatus() != Status.COMPLETE || file == null || !Files.isRegularFile(file)) {
+      return null;
+    }
+    return file;
+  }
+
+  /**
+   * Cancels the job with {@code id} if it is still running, and removes it along with its output.
+   *
+   * @return {@code false} if the current subject has no job with {@code id}
+   */
+  public boolean cancel(String id) {
+    ExportJob job = getJob(id);
+    if (job == null) {
+      return false;
+    }
+    if (job.getFuture() != null && job.getFuture().cancel(true) && !job.getStatus().isDone()) {
+      job.done(Status.CANCELLED, null);
+    }
+    remove(job);
+    return true;
+  }
+
+  protected String getOwner(@Nullable Subject subject) {
+    return subject == null ? null : SubjectUtils.getName(subject);
+  }
+
+  private void run(ExportJob job, String body) {
+    if (job.getStatus().isDone()) {
+      return;
+    }
+
+    Path partial = exportDirectory.resolve(job.getId() + PARTIAL_SUFFIX);
+    job.running(partial);
+
+    try {
+      Files.createDirectories(exportDirectory);
+      String mimeType;
+      try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(partial))) {
+        mimeType = transformHandler.export(job.getTransformerId(), body, output);
+      }
+
+      Path file =
+          Files.move(
+              partial, exportDirectory.resolve(job.getId()), StandardCopyOption.REPLACE_EXISTING);
+      job.complete(file, Files.size(file), mimeType, transformHandler.getExportFileName(mimeType));
+      LOGGER.debug("Export {} complete", job.getId());
+    } catch (Exception e) {
+      if (Thread.currentThread().isInterrupted()) {
+        job.done(Status.CANCELLED, null);
+      } else {
+        LOGGER.debug("Export {} failed", job.getId(), e);
+        String message = e instanceof IllegalArgumentException ? e.getMessage() : "Export failed";
+        job.done(Status.FAILED, message);
+      }
+      deletePartial(partial);
+    }
+  }
+
+  private static void deletePartial(Path partial) {
+    try {
+      Files.deleteIfExists(partial);
+    } catch (IOException e) {
+      LOGGER.debug("Unable to delete partial export {}", partial, e);
+    }
+  }
+
+  /**
+   * Removes finished exports older than the retention period, then the oldest finished exports
+   * until the total size of the exports is within the storage limit.
+   */
+  void evict() {
+    long expiry = System.currentTimeMillis() - exportRetentionMillis;
+    jobs.values()
+        .stream()
+        .filter(job -> job.getStatus().isDone() && job.getCompleted() < expiry)
+        .forEach(this::remove);
+
+    List<ExportJob> complete =
+        jobs.values()
+            .stream()
+            .filter(job -> job.getStatus() == Status.COMPLETE)
+            .sorted(Comparator.comparingLong(ExportJob::getCompleted))
+            .collect(Collectors.toList());
+    long totalSize = complete.stream().mapToLong(ExportJob::getSize).sum();
+    for (ExportJob job : complete) {
+      if (totalSize <= maxExportStorageBytes) {
+        break;
+      }
+      totalSize -= job.getSize();
+      remove(job);
+    }
+  }
+
+  private void remove(ExportJob job) {
+    jobs.remove(job.getId());
+    Path file = job.getFile();
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        LOGGER.debug("Unable to delete export file {}", file, e);
+      }
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setExportThreads(int exportThreads) {
+    int threads = Math.max(1, exportThreads);
+    if (threads > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(threads);
+      executor.setCorePoolSize(threads);
+    } else {
+      executor.setCorePoolSize(threads);
+      executor.setMaximumPoolSize(threads);
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setExportDirectory(String exportDirectory) {
+    if (exportDirectory != null && !exportDirectory.trim().isEmpty()) {
+      this.exportDirectory = Paths.get(exportDirectory.trim());
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setMaxExportStorageMegabytes(long maxExportStorageMegabytes) {
+    this.maxExportStorageBytes = Math.max(0, maxExportStorageMegabytes) * 1024 * 1024;
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setExportRetentionMinutes(long exportRetentionMinutes) {
+    this.exportRetentionMillis = TimeUnit.MINUTES.toMillis(Math.max(0, exportRetentionMinutes));
+  }
+
+  public void destroy() {
+    evictionExecutor.shutdownNow();
+    executor.shutdownNow();
+    jobs.values().forEach(this::remove);
+  }
+}
@@ -17,6 +17,10 @@ import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import ddf.catalog.data.BinaryContent;
+import ddf.catalog.data.Result;
+import ddf.catalog.federation.FederationException;
+import ddf.catalog.source.SourceUnavailableException;
+import ddf.catalog.source.UnsupportedQueryException;
 import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.transform.QueryResponseTransformer;
 import java.io.IOException;
@@ -28,16 +32,19 @@ import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPOutputStream;
 import javax.ws.rs.core.HttpHeaders;
 import org.apache.commons.lang.StringUtils;
 import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
+import org.codice.ddf.catalog.ui.ResponseCompression;
 import org.codice.ddf.catalog.ui.metacard.transformer.CsvTransformImpl;
+import org.codice.ddf.catalog.ui.metacard.transformer.StreamingQueryResponseTransformer;
+import org.codice.ddf.catalog.ui.metacard.transformer.StreamingQueryResponseTransformer.ResultPageWriter;
 import org.codice.ddf.catalog.ui.query.cql.CqlRequestImpl;
 import org.codice.ddf.catalog.ui.query.utility.CqlQueryResponse;
 import org.codice.ddf.catalog.ui.util.CqlQueriesImpl;
@@ -60,7 +67,8 @@ public class CqlTransformHandler implements Route {
   public static final String TRANSFORMER_ID_PROPERTY = "id";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CqlTransformHandler.class);
-  private static final String GZIP = "gzip";
+
+  private static final int DEFAULT_EXPORT_PAGE_SIZE = 500;
 
   private static final Gson GSON =
       new GsonBuilder()
@@ -74,6 +82,10 @@ public class CqlTransformHandler implements Route {
   private List<ServiceReference> queryResponseTransformers;
   private BundleContext bundleContext;
   private CqlQueriesImpl cqlQueryUtil;
+  private List<ServiceReference> streamingQueryResponseTransformers = Collections.emptyList();
+  private boolean streamingExportsEnabled = false;
+  private int exportPageSize = DEFAULT_EXPORT_PAGE_SIZE;
+  private ResponseCompression responseCompression = new ResponseCompression();
 
   public CqlTransformHandler(
       List<ServiceReference> queryResponseTransformers,
@@ -137,69 +149,170 @@ public class CqlTransformHandler implements Route {
       return ImmutableMap.of("message", "Cql not found in request");
     }
 
-    Map<String, Serializable> arguments =
-        GSON.fromJson(body, Arguments.class).getSerializableArguments();
-
     LOGGER.trace("Finding transformer to transform query response.");
 
+    ServiceReference<StreamingQueryResponseTransformer> streamingTransformer =
+        findStreamingTransformer(transformerId, body);
     ServiceReference<QueryResponseTransformer> queryResponseTransformer =
-        queryResponseTransformers
-            .stream()
-            .filter(
-                transformer ->
-                    transformerId.equals(transformer.getProperty(TRANSFORMER_ID_PROPERTY)))
-            .findFirst()
-            .orElse(null);
+        findTransformer(queryResponseTransformers, transformerId);
 
-    if (queryResponseTransformer == null) {
+    if (queryResponseTransformer == null && streamingTransformer == null) {
       LOGGER.debug("Could not find transformer with id: {}", transformerId);
       response.status(HttpStatus.NOT_FOUND_404);
       return ImmutableMap.of("message", "Service not found");
     }
 
+    Map<String, Serializable> arguments =
+        transformArguments(
+            streamingTransformer != null ? streamingTransformer : queryResponseTransformer, body);
+
+    if (streamingTransformer != null) {
+      streamFileToResponse(request, response, streamingTransformer, cqlRequest, arguments);
+      return "";
+    }
+
     CqlQueryResponse cqlQueryResponse = cqlQueryUtil.executeCqlQuery(cqlRequest);
 
-    Object schema = queryResponseTransformer.getProperty("schema");
+    attachFileToResponse(request, response, queryResponseTransformer, cqlQueryResponse, arguments);
 
-    List<String> mimeTypeServiceProperty =
-        queryResponseTransformer.getProperty("mime-type") instanceof List
-            ? (List) queryResponseTransformer.getProperty("mime-type")
-            : Collections.emptyList();
+    return "";
+  }
 
-    if (mimeTypeServiceProperty.contains("text/csv")) {
-      arguments = csvTransformArgumentsAdapter(arguments);
-    } else if (schema != null && schema.toString().equals(CswConstants.CSW_NAMESPACE_URI)) {
-      arguments = cswTransformArgumentsAdapter();
+  /**
+   * Writes the export of the query in {@code body} to {@code output} rather than to an HTTP
+   * response, so that it can be run outside of a request.
+   *
+   * @return the mime-type of the export
+   * @throws IllegalArgumentException if the body has no cql or there is no transformer with the id
+   */
+  public String export(String transformerId, String body, OutputStream output)
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException,
+          CatalogTransformerException, IOException {
+    CqlRequestImpl cqlRequest = GSON.fromJson(body, CqlRequestImpl.class);
+    if (cqlRequest == null || cqlRequest.getCql() == null) {
+      throw new IllegalArgumentException("Cql not found in request");
     }
 
-    attachFileToResponse(request, response, queryResponseTransformer, cqlQueryResponse, arguments);
+    ServiceReference<StreamingQueryResponseTransformer> streamingTransformer =
+        findStreamingTransformer(transformerId, body);
+    if (streamingTransformer != null) {
+      StreamingQueryResponseTransformer transformer =
+          bundleContext.getService(streamingTransformer);
+      writePages(
+          transformer,
+          cqlQueryUtil.pageResults(cqlRequest, exportPageSize),
+          transformArguments(streamingTransformer, body),
+          output);
+      return transformer.getMimeType();
+    }
 
-    return "";
+    ServiceReference<QueryResponseTransformer> queryResponseTransformer =
+        findTransformer(queryResponseTransformers, transformerId);
+    if (queryResponseTransformer == null) {
+      throw new IllegalArgumentException("Service not found");
+    }
+
+    BinaryContent content =
+        bundleContext
+            .getService(queryResponseTransformer)
+            .transform(
+                cqlQueryUtil.executeCqlQuery(cqlRequest).getQueryResponse(),
+                transformArguments(queryResponseTransformer, body));
+    try (InputStream resultStream = content.getInputStream()) {
+      IOUtils.copy(resultStream, output);
+    }
+    return content.getMimeTypeValue();
+  }
+
+  /** @return whether there is a transformer that can export with {@code transformerId} */
+  public boolean hasTransformer(String transformerId) {
+    return findTransformer(queryResponseTransformers, transformerId) != null
+        || (streamingExportsEnabled
+            && findTransformer(streamingQueryResponseTransformers, transformerId) != null);
+  }
+
+  /** @return the attachment file name of an export with the given mime-type */
+  public String getExportFileName(String mimeType) throws MimeTypeException {
+    return String.format("export-%s%s", Instant.now().toString(), getFileExtFromMimeType(mimeType));
   }
 
   public List<ServiceReference> getQueryResponseTransformers() {
     return queryResponseTransformers;
   }
 
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setStreamingQueryResponseTransformers(
+      List<ServiceReference> streamingQueryResponseTransformers) {
+    this.streamingQueryResponseTransformers = streamingQueryResponseTransformers;
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setStreamingExportsEnabled(boolean streamingExportsEnabled) {
+    this.streamingExportsEnabled = streamingExportsEnabled;
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setExportPageSize(int exportPageSize) {
+    this.exportPageSize = exportPageSize > 0 ? exportPageSize : DEFAULT_EXPORT_PAGE_SIZE;
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setResponseCompression(ResponseCompression responseCompression) {
+    this.responseCompression = responseCompression;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> ServiceReference<T> findTransformer(
+      List<ServiceReference> transformers, String transformerId) {
+    return (ServiceReference<T>)
+        transformers
+            .stream()
+            .filter(
+                transformer ->
+                    transformerId.equals(transformer.getProperty(TRANSFORMER_ID_PROPERTY)))
+            .findFirst()
+            .orElse(null);
+  }
+
+  /**
+   * @return the streaming transformer with {@code transformerId}, or {@code null} if streaming
+   *     exports are disabled or the transformer cannot stream the export requested in {@code body}
+   */
+  private ServiceReference<StreamingQueryResponseTransformer> findStreamingTransformer(
+      String transformerId, String body) {
+    if (!streamingExportsEnabled) {
+      return null;
+    }
+
+    ServiceReference<StreamingQueryResponseTransformer> reference =
+        findTransformer(streamingQueryResponseTransformers, transformerId);
+    if (reference == null
+        || !bundleContext.getService(reference).canStream(transformArguments(reference, body))) {
+      return null;
+    }
+    return reference;
+  }
+
   private void setHttpHeaders(Request request, Response response, BinaryContent content)
       throws MimeTypeException {
-    String mimeType = content.getMimeTypeValue();
+    setHttpHeaders(request, response, content.getMimeTypeValue());
+  }
 
+  private void setHttpHeaders(Request request, Response response, String mimeType)
+      throws MimeTypeException {
     if (mimeType == null) {
       LOGGER.debug("Failure to fetch file extension, mime-type is empty");
       throw new IllegalArgumentException("Binary Content contains null mime-type value.");
     }
 
-    String fileExt = getFileExtFromMimeType(mimeType);
-
-    if (containsGzip(request)) {
-      LOGGER.trace("Request header accepts gzip");
-      response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+    String contentEncoding = getContentEncoding(request);
+    if (contentEncoding != null) {
+      LOGGER.trace("Request header accepts {}", contentEncoding);
+      response.header(HttpHeaders.CONTENT_ENCODING, contentEncoding);
     }
 
     response.type(mimeType);
-    String attachment =
-        String.format("attachment;filename=\"export-%s%s\"", Instant.now().toString(), fileExt);
+    String attachment = String.format("attachment;filename=\"%s\"", getExportFileName(mimeType));
     response.header(HttpHeaders.CONTENT_DISPOSITION, attachment);
   }
 
@@ -212,13 +325,14 @@ public class CqlTransformHandler implements Route {
     return fileExt;
   }
 
-  private Boolean containsGzip(Request request) {
-    String acceptEncoding = request.headers(HttpHeaders.ACCEPT_ENCODING);
-    if (acceptEncoding != null) {
-      return acceptEncoding.toLowerCase().contains(GZIP);
-    }
-    LOGGER.debug("Request header Accept-Encoding is null");
-    return false;
+  /** @return the content coding negotiated from {@code Accept-Encoding}, or {@code null} */
+  private String getContentEncoding(Request request) {
+    return responseCompression.getContentEncoding(request.headers(HttpHeaders.ACCEPT_ENCODING));
+  }
+
+  private OutputStream encode(Request request, OutputStream output) throws IOException {
+    String contentEncoding = getContentEncoding(request);
+    return contentEncoding != null ? responseCompression.wrap(output, contentEncoding) : output;
   }
 
   private void attachFileToResponse(
@@ -236,14 +350,9 @@ public class CqlTransformHandler implements Route {
     setHttpHeaders(request, response, content);
 
     try (OutputStream servletOutputStream = response.raw().getOutputStream();
+        OutputStream outputStream = encode(request, servletOutputStream);
         InputStream resultStream = content.getInputStream()) {
-      if (containsGzip(request)) {
-        try (OutputStream gzipServletOutputStream = new GZIPOutputStream(servletOutputStream)) {
-          IOUtils.copy(resultStream, gzipServletOutputStream);
-        }
-      } else {
-        IOUtils.copy(resultStream, servletOutputStream);
-      }
+      IOUtils.copy(resultStream, outputStream);
     }
 
     response.status(HttpStatus.OK_200);
@@ -253,6 +362,72 @@ public class CqlTransformHandler implements Route {
         queryResponseTransformer.getProperty("id"));
   }
 
+  /**
+   * Writes the export a page at a time, querying the catalog for each page only once the previous
+   * one has been written and flushed to the client. The download starts as soon as the first page
+   * is available, and no more than one page of results is held in memory.
+   */
+  private void streamFileToResponse(
+      Request request,
+      Response response,
+      ServiceReference<StreamingQueryResponseTransformer> transformerReference,
+      CqlRequestImpl cqlRequest,
+      Map<String, Serializable> arguments)
+      throws CatalogTransformerException, IOException, MimeTypeException {
+    StreamingQueryResponseTransformer transformer = bundleContext.getService(transformerReference);
+    Iterator<List<Result>> pages = cqlQueryUtil.pageResults(cqlRequest, exportPageSize);
+
+    // Query for the first page before the response is committed, so that a failed query is still
+    // reported as an error rather than as an empty export
+    pages.hasNext();
+
+    setHttpHeaders(request, response, transformer.getMimeType());
+    response.status(HttpStatus.OK_200);
+
+    try (OutputStream servletOutputStream = response.raw().getOutputStream();
+        OutputStream outputStream = encode(request, servletOutputStream)) {
+      writePages(transformer, pages, arguments, outputStream);
+    }
+
+    LOGGER.trace(
+        "Successfully streamed file using transformer id {}",
+        transformerReference.getProperty(TRANSFORMER_ID_PROPERTY));
+  }
+
+  private void writePages(
+      StreamingQueryResponseTransformer transformer,
+      Iterator<List<Result>> pages,
+      Map<String, Serializable> arguments,
+      OutputStream output)
+      throws CatalogTransformerException, IOException {
+    try (ResultPageWriter writer = transformer.open(output, arguments)) {
+      while (pages.hasNext()) {
+        writer.write(pages.next());
+        output.flush();
+      }
+    }
+  }
+
+  private Map<String, Serializable> transformArguments(
+      ServiceReference<?> transformer, String body) {
+    Map<String, Serializable> arguments =
+        GSON.fromJson(body, Arguments.class).getSerializableArguments();
+
+    Object schema = transformer.getProperty("schema");
+
+    List<String> mimeTypeServiceProperty =
+        transformer.getProperty("mime-type") instanceof List
+            ? (List) transformer.getProperty("mime-type")
+            : Collections.emptyList();
+
+    if (mimeTypeServiceProperty.contains("text/csv")) {
+      return csvTransformArgumentsAdapter(arguments);
+    } else if (schema != null && schema.toString().equals(CswConstants.CSW_NAMESPACE_URI)) {
+      return cswTransformArgumentsAdapter();
+    }
+    return arguments;
+  }
+
   private Map<String, Serializable> cswTransformArgumentsAdapter() {
     Map<String, Serializable> args = new HashMap<>();
     args.put(CswConstants.IS_BY_ID_QUERY, true);
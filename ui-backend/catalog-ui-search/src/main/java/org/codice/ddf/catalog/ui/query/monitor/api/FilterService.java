@@ -29,4 +29,16 @@ public interface FilterService {
   Filter buildMetacardIdFilter(String id);
 
   Filter getModifiedDateFilter(Date lastCheckDate);
+
+  /**
+   * Build a filter for metacards modified after one date and no later than another. By default only
+   * the start of the range is bounded.
+   *
+   * @param lastCheckDate exclusive start of the range
+   * @param checkDate inclusive end of the range
+   * @return filter
+   */
+  default Filter getModifiedDateFilter(Date lastCheckDate, Date checkDate) {
+    return getModifiedDateFilter(lastCheckDate);
+  }
 }
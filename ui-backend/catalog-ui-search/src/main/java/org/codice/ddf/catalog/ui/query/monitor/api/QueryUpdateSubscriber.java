@@ -13,7 +13,10 @@
  */
 package org.codice.ddf.catalog.ui.query.monitor.api;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.tuple.Pair;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
 
@@ -24,4 +27,20 @@ public interface QueryUpdateSubscriber {
    *     count (must be non-null)
    */
   void notify(Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap);
+
+  /**
+   * Notifies the subscriber like {@link #notify(Map)}, and reports which notifications have been
+   * delivered once the subscriber is done with them. Subscribers that deliver their notifications
+   * before returning from {@link #notify(Map)} need not override this method.
+   *
+   * @param workspaceMetacardMap map of workspace identifiers to workspace metacards and query hit
+   *     count (must be non-null)
+   * @return a future that completes with the identifiers of the workspaces whose notifications
+   *     were delivered
+   */
+  default CompletableFuture<Set<String>> notifyAsync(
+      Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap) {
+    notify(workspaceMetacardMap);
+    return CompletableFuture.completedFuture(new HashSet<>(workspaceMetacardMap.keySet()));
+  }
 }
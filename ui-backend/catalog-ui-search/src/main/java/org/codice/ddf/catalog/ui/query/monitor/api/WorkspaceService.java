@@ -16,6 +16,7 @@ package org.codice.ddf.catalog.ui.query.monitor.api;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.codice.ddf.catalog.ui.metacard.query.data.metacard.QueryMetacardImpl;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
@@ -53,6 +54,21 @@ public interface WorkspaceService {
    */
   Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> getQueryMetacards();
 
+  /**
+   * Pages through the subscribed workspaces and their query metacards, so that only one page is
+   * held in memory at a time. The query metacards of all of the workspaces in a page are loaded
+   * with a single query, and the next page is not loaded until the consumer returns. Workspaces are
+   * paged in id order from the subscriptions read when paging starts, so none is skipped or loaded
+   * twice if the subscriptions change in the meantime.
+   *
+   * @param pageSize maximum number of workspaces in a page
+   * @param pageConsumer called with each page as a map of workspace id to the workspace metacard
+   *     and its query metacards, returns {@code false} to stop paging (must be non-null)
+   */
+  void forEachQueryMetacardsPage(
+      int pageSize,
+      Predicate<Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>>> pageConsumer);
+
   /**
    * Uses {@link #getWorkspaceMetacards(Set)} to get a single workspace metacard.
    *
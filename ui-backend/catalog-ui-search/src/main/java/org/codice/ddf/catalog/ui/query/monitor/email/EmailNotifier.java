@@ -16,10 +16,26 @@ package org.codice.ddf.catalog.ui.query.monitor.email;
 import static org.apache.commons.lang3.Validate.notBlank;
 import static org.apache.commons.lang3.Validate.notNull;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.Session;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import org.apache.commons.lang3.tuple.Pair;
@@ -28,14 +44,37 @@ import org.codice.ddf.catalog.ui.query.monitor.api.MetacardFormatter;
 import org.codice.ddf.catalog.ui.query.monitor.api.QueryUpdateSubscriber;
 import org.codice.ddf.catalog.ui.subscription.SubscriptionsPersistentStore;
 import org.codice.ddf.platform.email.SmtpClient;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Sends an email for each workspace to the owner of the workspace. */
+/**
+ * Emails the subscribers of each workspace. Notifications are queued and sent by a pool of worker
+ * threads, so a slow mail server does not hold up the caller. The notifications queued for a
+ * recipient are merged into a single digest email, and sending is retried with backoff.
+ *
+ * <p>The queue is kept in memory, and a queued email is given up once its attempts are used up or
+ * when the notifier is destroyed. {@link #notifyAsync(Map)} reports which workspaces were emailed
+ * to all of their recipients, so that the caller can notify the others again later.
+ */
 public class EmailNotifier implements QueryUpdateSubscriber {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EmailNotifier.class);
 
+  private static final int DEFAULT_WORKER_THREADS = 2;
+
+  private static final int DEFAULT_MAX_QUEUED_EMAILS = 1000;
+
+  private static final String DEFAULT_DIGEST_SUBJECT = "Workspace notifications";
+
+  private static final String DIGEST_SEPARATOR = "\n\n";
+
+  private static final int MAX_SEND_ATTEMPTS = 3;
+
+  private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final long SEND_TIMEOUT_MINUTES = 1;
+
   private final MetacardFormatter metacardFormatter;
 
   private String bodyTemplate;
@@ -48,6 +87,22 @@ public class EmailNotifier implements QueryUpdateSubscriber {
 
   private SmtpClient smtpClient;
 
+  private String digestSubject = DEFAULT_DIGEST_SUBJECT;
+
+  private volatile int maxQueuedEmails = DEFAULT_MAX_QUEUED_EMAILS;
+
+  /** The digests that are queued and not being sent yet, by recipient. */
+  private final Map<String, Digest> queuedDigests = new ConcurrentHashMap<>();
+
+  private final ThreadPoolExecutor emailExecutor =
+      new ThreadPoolExecutor(
+          DEFAULT_WORKER_THREADS,
+          DEFAULT_WORKER_THREADS,
+          60L,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          StandardThreadFactoryBuilder.newThreadFactory("emailNotifierThread"));
+
   /**
    * The {@code bodyTemplate} and {@code subjectTemplate} may contain the tags supported by the
    * {@code metacardFormatter}.
@@ -81,6 +136,7 @@ public class EmailNotifier implements QueryUpdateSubscriber {
     this.metacardFormatter = metacardFormatter;
     this.subscriptionsPersistentStore = subscriptionsPersistentStore;
     this.smtpClient = smtpClient;
+    emailExecutor.allowCoreThreadTimeOut(true);
   }
 
   /**
@@ -119,49 +175,274 @@ public class EmailNotifier implements QueryUpdateSubscriber {
     this.fromEmail = fromEmail.trim();
   }
 
+  /**
+   * The subject of an email that merges the notifications of several workspaces.
+   *
+   * @param digestSubject must be non-null
+   */
+  @SuppressWarnings("unused")
+  public void setDigestSubject(String digestSubject) {
+    notNull(digestSubject, "digestSubject must be non-null");
+    LOGGER.debug("Setting digestSubject : {}", digestSubject);
+    this.digestSubject = digestSubject;
+  }
+
+  /** @param workerThreads number of emails that are sent at the same time */
+  @SuppressWarnings("unused")
+  public void setWorkerThreads(Integer workerThreads) {
+    notNull(workerThreads, "workerThreads must be non-null");
+    int poolSize = Math.max(1, workerThreads);
+    LOGGER.debug("Setting workerThreads : {}", poolSize);
+    // The core size may not exceed the maximum size, so they are changed in a different order when
+    // growing and shrinking the pool
+    if (poolSize > emailExecutor.getMaximumPoolSize()) {
+      emailExecutor.setMaximumPoolSize(poolSize);
+      emailExecutor.setCorePoolSize(poolSize);
+    } else {
+      emailExecutor.setCorePoolSize(poolSize);
+      emailExecutor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  /**
+   * While the queue is full, notifications for recipients without a queued email are not queued and
+   * {@link #notify(Map)} fails.
+   *
+   * @param maxQueuedEmails maximum number of emails waiting to be sent
+   */
+  @SuppressWarnings("unused")
+  public void setMaxQueuedEmails(Integer maxQueuedEmails) {
+    notNull(maxQueuedEmails, "maxQueuedEmails must be non-null");
+    LOGGER.debug("Setting maxQueuedEmails : {}", maxQueuedEmails);
+    this.maxQueuedEmails = Math.max(1, maxQueuedEmails);
+  }
+
+  public void destroy() {
+    LOGGER.trace("Shutting down");
+    List<Runnable> discarded = emailExecutor.shutdownNow();
+    if (!discarded.isEmpty()) {
+      LOGGER.warn("Discarding {} queued emails", discarded.size());
+    }
+    RejectedExecutionException shutdown =
+        new RejectedExecutionException("The email notifier has been destroyed");
+    queuedDigests.values().forEach(digest -> digest.sent.completeExceptionally(shutdown));
+  }
+
+  /**
+   * Queues one email for each recipient of the workspaces and returns without waiting for them to
+   * be sent.
+   *
+   * @throws IllegalStateException if the email to a recipient could not be queued, after the emails
+   *     to the other recipients have been queued
+   */
   @Override
   public void notify(Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap) {
     notNull(workspaceMetacardMap, "workspaceMetacardMap must be non-null");
-    workspaceMetacardMap
-        .values()
-        .forEach(pair -> sendEmailsForWorkspace(pair.getLeft(), pair.getRight()));
+    long unqueued =
+        enqueue(workspaceMetacardMap, getEmails(workspaceMetacardMap))
+            .values()
+            .stream()
+            .filter(Objects::isNull)
+            .count();
+    if (unqueued > 0) {
+      throw new IllegalStateException("Unable to queue the emails to " + unqueued + " recipients");
+    }
   }
 
-  private void sendEmailsForWorkspace(WorkspaceMetacardImpl workspaceMetacard, Long hitCount) {
-    subscriptionsPersistentStore
-        .getEmails(workspaceMetacard.getId())
-        .forEach(email -> sendEmailForWorkspace(workspaceMetacard, hitCount, email));
-  }
+  /**
+   * Queues the emails like {@link #notify(Map)}, but does not fail if some could not be queued.
+   *
+   * @return a future that completes once every queued email has been sent or given up, with the
+   *     identifiers of the workspaces that were emailed to all of their recipients
+   */
+  @Override
+  public CompletableFuture<Set<String>> notifyAsync(
+      Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap) {
+    notNull(workspaceMetacardMap, "workspaceMetacardMap must be non-null");
+    Map<String, Set<String>> emailsById = getEmails(workspaceMetacardMap);
+    Map<String, CompletableFuture<Void>> sentByEmail = enqueue(workspaceMetacardMap, emailsById);
 
-  private void sendEmailForWorkspace(
-      WorkspaceMetacardImpl workspaceMetacard, Long hitCount, String email) {
+    CompletableFuture<?>[] queued =
+        sentByEmail.values().stream().filter(Objects::nonNull).toArray(CompletableFuture[]::new);
+
+    return CompletableFuture.allOf(queued)
+        .handle(
+            (ignored, e) ->
+                workspaceMetacardMap
+                    .values()
+                    .stream()
+                    .map(pair -> pair.getLeft().getId())
+                    .filter(
+                        id ->
+                            emailsById
+                                .getOrDefault(id, Collections.emptySet())
+                                .stream()
+                                .allMatch(email -> isSent(sentByEmail.get(email))))
+                    .collect(Collectors.toSet()));
+  }
 
-    String emailBody = metacardFormatter.format(bodyTemplate, workspaceMetacard, hitCount);
+  private static boolean isSent(CompletableFuture<Void> sent) {
+    return sent != null && sent.isDone() && !sent.isCompletedExceptionally();
+  }
 
-    String subject = metacardFormatter.format(subjectTemplate, workspaceMetacard, hitCount);
+  private Map<String, Set<String>> getEmails(
+      Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap) {
+    return subscriptionsPersistentStore.getEmails(
+        workspaceMetacardMap
+            .values()
+            .stream()
+            .map(pair -> pair.getLeft().getId())
+            .collect(Collectors.toSet()));
+  }
 
-    Session session = smtpClient.createSession();
+  /**
+   * Queues the notifications of each recipient.
+   *
+   * @return for each recipient, the future that completes when their email has been sent, or
+   *     {@code null} if it could not be queued
+   */
+  private Map<String, CompletableFuture<Void>> enqueue(
+      Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap,
+      Map<String, Set<String>> emailsById) {
+    Map<String, List<Pair<WorkspaceMetacardImpl, Long>>> notificationsByEmail =
+        new LinkedHashMap<>();
+    for (Pair<WorkspaceMetacardImpl, Long> pair : workspaceMetacardMap.values()) {
+      for (String email : emailsById.getOrDefault(pair.getLeft().getId(), Collections.emptySet())) {
+        notificationsByEmail.computeIfAbsent(email, key -> new ArrayList<>()).add(pair);
+      }
+    }
 
-    try {
-      MimeMessage mimeMessage = new MimeMessage(session);
+    Map<String, CompletableFuture<Void>> sentByEmail = new HashMap<>();
+    notificationsByEmail.forEach(
+        (email, notifications) -> sentByEmail.put(email, enqueue(email, notifications)));
+    return sentByEmail;
+  }
 
-      mimeMessage.setFrom(new InternetAddress(fromEmail));
+  /**
+   * Adds the notifications to the digest that is queued for the recipient. A new digest is queued
+   * if there is none, or if the queued one has started being sent in the meantime.
+   *
+   * @return the future that completes when the digest has been sent, or {@code null} if the
+   *     notifications could not be queued
+   */
+  private CompletableFuture<Void> enqueue(
+      String email, List<Pair<WorkspaceMetacardImpl, Long>> notifications) {
+    while (true) {
+      Digest digest = queuedDigests.get(email);
 
-      mimeMessage.addRecipient(Message.RecipientType.TO, new InternetAddress(email));
+      if (digest == null) {
+        if (queuedDigests.size() >= maxQueuedEmails) {
+          LOGGER.warn("Email queue is full, unable to queue the email to {}", email);
+          return null;
+        }
 
-      mimeMessage.setSubject(subject);
+        Digest newDigest = new Digest(email);
+        newDigest.add(notifications);
+        digest = queuedDigests.putIfAbsent(email, newDigest);
+        if (digest == null) {
+          return submit(newDigest) ? newDigest.sent : null;
+        }
+      }
 
-      mimeMessage.setText(emailBody);
+      if (digest.add(notifications)) {
+        return digest.sent;
+      }
+      queuedDigests.remove(email, digest);
+    }
+  }
 
-      LOGGER.trace("Attempting to send email");
+  private boolean submit(Digest digest) {
+    try {
+      emailExecutor.execute(() -> send(digest));
+      return true;
+    } catch (RejectedExecutionException e) {
+      queuedDigests.remove(digest.email, digest);
+      digest.sent.completeExceptionally(e);
+      LOGGER.warn("unable to queue email to {}", digest.email, e);
+      return false;
+    }
+  }
 
-      smtpClient.send(mimeMessage);
+  private void send(Digest digest) {
+    queuedDigests.remove(digest.email, digest);
+    List<Pair<WorkspaceMetacardImpl, Long>> notifications = digest.take();
 
+    MimeMessage mimeMessage;
+    try {
+      mimeMessage = createMessage(digest.email, notifications);
     } catch (MessagingException e) {
-      LOGGER.warn("unable to send email to {}", email, e);
+      LOGGER.warn("unable to send email to {}", digest.email, e);
+      digest.sent.completeExceptionally(e);
+      return;
+    }
+
+    long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+    for (int attempt = 1; ; attempt++) {
+      LOGGER.trace("Attempting to send email: attempt={}", attempt);
+      Future<Void> future = smtpClient.send(mimeMessage);
+
+      try {
+        future.get(SEND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        digest.sent.complete(null);
+        return;
+      } catch (ExecutionException | TimeoutException e) {
+        future.cancel(true);
+        if (attempt >= MAX_SEND_ATTEMPTS) {
+          LOGGER.warn("unable to send email to {} after {} attempts", digest.email, attempt, e);
+          digest.sent.completeExceptionally(e);
+          return;
+        }
+        LOGGER.debug("Retrying email to {} in {} ms", digest.email, retryDelayMillis, e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        digest.sent.completeExceptionally(e);
+        return;
+      }
+
+      try {
+        Thread.sleep(retryDelayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        digest.sent.completeExceptionally(e);
+        return;
+      }
+      retryDelayMillis *= 2;
     }
   }
 
+  /**
+   * A single notification is formatted with the subject and body templates. Several notifications
+   * are merged into one email with the digest subject and the body of each workspace.
+   */
+  private MimeMessage createMessage(
+      String email, List<Pair<WorkspaceMetacardImpl, Long>> notifications)
+      throws MessagingException {
+    String subject =
+        notifications.size() == 1 ? format(subjectTemplate, notifications.get(0)) : digestSubject;
+
+    String emailBody =
+        notifications
+            .stream()
+            .map(notification -> format(bodyTemplate, notification))
+            .collect(Collectors.joining(DIGEST_SEPARATOR));
+
+    MimeMessage mimeMessage = new MimeMessage(smtpClient.createSession());
+
+    mimeMessage.setFrom(new InternetAddress(fromEmail));
+
+    mimeMessage.addRecipient(Message.RecipientType.TO, new InternetAddress(email));
+
+    mimeMessage.setSubject(subject);
+
+    mimeMessage.setText(emailBody);
+
+    return mimeMessage;
+  }
+
+  private String format(String template, Pair<WorkspaceMetacardImpl, Long> notification) {
+    return metacardFormatter.format(template, notification.getLeft(), notification.getRight());
+  }
+
   @Override
   public String toString() {
     return "EmailNotifier{"
@@ -180,4 +461,37 @@ public class EmailNotifier implements QueryUpdateSubscriber {
         + subscriptionsPersistentStore
         + '}';
   }
+
+  /** The notifications queued for one recipient, with at most one per workspace. */
+  private static class Digest {
+    private final String email;
+
+    /** Completes when the digest has been sent, or exceptionally when it is given up. */
+    private final CompletableFuture<Void> sent = new CompletableFuture<>();
+
+    private final Map<String, Pair<WorkspaceMetacardImpl, Long>> notifications =
+        new LinkedHashMap<>();
+
+    private boolean taken;
+
+    private Digest(String email) {
+      this.email = email;
+    }
+
+    /** @return {@code false} if the digest is already being sent */
+    private synchronized boolean add(List<Pair<WorkspaceMetacardImpl, Long>> added) {
+      if (taken) {
+        return false;
+      }
+      for (Pair<WorkspaceMetacardImpl, Long> notification : added) {
+        notifications.put(notification.getLeft().getId(), notification);
+      }
+      return true;
+    }
+
+    private synchronized List<Pair<WorkspaceMetacardImpl, Long>> take() {
+      taken = true;
+      return new ArrayList<>(notifications.values());
+    }
+  }
 }
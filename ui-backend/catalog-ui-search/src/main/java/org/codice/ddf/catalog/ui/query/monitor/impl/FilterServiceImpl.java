@@ -47,6 +47,16 @@ public class FilterServiceImpl implements FilterService {
     return filterBuilder.attribute(Metacard.MODIFIED).after().date(lastCheckDate);
   }
 
+  @Override
+  public Filter getModifiedDateFilter(Date lastCheckDate, Date checkDate) {
+    return filterBuilder.allOf(
+        getModifiedDateFilter(lastCheckDate),
+        filterBuilder
+            .attribute(Metacard.MODIFIED)
+            .before()
+            .date(new Date(checkDate.getTime() + 1)));
+  }
+
   @Override
   public String toString() {
     return "FilterServiceImpl{" + "filterBuilder=" + filterBuilder + '}';
@@ -15,8 +15,12 @@ package org.codice.ddf.catalog.ui.query.monitor.impl;
 
 import static org.apache.commons.lang3.Validate.notNull;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.tuple.Pair;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
 import org.codice.ddf.catalog.ui.query.monitor.api.QueryUpdateSubscriber;
@@ -25,7 +29,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Execute a list of QueryUpdateSubscriber objects. Catches runtime exceptions thrown by the
- * subscriber and logs it as a warning, then continues executing the remaining subscribers.
+ * subscriber and logs it as a warning, then continues executing the remaining subscribers. Once
+ * every subscriber has run, the first exception is rethrown with the others suppressed, so the
+ * caller knows the notification was not delivered to every subscriber. {@link #notifyAsync(Map)}
+ * instead leaves the workspaces that a subscriber failed to notify out of its result.
  */
 public class QueryUpdateSubscriberList implements QueryUpdateSubscriber {
 
@@ -42,14 +49,59 @@ public class QueryUpdateSubscriberList implements QueryUpdateSubscriber {
   @Override
   public void notify(Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap) {
     notNull(workspaceMetacardMap, "workspaceMetacardMap must be non-null");
-    queryUpdateSubscriberList.forEach(
-        subscriber -> {
-          try {
-            subscriber.notify(workspaceMetacardMap);
-          } catch (RuntimeException e) {
-            LOGGER.warn("QueryUpdateSubscriber failed to run: subscriber={}", subscriber, e);
-          }
-        });
+    RuntimeException failure = null;
+    for (QueryUpdateSubscriber subscriber : queryUpdateSubscriberList) {
+      try {
+        subscriber.notify(workspaceMetacardMap);
+      } catch (RuntimeException e) {
+        LOGGER.warn("QueryUpdateSubscriber failed to run: subscriber={}", subscriber, e);
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Notifies every subscriber. The returned future completes with the workspaces whose
+   * notifications were delivered by all of the subscribers.
+   */
+  @Override
+  public CompletableFuture<Set<String>> notifyAsync(
+      Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap) {
+    notNull(workspaceMetacardMap, "workspaceMetacardMap must be non-null");
+    CompletableFuture<Set<String>> delivered =
+        CompletableFuture.completedFuture(new HashSet<>(workspaceMetacardMap.keySet()));
+    for (QueryUpdateSubscriber subscriber : queryUpdateSubscriberList) {
+      CompletableFuture<Set<String>> deliveredBySubscriber;
+      try {
+        deliveredBySubscriber =
+            subscriber
+                .notifyAsync(workspaceMetacardMap)
+                .exceptionally(
+                    e -> {
+                      LOGGER.warn(
+                          "QueryUpdateSubscriber failed to deliver: subscriber={}", subscriber, e);
+                      return Collections.emptySet();
+                    });
+      } catch (RuntimeException e) {
+        LOGGER.warn("QueryUpdateSubscriber failed to run: subscriber={}", subscriber, e);
+        deliveredBySubscriber = CompletableFuture.completedFuture(Collections.emptySet());
+      }
+      delivered = delivered.thenCombine(deliveredBySubscriber, QueryUpdateSubscriberList::both);
+    }
+    return delivered;
+  }
+
+  private static Set<String> both(Set<String> ids, Set<String> otherIds) {
+    Set<String> both = new HashSet<>(ids);
+    both.retainAll(otherIds);
+    return both;
   }
 
   @Override
@@ -13,21 +13,30 @@
  */
 package org.codice.ddf.catalog.ui.query.monitor.impl;
 
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.Validate.notBlank;
 import static org.apache.commons.lang3.Validate.notNull;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.codice.ddf.catalog.ui.subscription.SubscriptionsPersistentStore;
 import org.codice.ddf.persistence.PersistenceException;
 import org.codice.ddf.persistence.PersistentItem;
@@ -39,6 +48,14 @@ import org.slf4j.LoggerFactory;
 /**
  * Associate sets of emails with an ID. This implementation will preserve any other properties
  * stored under the ID.
+ *
+ * <p>Membership is cached in memory in both directions, as the emails of each ID and the IDs of
+ * each email. Entries are loaded from the persistent store the first time they are requested and
+ * are updated by every write made through this store, so reads after the first one do not query the
+ * persistent store. Each cache holds a bounded number of entries, which expire after a fixed time
+ * so that changes made outside this store are eventually seen. Writes to the same ID are serialized
+ * by a lock striped on the ID. Loads run outside of any lock, and a load that overlaps a write is
+ * returned without being cached.
  */
 public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistentStore {
 
@@ -54,7 +71,22 @@ public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistent
 
   @VisibleForTesting static final int PAGE_SIZE = 1000;
 
-  private static final Lock LOCK = new ReentrantLock();
+  private static final int LOCK_STRIPES = 64;
+
+  private static final long MAX_CACHED_ENTRIES = 10_000;
+
+  private static final long CACHE_EXPIRY_MINUTES = 10;
+
+  private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+  /** Emails by ID. An ID with no emails maps to an empty set once it has been loaded. */
+  private final ConcurrentMap<String, Set<String>> emailsById = createCache();
+
+  /** IDs by email. An email with no IDs maps to an empty set once it has been loaded. */
+  private final ConcurrentMap<String, Set<String>> idsByEmail = createCache();
+
+  /** Incremented by every write once it has been persisted, before the caches are updated. */
+  private final AtomicLong writes = new AtomicLong();
 
   private final PersistentStore persistentStore;
 
@@ -64,20 +96,41 @@ public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistent
     this.persistentStore = persistentStore;
   }
 
-  private List<Map<String, Object>> query(String query) throws PersistenceException {
-    LOCK.lock();
-    try {
-      List<Map<String, Object>> results =
-          persistentStore.get(SUBSCRIPTIONS_TYPE, query, START_INDEX, PAGE_SIZE);
-      assert results.size() <= 1;
-      return results;
-    } finally {
-      LOCK.unlock();
+  private static ConcurrentMap<String, Set<String>> createCache() {
+    return CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_ENTRIES)
+        .expireAfterWrite(CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .<String, Set<String>>build()
+        .asMap();
+  }
+
+  /**
+   * Caches a loaded entry unless the key was cached meanwhile. A write that started after {@code
+   * writeCount} was read may have been missed by the load, and may also have skipped updating the
+   * entry because it was not cached yet, so the entry is dropped again in that case.
+   *
+   * @return the cached entry, or {@code loaded} if there was none
+   */
+  private Set<String> cacheLoaded(
+      ConcurrentMap<String, Set<String>> cache, String key, long writeCount, Set<String> loaded) {
+    Set<String> existing = cache.putIfAbsent(key, loaded);
+    if (existing != null) {
+      return existing;
     }
+    if (writes.get() != writeCount) {
+      cache.remove(key, loaded);
+    }
+    return loaded;
+  }
+
+  private List<Map<String, Object>> query(String query) throws PersistenceException {
+    return persistentStore.get(SUBSCRIPTIONS_TYPE, query, START_INDEX, PAGE_SIZE);
   }
 
   private List<Map<String, Object>> get(String id) throws PersistenceException {
-    return query(queryId(id));
+    List<Map<String, Object>> results = query(queryId(id));
+    assert results.size() <= 1;
+    return results;
   }
 
   @SuppressWarnings("unchecked")
@@ -87,12 +140,14 @@ public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistent
     notNull(emails, "emails must be non-null");
     emails.forEach(email -> notBlank(email, "emails in set must be non-blank"));
 
-    LOCK.lock();
+    Lock lock = locks.get(id);
+    lock.lock();
     try {
       List<Map<String, Object>> results = get(id);
 
+      PersistentItem item;
       if (!results.isEmpty()) {
-        PersistentItem item = convert(results.get(0));
+        item = convert(results.get(0));
 
         if (item.containsKey(EMAIL_PROPERTY + PersistentItem.TEXT_SUFFIX)) {
           Set<String> newValue = new HashSet<>(emails);
@@ -109,18 +164,20 @@ public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistent
         } else {
           item.addProperty(EMAIL_PROPERTY, emails);
         }
-        persistentStore.add(SUBSCRIPTIONS_TYPE, item);
       } else {
-        PersistentItem persistentItem = new PersistentItem();
-        persistentItem.addIdProperty(id);
-        persistentItem.addProperty(EMAIL_PROPERTY, emails);
-        persistentStore.add(SUBSCRIPTIONS_TYPE, persistentItem);
+        item = new PersistentItem();
+        item.addIdProperty(id);
+        item.addProperty(EMAIL_PROPERTY, emails);
       }
+      persistentStore.add(SUBSCRIPTIONS_TYPE, item);
+      writes.incrementAndGet();
 
+      emailsById.put(id, toEmails(Collections.singletonList(item)));
+      emails.forEach(email -> idsByEmail.computeIfPresent(email, (key, ids) -> plus(ids, id)));
     } catch (PersistenceException e) {
       LOGGER.warn("unable to add emails to workspace: workspaceId={} emails={}", id, emails, e);
     } finally {
-      LOCK.unlock();
+      lock.unlock();
     }
   }
 
@@ -132,6 +189,10 @@ public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistent
     return quote(ID) + "=" + quote(id);
   }
 
+  private String queryIds(Collection<String> ids) {
+    return ids.stream().map(this::queryId).collect(Collectors.joining(" OR "));
+  }
+
   private PersistentItem convert(Map<String, Object> map) {
     PersistentItem item = new PersistentItem();
 
@@ -165,149 +226,196 @@ public class SubscriptionsPersistentStoreImpl implements SubscriptionsPersistent
     return item;
   }
 
-  private void add(String id, PersistentItem item) {
-    LOCK.lock();
-    try {
-      persistentStore.add(SUBSCRIPTIONS_TYPE, item);
-    } catch (PersistenceException e) {
-      LOGGER.warn(
-          "unable to add PersistentItem to the PersistentStore: id={} item={}", id, item, e);
-
-    } finally {
-      LOCK.unlock();
-    }
-  }
-
   @Override
   public void removeEmails(String id, Set<String> emails) {
     notBlank(id, "id must be non-blank");
 
-    LOCK.lock();
+    Lock lock = locks.get(id);
+    lock.lock();
     try {
-      List<Map<String, Object>> results = get(id);
+      List<PersistentItem> items =
+          get(id).stream().map(this::convert).map(item -> strip(item, emails)).collect(toList());
 
-      results
-          .stream()
-          .map(this::convert)
-          .map(item -> strip(item, emails))
-          .forEach(item -> add(id, item));
+      for (PersistentItem item : items) {
+        persistentStore.add(SUBSCRIPTIONS_TYPE, item);
+      }
+      writes.incrementAndGet();
 
+      emailsById.put(id, toEmails(items));
+      emails.forEach(email -> idsByEmail.computeIfPresent(email, (key, ids) -> minus(ids, id)));
     } catch (PersistenceException e) {
       LOGGER.warn("unable to delete emails from workspace: id={}", id, e);
     } finally {
-      LOCK.unlock();
+      lock.unlock();
     }
   }
 
-  private Set<String> merge(Set<String> set1, Set<String> set2) {
-    return Stream.of(set1, set2).flatMap(Collection::stream).collect(Collectors.toSet());
-  }
-
   private String quote(String value) {
     return "'" + value + "'";
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public Set<String> getSubscriptions(String email) {
     notBlank(email, "email must be non-blank");
 
-    LOCK.lock();
-    try {
+    Set<String> ids = idsByEmail.get(email);
+    if (ids != null) {
+      return ids;
+    }
 
-      List<Map<String, Object>> results = query(queryEmail(email));
+    long writeCount = writes.get();
+    ids = loadSubscriptions(email);
+    return ids == null ? Collections.emptySet() : cacheLoaded(idsByEmail, email, writeCount, ids);
+  }
 
-      List<Object> mapValues =
-          results
+  @Nullable
+  private Set<String> loadSubscriptions(String email) {
+    try {
+      return toStrings(
+          query(queryEmail(email))
               .stream()
               .map(PersistentItem::stripSuffixes)
-              .filter(result -> result.containsKey(ID))
-              .map(result -> result.get(ID))
-              .collect(Collectors.toList());
-
-      Set<String> emailsFromSet =
-          streamToStrings(
-              mapValues
-                  .stream()
-                  .filter(Set.class::isInstance)
-                  .map(Set.class::cast)
-                  .flatMap(Set::stream));
-
-      Set<String> emailsFromString = streamToStrings(mapValues.stream());
-
-      return merge(emailsFromSet, emailsFromString);
+              .map(result -> result.get(ID)));
     } catch (PersistenceException e) {
       LOGGER.warn("unable to get workspace ids: email={}", email, e);
-    } finally {
-      LOCK.unlock();
+      return null;
     }
-
-    return Collections.emptySet();
   }
 
   @Override
   public void removeSubscriptions(String id) {
     final String ecql = queryId(id);
 
-    LOCK.lock();
+    Lock lock = locks.get(id);
+    lock.lock();
     try {
+      Set<String> emails = getEmails(id);
       persistentStore.delete(SUBSCRIPTIONS_TYPE, ecql, START_INDEX, PAGE_SIZE);
+      writes.incrementAndGet();
+
+      emailsById.put(id, Collections.emptySet());
+      emails.forEach(email -> idsByEmail.computeIfPresent(email, (key, ids) -> minus(ids, id)));
     } catch (PersistenceException e) {
       LOGGER.debug("Could not delete subscriptions for query {}", ecql, e);
     } finally {
-      LOCK.unlock();
+      lock.unlock();
     }
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public Set<String> getEmails(String id) {
     notBlank(id, "id must be non-blank");
 
-    LOCK.lock();
-    try {
-
-      List<Map<String, Object>> results = get(id);
-
-      List<Object> mapValues =
-          results
-              .stream()
-              .map(PersistentItem::stripSuffixes)
-              .filter(result -> result.containsKey(EMAIL_PROPERTY))
-              .map(result -> result.get(EMAIL_PROPERTY))
-              .collect(Collectors.toList());
-
-      Set<String> emailsFromSet =
-          streamToStrings(
-              mapValues
-                  .stream()
-                  .filter(Set.class::isInstance)
-                  .map(Set.class::cast)
-                  .flatMap(Set::stream));
+    Set<String> emails = emailsById.get(id);
+    if (emails != null) {
+      return emails;
+    }
 
-      Set<String> emailsFromString = streamToStrings(mapValues.stream());
+    long writeCount = writes.get();
+    emails = loadEmails(id);
+    return emails == null
+        ? Collections.emptySet()
+        : cacheLoaded(emailsById, id, writeCount, emails);
+  }
 
-      return merge(emailsFromSet, emailsFromString);
+  @Nullable
+  private Set<String> loadEmails(String id) {
+    try {
+      return toEmails(get(id));
     } catch (PersistenceException e) {
       LOGGER.warn("unable to get workspace emails: id={}", id, e);
-    } finally {
-      LOCK.unlock();
+      return null;
+    }
+  }
+
+  /**
+   * Looks up the emails of the IDs that are not cached yet with one query per {@link #PAGE_SIZE}
+   * IDs, rather than one query per ID.
+   */
+  @Override
+  public Map<String, Set<String>> getEmails(Set<String> ids) {
+    notNull(ids, "ids must be non-null");
+    ids.forEach(id -> notBlank(id, "ids in set must be non-blank"));
+
+    Map<String, Set<String>> emails = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String id : ids) {
+      Set<String> cached = emailsById.get(id);
+      if (cached != null) {
+        emails.put(id, cached);
+      } else {
+        missing.add(id);
+      }
+    }
+
+    for (List<String> page : Lists.partition(missing, PAGE_SIZE)) {
+      long writeCount = writes.get();
+      try {
+        Map<String, Set<String>> loaded =
+            persistentStore
+                .get(SUBSCRIPTIONS_TYPE, queryIds(page), START_INDEX, PAGE_SIZE)
+                .stream()
+                .map(PersistentItem::stripSuffixes)
+                .filter(result -> result.get(ID) instanceof String)
+                .collect(
+                    Collectors.toMap(
+                        result -> (String) result.get(ID),
+                        result -> toStrings(Stream.of(result.get(EMAIL_PROPERTY))),
+                        SubscriptionsPersistentStoreImpl::plus));
+
+        for (String id : page) {
+          emails.put(
+              id,
+              cacheLoaded(
+                  emailsById, id, writeCount, loaded.getOrDefault(id, Collections.emptySet())));
+        }
+      } catch (PersistenceException e) {
+        LOGGER.warn("unable to get workspace emails: ids={}", page, e);
+        page.forEach(id -> emails.put(id, Collections.emptySet()));
+      }
     }
 
-    return Collections.emptySet();
+    return emails;
+  }
+
+  private Set<String> toEmails(List<? extends Map<String, Object>> results) {
+    return toStrings(
+        results
+            .stream()
+            .map(PersistentItem::stripSuffixes)
+            .map(result -> result.get(EMAIL_PROPERTY)));
   }
 
   /**
-   * Convert a stream of objects into a set of strings.
+   * Convert a stream of property values, each of which may be a string or a set, into a set of
+   * strings.
    *
-   * @param stream stream of objects
-   * @return set of strings
+   * @param stream stream of property values
+   * @return unmodifiable set of strings
    */
-  private Set<String> streamToStrings(Stream<Object> stream) {
-    return stream
-        .filter(String.class::isInstance)
-        .map(String.class::cast)
-        .collect(Collectors.toSet());
+  private static Set<String> toStrings(Stream<Object> stream) {
+    return Collections.unmodifiableSet(
+        stream
+            .flatMap(value -> value instanceof Set ? ((Set<?>) value).stream() : Stream.of(value))
+            .filter(String.class::isInstance)
+            .map(String.class::cast)
+            .collect(Collectors.toSet()));
+  }
+
+  private static Set<String> plus(Set<String> set, Set<String> other) {
+    Set<String> result = new HashSet<>(set);
+    result.addAll(other);
+    return Collections.unmodifiableSet(result);
+  }
+
+  private static Set<String> plus(Set<String> set, String value) {
+    return plus(set, Collections.singleton(value));
+  }
+
+  private static Set<String> minus(Set<String> set, String value) {
+    Set<String> result = new HashSet<>(set);
+    result.remove(value);
+    return Collections.unmodifiableSet(result);
   }
 
   @Override
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.monitor.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts and durations of the query tasks of one run of the {@link WorkspaceQueryServiceImpl}. A
+ * query task is one distinct query that may be shared by several workspaces, so the counts and
+ * percentiles are per task rather than per workspace.
+ */
+public class WorkspaceQueryRunMetrics {
+
+  private final int submitted;
+
+  private final int completed;
+
+  private final int timedOut;
+
+  private final int failed;
+
+  private final long p50DurationMillis;
+
+  private final long p99DurationMillis;
+
+  private final long elapsedMillis;
+
+  /**
+   * @param submitted number of query tasks submitted
+   * @param completed number of query tasks that returned a result before the deadline
+   * @param timedOut number of query tasks cancelled at the deadline
+   * @param failed number of query tasks that threw an exception
+   * @param durationsMillis how long each query task that ran to the end took
+   * @param elapsedMillis how long the whole run took
+   */
+  WorkspaceQueryRunMetrics(
+      int submitted,
+      int completed,
+      int timedOut,
+      int failed,
+      Collection<Long> durationsMillis,
+      long elapsedMillis) {
+    this.submitted = submitted;
+    this.completed = completed;
+    this.timedOut = timedOut;
+    this.failed = failed;
+    this.elapsedMillis = elapsedMillis;
+
+    List<Long> sorted = new ArrayList<>(durationsMillis);
+    Collections.sort(sorted);
+    this.p50DurationMillis = percentile(sorted, 50);
+    this.p99DurationMillis = percentile(sorted, 99);
+  }
+
+  /** Nearest-rank percentile of a sorted list, or 0 if it is empty. */
+  static long percentile(List<Long> sorted, int percentile) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+    return sorted.get(Math.max(rank, 1) - 1);
+  }
+
+  public int getSubmitted() {
+    return submitted;
+  }
+
+  public int getCompleted() {
+    return completed;
+  }
+
+  public int getTimedOut() {
+    return timedOut;
+  }
+
+  public int getFailed() {
+    return failed;
+  }
+
+  public long getP50DurationMillis() {
+    return p50DurationMillis;
+  }
+
+  public long getP99DurationMillis() {
+    return p99DurationMillis;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "submitted=%d completed=%d timedOut=%d failed=%d p50=%dms p99=%dms elapsed=%dms",
+        submitted,
+        completed,
+        timedOut,
+        failed,
+        p50DurationMillis,
+        p99DurationMillis,
+        elapsedMillis);
+  }
+}
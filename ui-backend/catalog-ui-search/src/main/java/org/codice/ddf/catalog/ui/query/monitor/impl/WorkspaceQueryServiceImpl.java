@@ -13,7 +13,6 @@
  */
 package org.codice.ddf.catalog.ui.query.monitor.impl;
 
-import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
 import static org.quartz.CronScheduleBuilder.cronSchedule;
 import static org.quartz.JobBuilder.newJob;
@@ -31,26 +30,38 @@ import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
 import ddf.security.Subject;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.apache.commons.lang3.tuple.Pair;
 import org.codice.ddf.catalog.ui.metacard.query.data.metacard.QueryMetacardImpl;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
@@ -59,7 +70,8 @@ import org.codice.ddf.catalog.ui.query.monitor.api.QueryUpdateSubscriber;
 import org.codice.ddf.catalog.ui.query.monitor.api.SecurityService;
 import org.codice.ddf.catalog.ui.query.monitor.api.WorkspaceQueryService;
 import org.codice.ddf.catalog.ui.query.monitor.api.WorkspaceService;
-import org.codice.ddf.platform.util.ForkJoinPoolFactory;
+import org.codice.ddf.persistence.PersistenceException;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
 import org.geotools.filter.text.cql2.CQLException;
 import org.geotools.filter.text.ecql.ECQL;
 import org.opengis.filter.And;
@@ -71,7 +83,8 @@ import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
+public class WorkspaceQueryServiceImpl
+    implements WorkspaceQueryService, WorkspaceQueryServiceMXBean {
 
   public static final String JOB_IDENTITY = "WorkspaceQueryServiceJob";
 
@@ -81,6 +94,19 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
 
   private static final String TRIGGER_NAME = "WorkspaceQueryTrigger";
 
+  private static final String OBJECT_NAME =
+      "org.codice.ddf.catalog.ui.query.monitor:type=WorkspaceQueryService";
+
+  private static final int DEFAULT_WORKER_THREADS = 8;
+
+  private static final int DEFAULT_WORKSPACE_PAGE_SIZE = 100;
+
+  /** How long a watermark that is not advanced is kept before it is deleted. */
+  private static final long WATERMARK_RETENTION_DAYS = 30;
+
+  /** How many query tasks per worker thread may be outstanding before the next page is loaded. */
+  private static final int OUTSTANDING_TASKS_PER_THREAD = 2;
+
   private final QueryUpdateSubscriber queryUpdateSubscriber;
 
   private final WorkspaceService workspaceService;
@@ -89,6 +115,8 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
 
   private final FilterBuilder filterBuilder;
 
+  private final WorkspaceQueryWatermarks watermarks;
+
   @SuppressWarnings("FieldCanBeLocal")
   private Scheduler scheduler;
 
@@ -100,10 +128,23 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
 
   private Integer queryTimeInterval;
 
+  private int workspacePageSize = DEFAULT_WORKSPACE_PAGE_SIZE;
+
   private JobDetail jobDetail;
 
   private Subject subject;
 
+  private final ThreadPoolExecutor workspaceQueryExecutor =
+      new ThreadPoolExecutor(
+          DEFAULT_WORKER_THREADS,
+          DEFAULT_WORKER_THREADS,
+          60L,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          StandardThreadFactoryBuilder.newThreadFactory("workspaceQueryThread"));
+
+  private volatile WorkspaceQueryRunMetrics lastRunMetrics;
+
   /**
    * @param queryUpdateSubscriber must be non-null
    * @param workspaceService must be non-null
@@ -112,6 +153,7 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
    * @param schedulerSupplier must be non-null
    * @param securityService must be non-null
    * @param filterService must be non-null
+   * @param watermarks must be non-null
    */
   public WorkspaceQueryServiceImpl(
       QueryUpdateSubscriber queryUpdateSubscriber,
@@ -120,7 +162,8 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
       FilterBuilder filterBuilder,
       Supplier<Optional<Scheduler>> schedulerSupplier,
       SecurityService securityService,
-      FilterService filterService)
+      FilterService filterService,
+      WorkspaceQueryWatermarks watermarks)
       throws SchedulerException {
 
     notNull(queryUpdateSubscriber, "queryUpdateSubscriber must be non-null");
@@ -130,6 +173,7 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
     notNull(schedulerSupplier, "scheduleSupplier must be non-null");
     notNull(securityService, "securityService must be non-null");
     notNull(filterService, "filterService must be non-null");
+    notNull(watermarks, "watermarks must be non-null");
 
     this.queryUpdateSubscriber = queryUpdateSubscriber;
     this.workspaceService = workspaceService;
@@ -137,6 +181,8 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
     this.filterBuilder = filterBuilder;
     this.securityService = securityService;
     this.filterService = filterService;
+    this.watermarks = watermarks;
+    workspaceQueryExecutor.allowCoreThreadTimeOut(true);
 
     Optional<Scheduler> schedulerOptional = schedulerSupplier.get();
 
@@ -195,12 +241,80 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
     this.queryTimeoutMinutes = queryTimeoutMinutes;
   }
 
+  /** @param workerThreads number of workspaces that are queried at the same time */
+  @SuppressWarnings("unused")
+  public void setWorkerThreads(Integer workerThreads) {
+    notNull(workerThreads, "workerThreads must be non-null");
+    int poolSize = Math.max(1, workerThreads);
+    LOGGER.debug("Setting workerThreads : {}", poolSize);
+    // The core size may not exceed the maximum size, so they are changed in a different order when
+    // growing and shrinking the pool
+    if (poolSize > workspaceQueryExecutor.getMaximumPoolSize()) {
+      workspaceQueryExecutor.setMaximumPoolSize(poolSize);
+      workspaceQueryExecutor.setCorePoolSize(poolSize);
+    } else {
+      workspaceQueryExecutor.setCorePoolSize(poolSize);
+      workspaceQueryExecutor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  /** @param workspacePageSize number of workspaces that are loaded and planned at a time */
+  @SuppressWarnings("unused")
+  public void setWorkspacePageSize(Integer workspacePageSize) {
+    notNull(workspacePageSize, "workspacePageSize must be non-null");
+    LOGGER.debug("Setting workspacePageSize : {}", workspacePageSize);
+    this.workspacePageSize = Math.max(1, workspacePageSize);
+  }
+
   public void setSubject(Subject subject) {
     this.subject = subject;
   }
 
+  @Override
+  public WorkspaceQueryRunMetrics getLastRunMetrics() {
+    return lastRunMetrics;
+  }
+
+  @Override
+  public int getPoolSize() {
+    return workspaceQueryExecutor.getMaximumPoolSize();
+  }
+
+  @Override
+  public int getActiveThreads() {
+    return workspaceQueryExecutor.getActiveCount();
+  }
+
+  @Override
+  public int getQueuedTasks() {
+    return workspaceQueryExecutor.getQueue().size();
+  }
+
+  /** Registers the service's metrics with the platform MBean server. Called by blueprint. */
+  public void init() {
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (!mBeanServer.isRegistered(objectName)) {
+        mBeanServer.registerMBean(this, objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.info("Unable to register the workspace query service MBean", e);
+    }
+  }
+
   public void destroy() {
     LOGGER.trace("Shutting down");
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME);
+      if (mBeanServer.isRegistered(objectName)) {
+        mBeanServer.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.debug("Unable to unregister the workspace query service MBean", e);
+    }
+    workspaceQueryExecutor.shutdownNow();
     try {
       scheduler.shutdown();
     } catch (SchedulerException e) {
@@ -215,74 +329,69 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
         .execute(
             () -> {
               LOGGER.trace("running workspace query service");
-
-              Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards =
-                  workspaceService.getQueryMetacards();
-
-              LOGGER.debug("queryMetacards: size={}", queryMetacards.size());
-
-              List<WorkspaceTask> workspaceTasks = createWorkspaceTasks(queryMetacards);
-
-              LOGGER.debug("workspaceTasks: size={}", workspaceTasks.size());
-
-              Map<String, Pair<WorkspaceMetacardImpl, Long>> results =
-                  executeWorkspaceTasks(workspaceTasks, queryTimeoutMinutes, TimeUnit.MINUTES);
-
-              LOGGER.debug("results: {}", results);
-
-              queryUpdateSubscriber.notify(results);
+              LOGGER.debug(
+                  "Starting workspace query run: poolSize={} activeThreads={} queuedTasks={}",
+                  getPoolSize(),
+                  getActiveThreads(),
+                  getQueuedTasks());
+
+              QueryRun queryRun = new QueryRun(new Date(), queryTimeoutMinutes, TimeUnit.MINUTES);
+              workspaceService.forEachQueryMetacardsPage(workspacePageSize, queryRun::addPage);
+              queryRun.finish();
             });
   }
 
-  private Map<String, Pair<WorkspaceMetacardImpl, Long>> executeWorkspaceTasks(
-      List<WorkspaceTask> workspaceTasks, long timeout, TimeUnit timeoutUnit) {
-    Map<String, Pair<WorkspaceMetacardImpl, Long>> results = new ConcurrentHashMap<>();
-
-    workspaceTasks
-        .stream()
-        .map(ForkJoinPoolFactory.getNewForkJoinPool(null, false)::submit)
-        .map(task -> getTaskResult(task, timeout, timeoutUnit))
-        .filter(Objects::nonNull)
-        .forEach(
-            pair ->
-                results.put(
-                    pair.getLeft().getId(), new ImmutablePair<>(pair.getLeft(), pair.getRight())));
-
-    return results;
-  }
+  /**
+   * Moves the watermarks of the queries whose hits were notified up to the time the run was
+   * planned. Queries of workspaces that timed out keep their watermark and are queried over the
+   * missed range again next time.
+   */
+  private void advanceWatermarks(Collection<String> watermarkKeys, Date checkDate) {
+    if (watermarkKeys.isEmpty()) {
+      return;
+    }
 
-  private Pair<WorkspaceMetacardImpl, Long> getTaskResult(
-      ForkJoinTask<Pair<WorkspaceMetacardImpl, Long>> workspaceTask,
-      long timeout,
-      TimeUnit timeoutUnit) {
+    Map<String, Date> advanced = new HashMap<>();
+    watermarkKeys.forEach(key -> advanced.put(key, checkDate));
     try {
-      return workspaceTask.get(timeout, timeoutUnit);
-    } catch (TimeoutException e) {
-      LOGGER.warn("Timeout", e);
-    } catch (ExecutionException | InterruptedException e) {
-      LOGGER.warn("ForkJoinPool error", e);
+      watermarks.put(advanced);
+    } catch (PersistenceException e) {
+      LOGGER.warn("Unable to store workspace query watermarks: size={}", advanced.size(), e);
+    }
+  }
 
-      Thread.currentThread().interrupt();
+  private Map<String, Date> getWatermarks(Collection<String> watermarkKeys) {
+    try {
+      return watermarks.get(watermarkKeys);
+    } catch (PersistenceException e) {
+      LOGGER.warn("Unable to get workspace query watermarks, using the query time interval", e);
+      return Collections.emptyMap();
     }
-    return null;
   }
 
-  private List<WorkspaceTask> createWorkspaceTasks(
-      Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards) {
-    List<WorkspaceTask> workspaceTasks = new ArrayList<>();
-
-    for (Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>> workspaceQueryPair :
-        queryMetacards.values()) {
-      Map<String, List<QueryMetacardImpl>> queryMetacardsGroupedBySource =
-          groupBySource(workspaceQueryPair.getRight());
-      List<QueryRequest> queryRequests =
-          getQueryRequests(queryMetacardsGroupedBySource.values().stream());
-      if (!queryRequests.isEmpty()) {
-        workspaceTasks.add(new WorkspaceTask(workspaceQueryPair.getLeft(), queryRequests));
-      }
+  private static String watermarkKey(
+      WorkspaceMetacardImpl workspaceMetacard, QueryMetacardImpl queryMetacard, String source) {
+    return workspaceMetacard.getId() + '\n' + queryMetacard.getId() + '\n' + source;
+  }
+
+  /**
+   * Deletes the watermarks that have not been advanced for {@link #WATERMARK_RETENTION_DAYS} days.
+   * These belong to workspaces and queries that have been removed, or to queries whose hits could
+   * not be notified for that long, which are queried over the query time interval again.
+   */
+  private void sweepWatermarks(Date checkDate) {
+    Date cutoff = Date.from(checkDate.toInstant().minus(WATERMARK_RETENTION_DAYS, ChronoUnit.DAYS));
+    try {
+      int deleted = watermarks.deleteOlderThan(cutoff);
+      LOGGER.debug("Deleted {} workspace query watermarks older than {}", deleted, cutoff);
+    } catch (PersistenceException e) {
+      LOGGER.debug("Unable to delete workspace query watermarks older than {}", cutoff, e);
     }
+  }
 
-    return workspaceTasks;
+  private QueryTask createQueryTask(Filter modifiedFilter, Collection<Filter> filters) {
+    And filter = filterBuilder.allOf(modifiedFilter, filterBuilder.anyOf(new ArrayList<>(filters)));
+    return new QueryTask(queryToQueryRequest(filterToQuery(filter)));
   }
 
   private Map<String, List<QueryMetacardImpl>> groupBySource(
@@ -311,26 +420,6 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
     };
   }
 
-  private List<QueryRequest> getQueryRequests(
-      Stream<List<QueryMetacardImpl>> queriesGroupedBySource) {
-    final Filter modifiedFilter = filterService.getModifiedDateFilter(calculateQueryTimeInterval());
-    return queriesGroupedBySource
-        .map(this::queryMetacardsToFilters)
-        .map(filterBuilder::anyOf)
-        .map(filter -> filterBuilder.allOf(modifiedFilter, filter))
-        .map(this::filterToQuery)
-        .map(this::queryToQueryRequest)
-        .collect(Collectors.toList());
-  }
-
-  private List<Filter> queryMetacardsToFilters(List<QueryMetacardImpl> queriesForSource) {
-    return queriesForSource
-        .stream()
-        .map(this::metacardToFilter)
-        .filter(Objects::nonNull)
-        .collect(Collectors.toList());
-  }
-
   private QueryRequestImpl queryToQueryRequest(QueryImpl query) {
     final Map<String, Serializable> properties = securityService.addSystemSubject(new HashMap<>());
     return new QueryRequestImpl(query, properties);
@@ -342,12 +431,25 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
     return query;
   }
 
-  private Filter metacardToFilter(QueryMetacardImpl queryMetacard) {
+  private Optional<Filter> cqlToFilter(String cql) {
     try {
-      return ECQL.toFilter(queryMetacard.getCql());
+      return Optional.of(ECQL.toFilter(cql));
     } catch (CQLException e) {
       LOGGER.warn("Error parsing CQL", e);
-      return null;
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @return the filter written back out as CQL, which is the same for filters whose CQL differs
+   *     only in whitespace, case of keywords or redundant parentheses
+   */
+  private String canonicalCql(Filter filter) {
+    try {
+      return ECQL.toCQL(filter);
+    } catch (RuntimeException e) {
+      LOGGER.debug("Unable to write filter as CQL, it will not be shared between workspaces", e);
+      return filter.toString();
     }
   }
 
@@ -355,50 +457,345 @@ public class WorkspaceQueryServiceImpl implements WorkspaceQueryService {
     return Date.from(Instant.now().minus(queryTimeInterval, ChronoUnit.MINUTES));
   }
 
-  private class QueryTask extends RecursiveTask<Long> {
+  private long query(QueryRequest queryRequest) {
+    try {
+      final QueryResponse response = catalogFramework.query(queryRequest);
+      return response.getHits();
+    } catch (UnsupportedQueryException | FederationException | SourceUnavailableException e) {
+      LOGGER.warn("Query error", e);
+      return 0L;
+    }
+  }
+
+  /** Queries the hit count of one distinct query, which may be shared by several workspaces. */
+  private class QueryTask implements Callable<Pair<QueryTask, Long>> {
     private final QueryRequest queryRequest;
 
+    private volatile Long durationMillis;
+
     private QueryTask(QueryRequest queryRequest) {
       this.queryRequest = queryRequest;
     }
 
     @Override
-    protected Long compute() {
+    public Pair<QueryTask, Long> call() {
+      long start = System.nanoTime();
+      final long result = query(queryRequest);
+      durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      return Pair.of(this, result);
+    }
+
+    /** @return how long the task took, or {@code null} if it has not completed */
+    private Long getDurationMillis() {
+      return durationMillis;
+    }
+  }
+
+  /**
+   * One run of the service. Each page of workspaces is planned and its query tasks submitted as
+   * soon as it is loaded, so loading overlaps with querying. Before the next page is loaded, the
+   * run waits until no more than {@link #maxOutstandingTasks()} tasks are queued or running, which
+   * bounds the workspaces waiting on their tasks. The hit counts of the workspaces whose tasks have
+   * completed are collected, and all of them are notified together once the run is finished. The
+   * timeout is a deadline for the whole run, loading included, and tasks that have not completed by
+   * then are cancelled and their workspaces are left out.
+   */
+  private class QueryRun {
+    private final Date checkDate;
+
+    private final long start = System.nanoTime();
+
+    private final long deadline;
+
+    private final Date defaultWatermark = calculateQueryTimeInterval();
+
+    private final Map<String, Optional<Filter>> parsedFilters = new HashMap<>();
+
+    /** Every distinct query task of the run, so later pages share the tasks of earlier pages. */
+    private final Map<String, QueryTask> queryTasks = new HashMap<>();
+
+    private final CompletionService<Pair<QueryTask, Long>> completionService =
+        new ExecutorCompletionService<>(workspaceQueryExecutor);
+
+    private final Map<Future<Pair<QueryTask, Long>>, QueryTask> outstanding = new HashMap<>();
+
+    private final Map<QueryTask, Long> hits = new HashMap<>();
+
+    private final Set<QueryTask> failedTasks = new HashSet<>();
+
+    private final List<Long> durationsMillis = new ArrayList<>();
+
+    /** Workspaces with a query task that has not completed yet. */
+    private final List<WorkspaceQueries> pending = new ArrayList<>();
+
+    private final Map<String, Pair<WorkspaceMetacardImpl, Long>> results = new HashMap<>();
+
+    /** The watermarks that the notification of each workspace in the results advances. */
+    private final Map<String, List<String>> resultWatermarkKeys = new HashMap<>();
+
+    private int workspaces;
+
+    /** @param checkDate end of the modified range queried by this run */
+    private QueryRun(Date checkDate, long timeout, TimeUnit timeoutUnit) {
+      this.checkDate = checkDate;
+      this.deadline = start + timeoutUnit.toNanos(timeout);
+    }
+
+    /**
+     * Plans a page of workspaces, submits its new query tasks and waits for the backlog of tasks to
+     * drain before the next page is loaded.
+     *
+     * @return {@code false} if the deadline has passed and no more pages should be loaded
+     */
+    private boolean addPage(
+        Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards) {
+      workspaces += queryMetacards.size();
+      plan(queryMetacards);
+
+      LOGGER.debug(
+          "Planned page of workspaces: size={} queryTasks={} outstandingTasks={}",
+          queryMetacards.size(),
+          queryTasks.size(),
+          outstanding.size());
+
+      awaitTasks(maxOutstandingTasks());
+
+      if (isExpired()) {
+        LOGGER.warn("Timed out loading workspaces after {} workspaces", workspaces);
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Waits for the remaining query tasks until the deadline, cancels those that have not
+     * completed, and notifies the workspaces whose results have not been notified yet.
+     */
+    private void finish() {
+      awaitTasks(0);
+
+      if (!outstanding.isEmpty()) {
+        LOGGER.warn(
+            "Timed out waiting for {} of {} query tasks", outstanding.size(), queryTasks.size());
+      }
+      long timedOut = outstanding.keySet().stream().filter(future -> future.cancel(true)).count();
+
+      lastRunMetrics =
+          new WorkspaceQueryRunMetrics(
+              queryTasks.size(),
+              hits.size(),
+              (int) timedOut,
+              failedTasks.size(),
+              durationsMillis,
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      LOGGER.debug("Workspace query run: workspaces={} {}", workspaces, lastRunMetrics);
+
+      notifyResults();
+
+      sweepWatermarks(checkDate);
+    }
+
+    /**
+     * Plans the queries of a page of workspaces. The queries of each workspace are grouped by
+     * source as before, and each query of a group starts from its own watermark. The distinct
+     * filters of a group that start from the same watermark become one query for their disjunction
+     * over the metacards modified since then. Query tasks are keyed by their source, the canonical
+     * CQL of their filters and their watermark, so workspaces that make the same queries against
+     * the same source from the same watermark share a single query task, even across pages.
+     */
+    private void plan(
+        Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards) {
+      final Map<WorkspaceMetacardImpl, Map<String, List<QueryMetacardImpl>>> workspaceGroups =
+          new LinkedHashMap<>();
+      final Set<String> watermarkKeys = new HashSet<>();
+
+      for (Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>> workspaceQueryPair :
+          queryMetacards.values()) {
+        WorkspaceMetacardImpl workspaceMetacard = workspaceQueryPair.getLeft();
+        Map<String, List<QueryMetacardImpl>> groups = groupBySource(workspaceQueryPair.getRight());
+        groups.forEach(
+            (source, queries) ->
+                queries.forEach(
+                    queryMetacard ->
+                        watermarkKeys.add(watermarkKey(workspaceMetacard, queryMetacard, source))));
+        workspaceGroups.put(workspaceMetacard, groups);
+      }
+
+      final Map<String, Date> storedWatermarks = getWatermarks(watermarkKeys);
+
+      workspaceGroups.forEach(
+          (workspaceMetacard, groups) -> {
+            WorkspaceQueries workspaceQueries = new WorkspaceQueries(workspaceMetacard);
+
+            groups.forEach(
+                (source, queries) -> {
+                  // A filter made by several queries starts from the earliest of their watermarks
+                  Map<String, Filter> filters = new HashMap<>();
+                  Map<String, Date> filterWatermarks = new HashMap<>();
+                  for (QueryMetacardImpl queryMetacard : queries) {
+                    String watermarkKey = watermarkKey(workspaceMetacard, queryMetacard, source);
+                    Date watermark = storedWatermarks.getOrDefault(watermarkKey, defaultWatermark);
+                    workspaceQueries.watermarkKeys.add(watermarkKey);
+                    parsedFilters
+                        .computeIfAbsent(queryMetacard.getCql(), cql -> cqlToFilter(cql))
+                        .ifPresent(
+                            filter -> {
+                              String cql = canonicalCql(filter);
+                              filters.putIfAbsent(cql, filter);
+                              filterWatermarks.merge(cql, watermark, (a, b) -> a.before(b) ? a : b);
+                            });
+                  }
+
+                  Map<Date, SortedMap<String, Filter>> filtersByWatermark = new TreeMap<>();
+                  filters.forEach(
+                      (cql, filter) ->
+                          filtersByWatermark
+                              .computeIfAbsent(filterWatermarks.get(cql), w -> new TreeMap<>())
+                              .put(cql, filter));
+
+                  filtersByWatermark.forEach(
+                      (watermark, watermarkFilters) ->
+                          workspaceQueries.queryTasks.add(
+                              queryTasks.computeIfAbsent(
+                                  source
+                                      + '\n'
+                                      + String.join("\n", watermarkFilters.keySet())
+                                      + '\n'
+                                      + watermark.getTime(),
+                                  k ->
+                                      submit(
+                                          createQueryTask(
+                                              filterService.getModifiedDateFilter(
+                                                  watermark, checkDate),
+                                              watermarkFilters.values())))));
+                });
+
+            if (!workspaceQueries.queryTasks.isEmpty()) {
+              pending.add(workspaceQueries);
+            }
+          });
+    }
+
+    private QueryTask submit(QueryTask queryTask) {
+      outstanding.put(completionService.submit(queryTask), queryTask);
+      return queryTask;
+    }
+
+    private int maxOutstandingTasks() {
+      return workspaceQueryExecutor.getMaximumPoolSize() * OUTSTANDING_TASKS_PER_THREAD;
+    }
+
+    private boolean isExpired() {
+      return deadline - System.nanoTime() <= 0 || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Collects the hit counts of the query tasks in the order they complete until no more than
+     * {@code maxOutstanding} tasks are left or the deadline passes.
+     */
+    private void awaitTasks(int maxOutstanding) {
+      try {
+        while (outstanding.size() > maxOutstanding) {
+          Future<Pair<QueryTask, Long>> future =
+              completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (future == null) {
+            break;
+          }
+
+          QueryTask queryTask = outstanding.remove(future);
+          try {
+            hits.put(queryTask, future.get().getRight());
+            durationsMillis.add(queryTask.getDurationMillis());
+          } catch (ExecutionException e) {
+            LOGGER.warn("Query task error", e.getCause());
+            failedTasks.add(queryTask);
+          }
+        }
+      } catch (InterruptedException e) {
+        LOGGER.warn("Interrupted while waiting for query tasks", e);
+        Thread.currentThread().interrupt();
+      }
+
+      pending.removeIf(this::collectResult);
+    }
+
+    /**
+     * Adds a workspace to the results if all of its query tasks have completed. A workspace's hit
+     * count is the sum of the hit counts of its tasks, and workspaces with a task that failed are
+     * left out.
+     *
+     * @return {@code true} if the workspace is no longer pending
+     */
+    private boolean collectResult(WorkspaceQueries queries) {
+      if (queries.queryTasks.stream().anyMatch(failedTasks::contains)) {
+        return true;
+      }
+      if (!hits.keySet().containsAll(queries.queryTasks)) {
+        return false;
+      }
+
+      long sum = queries.queryTasks.stream().mapToLong(hits::get).sum();
+      results.put(queries.workspaceMetacard.getId(), Pair.of(queries.workspaceMetacard, sum));
+      resultWatermarkKeys.put(queries.workspaceMetacard.getId(), queries.watermarkKeys);
+      return true;
+    }
+
+    /**
+     * Notifies the subscribers of every workspace of the run at once, so that each recipient is
+     * sent a single email per run. The watermarks of a workspace are advanced once its notification
+     * has been delivered. Workspaces whose notification fails keep their watermarks and are queried
+     * over the missed range again next time.
+     */
+    private void notifyResults() {
+      LOGGER.debug("results: {}", results);
+
       try {
-        final QueryResponse response = catalogFramework.query(queryRequest);
-        return response.getHits();
-      } catch (UnsupportedQueryException | FederationException | SourceUnavailableException e) {
-        LOGGER.warn("Query error", e);
-        return 0L;
+        queryUpdateSubscriber
+            .notifyAsync(results)
+            .whenComplete(
+                (delivered, e) -> {
+                  if (e != null) {
+                    LOGGER.warn(
+                        "Unable to notify the results of {} workspaces, keeping their watermarks",
+                        results.size(),
+                        e);
+                    return;
+                  }
+                  if (delivered.size() < results.size()) {
+                    LOGGER.warn(
+                        "Unable to notify {} of {} workspaces, keeping their watermarks",
+                        results.size() - delivered.size(),
+                        results.size());
+                  }
+                  advanceWatermarks(
+                      delivered
+                          .stream()
+                          .map(resultWatermarkKeys::get)
+                          .filter(Objects::nonNull)
+                          .flatMap(List::stream)
+                          .collect(Collectors.toList()),
+                      checkDate);
+                });
+      } catch (RuntimeException e) {
+        LOGGER.warn(
+            "Unable to notify the results of {} workspaces, keeping their watermarks",
+            results.size(),
+            e);
       }
     }
   }
 
-  private class WorkspaceTask extends RecursiveTask<Pair<WorkspaceMetacardImpl, Long>> {
+  /** The query tasks that make up one workspace's hit count, and the watermarks they advance. */
+  private static class WorkspaceQueries {
     private final WorkspaceMetacardImpl workspaceMetacard;
 
-    private final List<QueryRequest> queryRequests;
+    private final Set<QueryTask> queryTasks = new LinkedHashSet<>();
 
-    private WorkspaceTask(
-        WorkspaceMetacardImpl workspaceMetacard, List<QueryRequest> queryRequests) {
-      notNull(workspaceMetacard, "WorkspaceMetacardImpl must be non-null");
-      notNull(queryRequests, "queryRequests must be non-null");
-      notEmpty(queryRequests, "queryRequests must be non-empty");
-      this.workspaceMetacard = workspaceMetacard;
-      this.queryRequests = queryRequests;
-    }
+    private final List<String> watermarkKeys = new ArrayList<>();
 
-    @Override
-    protected Pair<WorkspaceMetacardImpl, Long> compute() {
-      final long result =
-          queryRequests
-              .stream()
-              .map(QueryTask::new)
-              .map(QueryTask::fork)
-              .mapToLong(ForkJoinTask::join)
-              .sum();
-
-      return Pair.of(workspaceMetacard, result);
+    private WorkspaceQueries(WorkspaceMetacardImpl workspaceMetacard) {
+      this.workspaceMetacard = workspaceMetacard;
     }
   }
 }
@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.monitor.impl;
+
+/** Metrics of the {@link WorkspaceQueryServiceImpl}, exposed over JMX. */
+public interface WorkspaceQueryServiceMXBean {
+
+  /** @return the metrics of the most recent run, or {@code null} if the service has not run yet */
+  WorkspaceQueryRunMetrics getLastRunMetrics();
+
+  /** @return the maximum number of query tasks that run at the same time */
+  int getPoolSize();
+
+  /** @return the number of query tasks that are running */
+  int getActiveThreads();
+
+  /** @return the number of query tasks waiting for a worker thread */
+  int getQueuedTasks();
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.monitor.impl;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.codice.ddf.persistence.PersistenceException;
+import org.codice.ddf.persistence.PersistentItem;
+import org.codice.ddf.persistence.PersistentStore;
+
+/**
+ * Persists the high-water marks of the workspace query monitor: for each workspace, query and
+ * source, the time up to which its hits have already been notified. Keys are hashed before they are
+ * stored, so they may contain any characters.
+ */
+public class WorkspaceQueryWatermarks {
+
+  /**
+   * {@link org.codice.ddf.persistence.PersistentStore.PersistenceType} belongs to the platform and
+   * has no type for the watermarks, so they are stored under a type of their own, apart from the
+   * items of every other type. If the store rejects the type, the monitor falls back to querying
+   * over the query time interval, as it did before the watermarks were persisted.
+   */
+  @VisibleForTesting static final String WATERMARKS_TYPE = "workspace_query_watermarks";
+
+  private static final String ID = "id";
+
+  private static final String WATERMARK_PROPERTY = "watermark";
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final PersistentStore persistentStore;
+
+  /** @param persistentStore must be non-null */
+  public WorkspaceQueryWatermarks(PersistentStore persistentStore) {
+    notNull(persistentStore, "persistentStore must be non-null");
+    this.persistentStore = persistentStore;
+  }
+
+  /**
+   * @param keys the keys to look up
+   * @return the stored watermarks of those keys that have one
+   * @throws PersistenceException if the watermarks could not be read
+   */
+  public Map<String, Date> get(Collection<String> keys) throws PersistenceException {
+    Map<String, String> keysById = new HashMap<>();
+    keys.forEach(key -> keysById.put(hash(key), key));
+
+    Map<String, Date> watermarks = new HashMap<>();
+    for (List<String> page : Lists.partition(new ArrayList<>(keysById.keySet()), PAGE_SIZE)) {
+      String ecql =
+          page.stream().map(id -> "'" + ID + "'='" + id + "'").collect(Collectors.joining(" OR "));
+      for (Map<String, Object> result : persistentStore.get(WATERMARKS_TYPE, ecql, 0, PAGE_SIZE)) {
+        Map<String, Object> item = PersistentItem.stripSuffixes(result);
+        String key = keysById.get(item.get(ID));
+        Date watermark = toDate(item.get(WATERMARK_PROPERTY));
+        if (key != null && watermark != null) {
+          watermarks.put(key, watermark);
+        }
+      }
+    }
+    return watermarks;
+  }
+
+  /**
+   * Stores the watermarks with a single write.
+   *
+   * @param watermarks the new watermark of each key
+   * @throws PersistenceException if the watermarks could not be written
+   */
+  public void put(Map<String, Date> watermarks) throws PersistenceException {
+    if (watermarks.isEmpty()) {
+      return;
+    }
+
+    List<Map<String, Object>> items = new ArrayList<>();
+    watermarks.forEach(
+        (key, watermark) -> {
+          PersistentItem item = new PersistentItem();
+          item.addIdProperty(hash(key));
+          item.addProperty(WATERMARK_PROPERTY, watermark);
+          items.add(item);
+        });
+    persistentStore.add(WATERMARKS_TYPE, items);
+  }
+
+  /**
+   * Deletes the watermarks that are older than {@code cutoff}.
+   *
+   * @return the number of watermarks deleted
+   * @throws PersistenceException if the watermarks could not be deleted
+   */
+  public int deleteOlderThan(Date cutoff) throws PersistenceException {
+    String ecql = WATERMARK_PROPERTY + " BEFORE " + cutoff.toInstant();
+    int deleted = 0;
+    int count;
+    do {
+      count = persistentStore.delete(WATERMARKS_TYPE, ecql, 0, PAGE_SIZE);
+      deleted += count;
+    } while (count >= PAGE_SIZE);
+    return deleted;
+  }
+
+  private static Date toDate(Object value) {
+    if (value instanceof Date) {
+      return (Date) value;
+    } else if (value instanceof Number) {
+      return new Date(((Number) value).longValue());
+    }
+    return null;
+  }
+
+  private static String hash(String key) {
+    return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+  }
+}
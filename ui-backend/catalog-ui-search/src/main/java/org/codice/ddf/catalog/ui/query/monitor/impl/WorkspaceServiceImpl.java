@@ -17,6 +17,7 @@ import static org.apache.commons.lang3.Validate.notNull;
 import static org.codice.ddf.catalog.ui.metacard.query.util.QueryAttributes.QUERY_TAG;
 import static org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceConstants.WORKSPACE_TAG;
 
+import com.google.common.collect.Lists;
 import ddf.catalog.CatalogFramework;
 import ddf.catalog.data.Result;
 import ddf.catalog.data.types.Core;
@@ -36,12 +37,16 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.ws.rs.NotFoundException;
@@ -299,12 +304,66 @@ public class WorkspaceServiceImpl implements WorkspaceService {
 
   @Override
   public Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> getQueryMetacards() {
-    Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards =
+    return getQueryMetacards(getWorkspaceMetacards());
+  }
+
+  @Override
+  public void forEachQueryMetacardsPage(
+      int pageSize,
+      Predicate<Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>>> pageConsumer) {
+    notNull(pageConsumer, "pageConsumer must be non-null");
+
+    // The persistent store cannot sort, so the subscribed ids are read in a single request and
+    // paged in id order rather than paging the store by offset
+    final List<String> ids =
+        new ArrayList<>(new TreeSet<>(getIdsFromSubscriptions(findSubscriptions())));
+
+    int loaded = 0;
+    for (List<String> pageIds : Lists.partition(ids, Math.max(1, pageSize))) {
+      Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> page =
+          getQueryMetacards(
+              queryRequestToWorkspaceMetacards(getQueryRequestFromIds(new HashSet<>(pageIds))));
+      LOGGER.trace("Loaded page of workspaces: startIndex={} size={}", loaded, page.size());
+      if (!pageConsumer.test(page)) {
+        return;
+      }
+      loaded += pageIds.size();
+    }
+  }
+
+  /** Loads the query metacards of all of the workspaces with a single query. */
+  private Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> getQueryMetacards(
+      List<WorkspaceMetacardImpl> workspaceMetacards) {
+    final Set<String> queryIds =
+        workspaceMetacards
+            .stream()
+            .flatMap(workspaceMetacard -> workspaceMetacard.getQueries().stream())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    final Map<String, QueryMetacardImpl> queryMetacardsById = new HashMap<>();
+    if (!queryIds.isEmpty()) {
+      QueryRequest queryRequest =
+          new QueryRequestImpl(new QueryImpl(getQueriesFilter(new ArrayList<>(queryIds))));
+      ResultIterable.resultIterable(catalogFramework::query, queryRequest)
+          .stream()
+          .map(Result::getMetacard)
+          .filter(Objects::nonNull)
+          .map(QueryMetacardImpl::new)
+          .forEach(query -> queryMetacardsById.putIfAbsent(query.getId(), query));
+    }
+
+    final Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards =
         new HashMap<>();
-    for (WorkspaceMetacardImpl workspaceMetacard : getWorkspaceMetacards()) {
+    for (WorkspaceMetacardImpl workspaceMetacard : workspaceMetacards) {
+      List<QueryMetacardImpl> queries =
+          workspaceMetacard
+              .getQueries()
+              .stream()
+              .map(queryMetacardsById::get)
+              .filter(Objects::nonNull)
+              .collect(Collectors.toList());
       queryMetacards.put(
-          workspaceMetacard.getId(),
-          new ImmutablePair<>(workspaceMetacard, getQueryMetacards(workspaceMetacard)));
+          workspaceMetacard.getId(), new ImmutablePair<>(workspaceMetacard, queries));
     }
     return queryMetacards;
   }
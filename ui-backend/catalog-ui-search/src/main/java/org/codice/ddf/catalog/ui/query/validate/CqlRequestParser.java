@@ -51,7 +51,7 @@ public class CqlRequestParser {
 
   public QueryRequest parse(Request request) throws IOException {
     CqlRequestImpl cqlRequest =
-        GSON.fromJson(endpointUtil.safeGetBody(request), CqlRequestImpl.class);
+        GSON.fromJson(endpointUtil.safeGetBodyReader(request), CqlRequestImpl.class);
     return cqlRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
   }
 }
@@ -117,7 +117,7 @@ public class UserApplication implements SparkApplication {
           }
 
           Map<String, Object> preferences =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
 
           if (preferences == null) {
             preferences = new HashMap<>();
@@ -141,7 +141,7 @@ public class UserApplication implements SparkApplication {
           }
 
           Map<String, Object> alerts =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
 
           List<Map<String, Object>> notifications =
               (List<Map<String, Object>>) alerts.getOrDefault("alerts", Collections.emptyList());
@@ -162,7 +162,7 @@ public class UserApplication implements SparkApplication {
           }
 
           Map<String, List<String>> notification =
-              GSON.fromJson(util.safeGetBody(req), MAP_STRING_TO_OBJECT_TYPE);
+              GSON.fromJson(util.safeGetBodyReader(req), MAP_STRING_TO_OBJECT_TYPE);
 
           deleteNotifications(notification.get("alerts"));
 
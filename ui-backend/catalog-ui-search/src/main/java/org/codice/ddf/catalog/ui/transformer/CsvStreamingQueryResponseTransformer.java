@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.transformer;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.transform.CatalogTransformerException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.codice.ddf.catalog.ui.metacard.transformer.StreamingQueryResponseTransformer;
+
+/**
+ * Writes query results as RFC 4180 CSV a page at a time, in the same layout as the catalog CSV
+ * transformer. Takes the same {@code columnOrder}, {@code hiddenFields} and {@code aliases}
+ * arguments, joins multiple values with newlines and writes dates as UTC ISO-8601 date-times.
+ *
+ * <p>The columns are fixed by the header, which is written before the remaining pages are known, so
+ * only exports with a requested column order can be streamed. The catalog CSV transformer picks the
+ * columns of other exports from the attributes of every result, so they are left to it.
+ */
+public class CsvStreamingQueryResponseTransformer implements StreamingQueryResponseTransformer {
+
+  public static final String MIME_TYPE = "text/csv";
+
+  private static final String COLUMN_ORDER = "columnOrder";
+
+  private static final String LINE_SEPARATOR = "\r\n";
+
+  private static final String MULTIVALUE_SEPARATOR = "\n";
+
+  @Override
+  public String getMimeType() {
+    return MIME_TYPE;
+  }
+
+  @Override
+  public boolean canStream(Map<String, Serializable> arguments) {
+    return !stringList(arguments.get(COLUMN_ORDER)).isEmpty();
+  }
+
+  @Override
+  public ResultPageWriter open(OutputStream output, Map<String, Serializable> arguments)
+      throws CatalogTransformerException {
+    List<String> columnOrder = stringList(arguments.get(COLUMN_ORDER));
+    if (columnOrder.isEmpty()) {
+      throw new CatalogTransformerException("A column order is required to stream a CSV export");
+    }
+
+    return new CsvPageWriter(
+        new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)),
+        columnOrder,
+        new TreeSet<>(stringList(arguments.get("hiddenFields"))),
+        arguments.get("aliases") instanceof Map
+            ? (Map<?, ?>) arguments.get("aliases")
+            : Collections.emptyMap());
+  }
+
+  private static List<String> stringList(Serializable value) {
+    if (!(value instanceof Collection)) {
+      return Collections.emptyList();
+    }
+    return ((Collection<?>) value)
+        .stream()
+        .filter(Objects::nonNull)
+        .map(Object::toString)
+        .collect(Collectors.toList());
+  }
+
+  private static class CsvPageWriter implements ResultPageWriter {
+
+    private final Writer writer;
+
+    private final List<String> columnOrder;
+
+    private final Set<String> hiddenFields;
+
+    private final Map<?, ?> aliases;
+
+    private List<String> columns;
+
+    private CsvPageWriter(
+        Writer writer, List<String> columnOrder, Set<String> hiddenFields, Map<?, ?> aliases) {
+      this.writer = writer;
+      this.columnOrder = columnOrder;
+      this.hiddenFields = hiddenFields;
+      this.aliases = aliases;
+    }
+
+    @Override
+    public void write(List<Result> results) throws IOException {
+      if (columns == null) {
+        columns = columns();
+        writeRow(
+            columns
+                .stream()
+                .map(column -> Objects.toString(aliases.get(column), column))
+                .collect(Collectors.toList()));
+      }
+
+      for (Result result : results) {
+        Metacard metacard = result.getMetacard();
+        if (metacard != null) {
+          List<String> row = new ArrayList<>(columns.size());
+          for (String column : columns) {
+            row.add(value(metacard, column));
+          }
+          writeRow(row);
+        }
+      }
+      writer.flush();
+    }
+
+    /** Writes the header if no page was written. The output stream is left open. */
+    @Override
+    public void close() throws IOException {
+      if (columns == null) {
+        write(Collections.emptyList());
+      }
+      writer.flush();
+    }
+
+    private List<String> columns() {
+      return columnOrder
+          .stream()
+          .filter(column -> !hiddenFields.contains(column))
+          .distinct()
+          .collect(Collectors.toList());
+    }
+
+    private static String value(Metacard metacard, String column) {
+      Attribute attribute = metacard.getAttribute(column);
+      if (attribute == null || attribute.getValues() == null) {
+        return "";
+      }
+      return attribute
+          .getValues()
+          .stream()
+          .filter(Objects::nonNull)
+          .filter(value -> !(value instanceof byte[]))
+          .map(
+              value ->
+                  value instanceof Date ? ((Date) value).toInstant().toString() : value.toString())
+          .collect(Collectors.joining(MULTIVALUE_SEPARATOR));
+    }
+
+    private void writeRow(List<String> row) throws IOException {
+      for (int i = 0; i < row.size(); i++) {
+        if (i > 0) {
+          writer.write(',');
+        }
+        writer.write(escape(row.get(i)));
+      }
+      writer.write(LINE_SEPARATOR);
+    }
+
+    private static String escape(String field) {
+      if (field.indexOf(',') < 0
+          && field.indexOf('"') < 0
+          && field.indexOf('\n') < 0
+          && field.indexOf('\r') < 0) {
+        return field;
+      }
+      return '"' + field.replace("\"", "\"\"") + '"';
+    }
+  }
+}
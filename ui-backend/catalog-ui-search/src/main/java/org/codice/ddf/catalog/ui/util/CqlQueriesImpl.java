@@ -14,40 +14,83 @@
 package org.codice.ddf.catalog.ui.util;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Iterators;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import ddf.action.ActionRegistry;
 import ddf.catalog.CatalogFramework;
+import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
 import ddf.catalog.federation.FederationException;
 import ddf.catalog.filter.FilterAdapter;
 import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.impl.ProcessingDetailsImpl;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
 import ddf.catalog.operation.impl.QueryResponseImpl;
 import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
 import ddf.catalog.util.impl.QueryFunction;
 import ddf.catalog.util.impl.ResultIterable;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.codice.ddf.catalog.ui.metacard.transformer.CsvTransformImpl;
 import org.codice.ddf.catalog.ui.query.cql.CqlQueryResponseImpl;
 import org.codice.ddf.catalog.ui.query.cql.CqlRequestImpl;
+import org.codice.ddf.catalog.ui.query.cql.HitCount;
+import org.codice.ddf.catalog.ui.query.cql.MetacardAttributeCache;
+import org.codice.ddf.catalog.ui.query.cql.QueryResultCache;
+import org.codice.ddf.catalog.ui.query.cql.ResultMerger;
+import org.codice.ddf.catalog.ui.query.cql.ResultPagePrefetcher;
+import org.codice.ddf.catalog.ui.query.cql.ResultTransformExecutor;
 import org.codice.ddf.catalog.ui.query.utility.CqlQueries;
 import org.codice.ddf.catalog.ui.query.utility.CqlQueryResponse;
 import org.codice.ddf.catalog.ui.query.utility.CqlRequest;
 import org.codice.ddf.catalog.ui.query.utility.CsvTransform;
+import org.codice.ddf.catalog.ui.security.LogSanitizer;
 import org.codice.ddf.catalog.ui.transformer.TransformerDescriptors;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
 import org.codice.gsonsupport.GsonTypeAdapters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CqlQueriesImpl implements CqlQueries {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(CqlQueriesImpl.class);
+
+  private static final int DEFAULT_SOURCE_QUERY_THREADS = 16;
+
   private final CatalogFramework catalogFramework;
 
   private final FilterBuilder filterBuilder;
@@ -58,6 +101,27 @@ public class CqlQueriesImpl implements CqlQueries {
 
   private FilterAdapter filterAdapter;
 
+  private final ResultTransformExecutor transformExecutor = new ResultTransformExecutor();
+
+  private final ResultPagePrefetcher pagePrefetcher = new ResultPagePrefetcher();
+
+  private volatile Map<String, Semaphore> sourcePermits = new ConcurrentHashMap<>();
+
+  private volatile int maxConcurrentQueriesPerSource = 8;
+
+  private final ThreadPoolExecutor sourceQueryExecutor =
+      new ThreadPoolExecutor(
+          DEFAULT_SOURCE_QUERY_THREADS,
+          DEFAULT_SOURCE_QUERY_THREADS,
+          60L,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          StandardThreadFactoryBuilder.newThreadFactory("cqlSourceQueryThread"));
+
+  private MetacardAttributeCache metacardAttributeCache = new MetacardAttributeCache();
+
+  private QueryResultCache queryResultCache = new QueryResultCache();
+
   private static final Gson GSON =
       new GsonBuilder()
           .disableHtmlEscaping()
@@ -75,16 +139,445 @@ public class CqlQueriesImpl implements CqlQueries {
     this.filterBuilder = filterBuilder;
     this.filterAdapter = filterAdapter;
     this.actionRegistry = actionRegistry;
+    sourceQueryExecutor.allowCoreThreadTimeOut(true);
   }
 
   @Override
   public CqlQueryResponse executeCqlQuery(CqlRequest cqlRequest)
       throws UnsupportedQueryException, SourceUnavailableException, FederationException {
+    return executeCqlQuery(cqlRequest, false);
+  }
+
+  /**
+   * Executes the query without transforming its results. The returned response transforms each
+   * result as it is written with {@link CqlQueryResponseImpl#writeTo}, which keeps large pages from
+   * being held in memory as both metacards and their JSON maps.
+   */
+  public CqlQueryResponseImpl executeStreamingCqlQuery(CqlRequest cqlRequest)
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException {
+    return executeCqlQuery(cqlRequest, true);
+  }
+
+  /**
+   * Executes a batch of queries concurrently, passing each response to {@code responseListener} on
+   * the calling thread as soon as it completes. Requests that differ only in their ids are queried
+   * once and share the result. Queries to the same source across all batches are limited by the
+   * maximum number of concurrent queries per source. Each query waits for its own permits on a pool
+   * thread, so a busy source delays only the queries sent to it and not the rest of the batch. A
+   * query that fails or cannot get its permits before its timeout is reported through an
+   * unsuccessful status rather than failing the batch.
+   */
+  public void executeCqlQueries(
+      List<? extends CqlRequest> cqlRequests, Consumer<CqlQueryResponse> responseListener) {
+    Map<String, List<CqlRequest>> duplicates = new LinkedHashMap<>();
+    for (CqlRequest cqlRequest : cqlRequests) {
+      duplicates
+          .computeIfAbsent(deduplicationKey(cqlRequest), k -> new ArrayList<>())
+          .add(cqlRequest);
+    }
+
+    Subject subject = ThreadContext.getSubject();
+    CompletionService<List<CqlQueryResponse>> completionService =
+        new ExecutorCompletionService<>(sourceQueryExecutor);
+    List<Future<List<CqlQueryResponse>>> futures = new ArrayList<>();
+    int pending = 0;
+    try {
+      for (List<CqlRequest> requests : duplicates.values()) {
+        Future<List<CqlQueryResponse>> completed;
+        while ((completed = completionService.poll()) != null) {
+          completed.get().forEach(responseListener);
+          pending--;
+        }
+
+        Callable<List<CqlQueryResponse>> task = () -> executeDuplicateCqlQueries(requests);
+        futures.add(completionService.submit(subject == null ? task : subject.associateWith(task)));
+        pending++;
+      }
+
+      for (; pending > 0; pending--) {
+        completionService.take().get().forEach(responseListener);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while executing queries", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unable to execute queries", e.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private List<CqlQueryResponse> executeDuplicateCqlQueries(List<CqlRequest> cqlRequests) {
+    CqlRequest cqlRequest = cqlRequests.get(0);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    List<Semaphore> permits;
+    try {
+      permits = acquireSourcePermits(cqlRequest);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for source permits", e);
+    } catch (TimeoutException e) {
+      LOGGER.debug("Unable to execute query {}", cqlRequest.getId(), e);
+      return duplicateResponses(cqlRequests, failedResponse(cqlRequest, e, stopwatch));
+    }
+
+    CqlQueryResponseImpl response;
+    try {
+      response = executeCqlQuery(cqlRequest, false);
+    } catch (UnsupportedQueryException
+        | SourceUnavailableException
+        | FederationException
+        | RuntimeException e) {
+      LOGGER.debug("Unable to execute query {}", cqlRequest.getId(), e);
+      response = failedResponse(cqlRequest, e, stopwatch);
+    } finally {
+      permits.forEach(Semaphore::release);
+    }
+    return duplicateResponses(cqlRequests, response);
+  }
+
+  private List<CqlQueryResponse> duplicateResponses(
+      List<CqlRequest> cqlRequests, CqlQueryResponseImpl response) {
+    List<CqlQueryResponse> responses = new ArrayList<>(cqlRequests.size());
+    responses.add(response);
+    for (CqlRequest duplicate : cqlRequests.subList(1, cqlRequests.size())) {
+      responses.add(
+          createResponse(
+              duplicate,
+              response.getQueryResponse().getRequest(),
+              response.getQueryResponse(),
+              response.getStatus().getElapsed(),
+              false));
+    }
+    return responses;
+  }
+
+  private CqlQueryResponseImpl failedResponse(
+      CqlRequest cqlRequest, Exception exception, Stopwatch stopwatch) {
+    QueryRequest request;
+    try {
+      request = cqlRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
+    } catch (RuntimeException e) {
+      request =
+          new QueryRequestImpl(
+              new QueryImpl(filterBuilder.attribute(Metacard.ANY_TEXT).is().like().text("*")));
+    }
+    QueryResponseImpl response = new QueryResponseImpl(request, Collections.emptyList(), 0);
+    response
+        .getProcessingDetails()
+        .add(new ProcessingDetailsImpl(cqlRequest.getSourceResponseString(), exception));
+    return createResponse(
+        cqlRequest, request, response, stopwatch.elapsed(TimeUnit.MILLISECONDS), false);
+  }
+
+  /**
+   * Acquires a permit for each source of {@code cqlRequest}, in a consistent order so that
+   * concurrent queries to overlapping sources cannot deadlock. Any permits already acquired are
+   * released if the remaining ones cannot be acquired.
+   */
+  private List<Semaphore> acquireSourcePermits(CqlRequest cqlRequest)
+      throws InterruptedException, TimeoutException {
+    Set<String> sources = new TreeSet<>();
+    if (CollectionUtils.isNotEmpty(cqlRequest.getSrcs())) {
+      cqlRequest.getSrcs().forEach(source -> sources.add(normalizeSource(source)));
+    } else {
+      sources.add(normalizeSource(cqlRequest.getSrc()));
+    }
+
+    long deadline = System.currentTimeMillis() + cqlRequest.getTimeout();
+    Map<String, Semaphore> currentPermits = sourcePermits;
+    int limit = maxConcurrentQueriesPerSource;
+    List<Semaphore> permits = new ArrayList<>(sources.size());
+    boolean acquired = false;
+    try {
+      for (String source : sources) {
+        Semaphore semaphore = currentPermits.computeIfAbsent(source, s -> new Semaphore(limit));
+        if (!semaphore.tryAcquire(
+            Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+          throw new TimeoutException(
+              "Timed out waiting for a connection to source " + LogSanitizer.sanitize(source));
+        }
+        permits.add(semaphore);
+      }
+      acquired = true;
+      return permits;
+    } finally {
+      if (!acquired) {
+        permits.forEach(Semaphore::release);
+      }
+    }
+  }
+
+  private String normalizeSource(String source) {
+    return StringUtils.isBlank(source) || "local".equalsIgnoreCase(source)
+        ? catalogFramework.getId()
+        : source;
+  }
+
+  private static String deduplicationKey(CqlRequest cqlRequest) {
+    CqlRequest copy = GSON.fromJson(GSON.toJson(cqlRequest), CqlRequestImpl.class);
+    copy.setId(null);
+    copy.setBatchId(null);
+    copy.setCacheId(null);
+    return GSON.toJson(copy);
+  }
+
+  /**
+   * Counts the hits for each request without retrieving, transforming or describing any results.
+   * The requests are queried concurrently and their counts returned in request order; a request
+   * that fails or does not complete within its timeout is reported as unsuccessful with {@code -1}
+   * hits rather than failing the batch. The timeouts all run from the start of the batch, so the
+   * batch takes no longer than its longest timeout.
+   */
+  public List<HitCount> executeHitCountQueries(List<? extends CqlRequest> cqlRequests) {
+    if (cqlRequests.size() == 1) {
+      return Collections.singletonList(countHits(cqlRequests.get(0)));
+    }
+
+    long start = System.currentTimeMillis();
+    Subject subject = ThreadContext.getSubject();
+    List<Future<HitCount>> futures = new ArrayList<>(cqlRequests.size());
+    for (CqlRequest cqlRequest : cqlRequests) {
+      Callable<HitCount> task = () -> countHits(cqlRequest);
+      futures.add(sourceQueryExecutor.submit(subject == null ? task : subject.associateWith(task)));
+    }
+
+    List<HitCount> hitCounts = new ArrayList<>(cqlRequests.size());
+    for (int i = 0; i < futures.size(); i++) {
+      CqlRequest cqlRequest = cqlRequests.get(i);
+      long remaining = start + cqlRequest.getTimeout() - System.currentTimeMillis();
+      try {
+        hitCounts.add(futures.get(i).get(Math.max(0, remaining), TimeUnit.MILLISECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.forEach(future -> future.cancel(true));
+        throw new IllegalStateException("Interrupted while counting hits", e);
+      } catch (ExecutionException | TimeoutException e) {
+        LOGGER.debug("Unable to count hits for query {}", cqlRequest.getId(), e);
+        futures.get(i).cancel(true);
+        hitCounts.add(failedHitCount(cqlRequest, 0));
+      }
+    }
+    return hitCounts;
+  }
+
+  /** Counts the hits for a copy of the request, so the caller's request is left unchanged. */
+  private HitCount countHits(CqlRequest cqlRequest) {
+    CqlRequest countRequest = copy(cqlRequest);
+    countRequest.setCount(0);
+    countRequest.setFacets(Collections.emptySet());
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      QueryRequest request =
+          countRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
+      QueryResponse response = catalogFramework.query(request);
+      stopwatch.stop();
+      return new HitCount(
+          countRequest.getId(),
+          countRequest.getSourceResponseString(),
+          response.getHits(),
+          stopwatch.elapsed(TimeUnit.MILLISECONDS),
+          isSuccessful(response));
+    } catch (UnsupportedQueryException
+        | SourceUnavailableException
+        | FederationException
+        | RuntimeException e) {
+      LOGGER.debug("Unable to count hits for query {}", countRequest.getId(), e);
+      return failedHitCount(countRequest, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+  }
+
+  private static HitCount failedHitCount(CqlRequest cqlRequest, long elapsed) {
+    return new HitCount(
+        cqlRequest.getId(), cqlRequest.getSourceResponseString(), -1, elapsed, false);
+  }
+
+  /** Copies the request so that it can be changed without affecting the caller's request. */
+  private static CqlRequest copy(CqlRequest cqlRequest) {
+    return cqlRequest instanceof CqlRequestImpl
+        ? new CqlRequestImpl((CqlRequestImpl) cqlRequest)
+        : GSON.fromJson(GSON.toJson(cqlRequest), CqlRequestImpl.class);
+  }
+
+  private static boolean isSuccessful(QueryResponse response) {
+    return response.getProcessingDetails() == null
+        || response.getProcessingDetails().stream().noneMatch(ProcessingDetails::hasException);
+  }
+
+  /**
+   * Queries each requested source separately, passing each source's response to {@code
+   * sourceListener} on the calling thread as soon as that source responds, and returns the page
+   * merged from all of them. Requests for a single source are executed as usual.
+   *
+   * <p>Every source is asked for all of its results up to the end of the requested page, so the
+   * cost of a page grows with its start index and deep pages should be requested through the
+   * regular query instead. Results that the request's sorts do not order are merged in source name
+   * order. Sources that have not responded by the timeout are reported as failed; if the calling
+   * thread is interrupted the query fails rather than returning a partial page.
+   */
+  public CqlQueryResponse executeProgressiveCqlQuery(
+      CqlRequest cqlRequest, Consumer<CqlQueryResponse> sourceListener)
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException {
+    if (CollectionUtils.size(cqlRequest.getSrcs()) < 2 || cqlRequest.getCount() == 0) {
+      return executeCqlQuery(cqlRequest, false);
+    }
+
     QueryRequest request = cqlRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
     Stopwatch stopwatch = Stopwatch.createStarted();
 
+    Subject subject = ThreadContext.getSubject();
+    CompletionService<SourceQuery> completionService =
+        new ExecutorCompletionService<>(sourceQueryExecutor);
+    Set<String> pendingSources = new HashSet<>(cqlRequest.getSrcs());
+    List<Future<SourceQuery>> futures = new ArrayList<>();
+    for (String source : pendingSources) {
+      Callable<SourceQuery> task = () -> querySource(cqlRequest, source);
+      futures.add(completionService.submit(subject == null ? task : subject.associateWith(task)));
+    }
+
+    Map<String, List<Result>> sourceResults = new TreeMap<>();
+    Set<ProcessingDetails> details = new HashSet<>();
+    Map<String, Serializable> properties = null;
+    long hits = 0;
+    long deadline = System.currentTimeMillis() + cqlRequest.getTimeout();
+    try {
+      while (!pendingSources.isEmpty()) {
+        Future<SourceQuery> future =
+            completionService.poll(
+                Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        if (future == null) {
+          break;
+        }
+
+        SourceQuery sourceQuery = future.get();
+        QueryResponse response = sourceQuery.response;
+        pendingSources.remove(sourceQuery.source);
+        sourceListener.accept(
+            createResponse(
+                sourceQuery.cqlRequest,
+                response.getRequest(),
+                response,
+                sourceQuery.elapsed,
+                false));
+
+        sourceResults.put(sourceQuery.source, response.getResults());
+        details.addAll(response.getProcessingDetails());
+        hits += Math.max(0, response.getHits());
+        if (properties == null) {
+          properties = response.getProperties();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while querying sources", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unable to query sources", e.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+
+    for (String source : pendingSources) {
+      details.add(
+          new ProcessingDetailsImpl(
+              source, new TimeoutException("Source did not respond before the timeout")));
+    }
+
+    QueryResponseImpl response =
+        new QueryResponseImpl(
+            request,
+            ResultMerger.merge(
+                sourceResults.values(), request, cqlRequest.getStart(), cqlRequest.getCount()),
+            true,
+            hits,
+            properties == null ? Collections.emptyMap() : properties);
+    response.getProcessingDetails().addAll(details);
+
+    stopwatch.stop();
+    return createResponse(
+        cqlRequest, request, response, stopwatch.elapsed(TimeUnit.MILLISECONDS), false);
+  }
+
+  /**
+   * Queries a single source for every result up to the end of the requested page, since any of them
+   * may end up on that page once merged with the other sources.
+   */
+  private SourceQuery querySource(CqlRequest cqlRequest, String source) {
+    CqlRequest sourceRequest = GSON.fromJson(GSON.toJson(cqlRequest), CqlRequestImpl.class);
+    sourceRequest.setSrcs(new ArrayList<>(Collections.singletonList(source)));
+    sourceRequest.setCount(cqlRequest.getStart() - 1 + cqlRequest.getCount());
+    sourceRequest.setStart(1);
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    QueryRequest request =
+        sourceRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
+    List<QueryResponse> responses = Collections.synchronizedList(new ArrayList<>());
+    QueryResponseImpl response;
+    try {
+      QueryResponse sourceResponse = queryCatalog(sourceRequest, request, responses);
+      response =
+          new QueryResponseImpl(
+              request,
+              sourceResponse.getResults(),
+              true,
+              sourceResponse.getHits(),
+              sourceResponse.getProperties());
+      responses
+          .stream()
+          .filter(Objects::nonNull)
+          .map(QueryResponse::getProcessingDetails)
+          .filter(Objects::nonNull)
+          .forEach(response.getProcessingDetails()::addAll);
+    } catch (UnsupportedQueryException
+        | SourceUnavailableException
+        | FederationException
+        | RuntimeException e) {
+      LOGGER.debug("Unable to query source {}", LogSanitizer.sanitize(source), e);
+      response = new QueryResponseImpl(request, Collections.emptyList(), 0);
+      response.getProcessingDetails().add(new ProcessingDetailsImpl(source, e));
+    }
+    stopwatch.stop();
+
+    return new SourceQuery(
+        source, sourceRequest, response, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+  }
+
+  private CqlQueryResponseImpl executeCqlQuery(CqlRequest cqlRequest, boolean deferResults)
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException {
+    QueryRequest request = cqlRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    long cacheGeneration = queryResultCache.getGeneration();
+    List<Object> cacheKey = queryResultCache.createKey(cqlRequest, request);
+    QueryResponse cachedResponse = queryResultCache.get(cacheKey, request);
+    if (cachedResponse != null) {
+      stopwatch.stop();
+      return createResponse(
+          cqlRequest,
+          request,
+          cachedResponse,
+          stopwatch.elapsed(TimeUnit.MILLISECONDS),
+          deferResults);
+    }
+
+    QueryResponse response = pagePrefetcher.get(cqlRequest, request);
     List<QueryResponse> responses = Collections.synchronizedList(new ArrayList<>());
+    if (response == null) {
+      response = queryCatalog(cqlRequest, request, responses);
+    }
+
+    stopwatch.stop();
 
+    queryResultCache.put(cacheKey, cacheGeneration, response, responses);
+    prefetchNextPage(cqlRequest, response);
+
+    return createResponse(
+        cqlRequest, request, response, stopwatch.elapsed(TimeUnit.MILLISECONDS), deferResults);
+  }
+
+  private QueryResponse queryCatalog(
+      CqlRequest cqlRequest, QueryRequest request, List<QueryResponse> responses)
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException {
     List<Result> results;
     if (cqlRequest.getCount() == 0) {
       results = retrieveHitCount(request, responses);
@@ -92,36 +585,71 @@ public class CqlQueriesImpl implements CqlQueries {
       results = retrieveResults(cqlRequest, request, responses);
     }
 
-    QueryResponse response =
-        new QueryResponseImpl(
-            request,
-            results,
-            true,
-            responses
-                .stream()
-                .filter(Objects::nonNull)
-                .map(QueryResponse::getHits)
-                .findFirst()
-                .orElse(-1L),
-            responses
-                .stream()
-                .filter(Objects::nonNull)
-                .map(QueryResponse::getProperties)
-                .findFirst()
-                .orElse(Collections.emptyMap()));
+    return new QueryResponseImpl(
+        request,
+        results,
+        true,
+        responses
+            .stream()
+            .filter(Objects::nonNull)
+            .map(QueryResponse::getHits)
+            .findFirst()
+            .orElse(-1L),
+        responses
+            .stream()
+            .filter(Objects::nonNull)
+            .map(QueryResponse::getProperties)
+            .findFirst()
+            .orElse(Collections.emptyMap()));
+  }
 
-    stopwatch.stop();
+  /**
+   * Reads ahead the page after {@code response} when prefetching is enabled and the query has more
+   * results, so the next page can be served from the {@link ResultPagePrefetcher}.
+   */
+  private void prefetchNextPage(CqlRequest cqlRequest, QueryResponse response) {
+    int count = cqlRequest.getCount();
+    long lastIndex = cqlRequest.getStart() - 1L + count;
+    if (!pagePrefetcher.isEnabled()
+        || count <= 0
+        || response.getResults().size() < count
+        || (response.getHits() >= 0 && lastIndex >= response.getHits())) {
+      return;
+    }
 
+    CqlRequest nextPage = copy(cqlRequest);
+    nextPage.setStart(cqlRequest.getStart() + count);
+    pagePrefetcher.submit(
+        () -> {
+          long generation = pagePrefetcher.getGeneration();
+          QueryRequest nextRequest =
+              nextPage.createQueryRequest(catalogFramework.getId(), filterBuilder);
+          List<QueryResponse> responses = Collections.synchronizedList(new ArrayList<>());
+          QueryResponse nextResponse = queryCatalog(nextPage, nextRequest, responses);
+          pagePrefetcher.put(nextPage, nextRequest, generation, nextResponse, responses);
+          return null;
+        });
+  }
+
+  private CqlQueryResponseImpl createResponse(
+      CqlRequest cqlRequest,
+      QueryRequest request,
+      QueryResponse response,
+      long elapsedTime,
+      boolean deferResults) {
     return new CqlQueryResponseImpl(
         cqlRequest.getId(),
         request,
         response,
         cqlRequest.getSourceResponseString(),
-        stopwatch.elapsed(TimeUnit.MILLISECONDS),
+        elapsedTime,
         cqlRequest.isNormalize(),
         filterAdapter,
         actionRegistry,
-        descriptors);
+        descriptors,
+        metacardAttributeCache,
+        transformExecutor,
+        deferResults);
   }
 
   private List<Result> retrieveHitCount(QueryRequest request, List<QueryResponse> responses)
@@ -144,6 +672,27 @@ public class CqlQueriesImpl implements CqlQueries {
         .collect(Collectors.toList());
   }
 
+  /**
+   * Pages through the results of {@code cqlRequest}, querying the catalog for the next page only as
+   * the returned iterator is consumed. Nothing beyond the current page is retained, so exports of
+   * many thousands of results are served in bounded memory.
+   *
+   * @param pageSize the number of results requested from the catalog, and returned, per page
+   */
+  public Iterator<List<Result>> pageResults(CqlRequest cqlRequest, int pageSize) {
+    int maxResults = cqlRequest.getCount();
+    if (maxResults <= 0 || pageSize <= 0) {
+      return Collections.emptyIterator();
+    }
+
+    CqlRequest pageRequest = GSON.fromJson(GSON.toJson(cqlRequest), CqlRequestImpl.class);
+    pageRequest.setCount(Math.min(pageSize, maxResults));
+    QueryRequest request = pageRequest.createQueryRequest(catalogFramework.getId(), filterBuilder);
+    return Iterators.partition(
+        ResultIterable.resultIterable(catalogFramework::query, request, maxResults).iterator(),
+        pageSize);
+  }
+
   @Override
   public CqlRequest getCqlRequestFromJson(String jsonBody) {
     return GSON.fromJson(jsonBody, CqlRequestImpl.class);
@@ -158,4 +707,90 @@ public class CqlQueriesImpl implements CqlQueries {
   public void setDescriptors(TransformerDescriptors descriptors) {
     this.descriptors = descriptors;
   }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setMetacardAttributeCache(MetacardAttributeCache metacardAttributeCache) {
+    this.metacardAttributeCache = metacardAttributeCache;
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setQueryResultCache(QueryResultCache queryResultCache) {
+    this.queryResultCache = queryResultCache;
+    pagePrefetcher.invalidateWith(queryResultCache);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setResultTransformThreads(int resultTransformThreads) {
+    transformExecutor.setThreadPoolSize(resultTransformThreads);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setParallelTransformThreshold(int parallelTransformThreshold) {
+    transformExecutor.setParallelThreshold(parallelTransformThreshold);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setSourceQueryThreads(int sourceQueryThreads) {
+    int poolSize = Math.max(1, sourceQueryThreads);
+    // The core size may not exceed the maximum size, so they are changed in a different order when
+    // growing and shrinking the pool
+    if (poolSize > sourceQueryExecutor.getMaximumPoolSize()) {
+      sourceQueryExecutor.setMaximumPoolSize(poolSize);
+      sourceQueryExecutor.setCorePoolSize(poolSize);
+    } else {
+      sourceQueryExecutor.setCorePoolSize(poolSize);
+      sourceQueryExecutor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setMaxConcurrentQueriesPerSource(int maxConcurrentQueriesPerSource) {
+    this.maxConcurrentQueriesPerSource = Math.max(1, maxConcurrentQueriesPerSource);
+    this.sourcePermits = new ConcurrentHashMap<>();
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setPagePrefetchEnabled(boolean pagePrefetchEnabled) {
+    pagePrefetcher.setEnabled(pagePrefetchEnabled);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+    pagePrefetcher.setMaxConcurrentPrefetches(maxConcurrentPrefetches);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setMaxConcurrentPrefetchesPerUser(int maxConcurrentPrefetchesPerUser) {
+    pagePrefetcher.setMaxConcurrentPrefetchesPerUser(maxConcurrentPrefetchesPerUser);
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setPrefetchTtlSeconds(long prefetchTtlSeconds) {
+    pagePrefetcher.setTtlSeconds(prefetchTtlSeconds);
+  }
+
+  public void destroy() {
+    transformExecutor.destroy();
+    pagePrefetcher.destroy();
+    sourceQueryExecutor.shutdownNow();
+  }
+
+  private static class SourceQuery {
+
+    private final String source;
+
+    private final CqlRequest cqlRequest;
+
+    private final QueryResponse response;
+
+    private final long elapsed;
+
+    private SourceQuery(
+        String source, CqlRequest cqlRequest, QueryResponse response, long elapsed) {
+      this.source = source;
+      this.cqlRequest = cqlRequest;
+      this.response = response;
+      this.elapsed = elapsed;
+    }
+  }
 }
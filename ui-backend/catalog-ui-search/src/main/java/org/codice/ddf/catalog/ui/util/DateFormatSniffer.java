@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.util;
+
+/**
+ * Works out which of the date formats accepted by {@link EndpointUtil#parseDate} a string is in, in
+ * a single pass and without regular expressions. The rules are the same as those of the patterns
+ * previously used:
+ *
+ * <ul>
+ *   <li>{@link Format#ISO_INSTANT}: {@code \d+-?\d+-?\d+T\d+:?\d+:?\d+(\.\d+)?Z}
+ *   <li>{@link Format#ISO_OFFSET}: {@code \d+-?\d+-?\d+T\d+:?\d+:?\d+(\.\d+)?[+\-]\d+:\d+}
+ *   <li>{@link Format#DATE_TO_STRING}: {@code
+ *       [a-zA-Z]{3}\s[a-zA-Z]{3}\s\d+\s[0-9:]+\s(\w+\s)?\d+}
+ * </ul>
+ */
+final class DateFormatSniffer {
+
+  enum Format {
+    ISO_INSTANT,
+    ISO_OFFSET,
+    DATE_TO_STRING,
+    OTHER
+  }
+
+  private DateFormatSniffer() {}
+
+  static Format sniff(String string) {
+    int separator = string.indexOf('T');
+    if (separator > 0 && string.length() > separator + 1) {
+      Format format = sniffIso(string, separator);
+      if (format != null) {
+        return format;
+      }
+    }
+    return isDateToString(string) ? Format.DATE_TO_STRING : Format.OTHER;
+  }
+
+  private static Format sniffIso(String string, int separator) {
+    if (!isDigitGroups(string, 0, separator, '-')) {
+      return null;
+    }
+
+    int end = string.length();
+    Format format;
+    if (string.charAt(end - 1) == 'Z') {
+      format = Format.ISO_INSTANT;
+      end--;
+    } else {
+      int sign = Math.max(string.lastIndexOf('+'), string.lastIndexOf('-'));
+      if (sign <= separator || !isOffset(string, sign + 1, end)) {
+        return null;
+      }
+      format = Format.ISO_OFFSET;
+      end = sign;
+    }
+
+    int fraction = string.indexOf('.', separator);
+    if (fraction >= 0 && fraction < end) {
+      if (!isDigits(string, fraction + 1, end)) {
+        return null;
+      }
+      end = fraction;
+    }
+    return isDigitGroups(string, separator + 1, end, ':') ? format : null;
+  }
+
+  /**
+   * Matches {@code \d+S?\d+S?\d+}, where {@code S} is the separator: up to three groups of digits
+   * with at least three digits in total.
+   */
+  private static boolean isDigitGroups(String string, int from, int to, char separator) {
+    int groups = 1;
+    int digits = 0;
+    char previous = separator;
+    for (int i = from; i < to; i++) {
+      char c = string.charAt(i);
+      if (c == separator) {
+        if (previous == separator) {
+          return false;
+        }
+        groups++;
+      } else if (isDigit(c)) {
+        digits++;
+      } else {
+        return false;
+      }
+      previous = c;
+    }
+    return previous != separator && groups <= 3 && digits >= 3;
+  }
+
+  /** Matches {@code \d+:\d+}. */
+  private static boolean isOffset(String string, int from, int to) {
+    int colon = string.indexOf(':', from);
+    return colon >= 0
+        && colon < to
+        && isDigits(string, from, colon)
+        && isDigits(string, colon + 1, to);
+  }
+
+  /** Matches the output of {@link java.util.Date#toString()}, with an optional time zone. */
+  private static boolean isDateToString(String string) {
+    int length = string.length();
+    int token = 0;
+    int start = 0;
+    int tokens = countTokens(string);
+    if (tokens != 5 && tokens != 6) {
+      return false;
+    }
+
+    for (int i = 0; i <= length; i++) {
+      if (i < length && !isWhitespace(string.charAt(i))) {
+        continue;
+      }
+      if (!isToken(string, start, i, token, tokens)) {
+        return false;
+      }
+      token++;
+      start = i + 1;
+    }
+    return true;
+  }
+
+  private static int countTokens(String string) {
+    int tokens = 1;
+    for (int i = 0; i < string.length(); i++) {
+      if (isWhitespace(string.charAt(i))) {
+        tokens++;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isToken(String string, int from, int to, int token, int tokens) {
+    if (from >= to) {
+      return false;
+    }
+
+    switch (token) {
+      case 0:
+      case 1:
+        return to - from == 3 && isLetters(string, from, to);
+      case 2:
+        return isDigits(string, from, to);
+      case 3:
+        return isTime(string, from, to);
+      case 4:
+        return tokens == 6 ? isWordCharacters(string, from, to) : isDigits(string, from, to);
+      default:
+        return isDigits(string, from, to);
+    }
+  }
+
+  private static boolean isDigits(String string, int from, int to) {
+    if (from >= to) {
+      return false;
+    }
+    for (int i = from; i < to; i++) {
+      if (!isDigit(string.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isTime(String string, int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = string.charAt(i);
+      if (!isDigit(c) && c != ':') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLetters(String string, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (!isLetter(string.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWordCharacters(String string, int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = string.charAt(i);
+      if (!isLetter(c) && !isDigit(c) && c != '_') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  /** The characters matched by {@code \s}. */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+}
@@ -18,6 +18,7 @@ import static ddf.catalog.util.impl.ResultIterable.resultIterable;
 import static javax.ws.rs.core.HttpHeaders.CONTENT_TYPE;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import ddf.catalog.CatalogFramework;
@@ -41,9 +42,15 @@ import ddf.catalog.operation.impl.QueryRequestImpl;
 import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
 import ddf.catalog.util.impl.ResultIterable;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Serializable;
-import java.nio.charset.Charset;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -56,6 +63,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -65,19 +74,26 @@ import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.ws.rs.NotFoundException;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.codice.ddf.catalog.ui.config.ConfigurationApplication;
 import org.codice.ddf.catalog.ui.metacard.EntityTooLargeException;
 import org.codice.ddf.catalog.ui.query.utility.EndpointUtility;
 import org.codice.ddf.catalog.ui.security.LogSanitizer;
+import org.codice.ddf.platform.util.StandardThreadFactoryBuilder;
 import org.codice.gsonsupport.GsonTypeAdapters.LongDoubleTypeAdapter;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.FactoryIteratorProvider;
@@ -110,6 +126,21 @@ public class EndpointUtil implements EndpointUtility {
 
   private static final String ISO_8601_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  /**
+   * {@code SimpleDateFormat}s are not thread-safe, so each thread reuses its own rather than
+   * allocating one for every date parsed.
+   */
+  private static final ThreadLocal<SimpleDateFormat> ISO_8601_FORMAT =
+      ThreadLocal.withInitial(() -> new SimpleDateFormat(ISO_8601_DATE_FORMAT));
+
+  private static final ThreadLocal<SimpleDateFormat> DATE_TO_STRING_FORMAT =
+      ThreadLocal.withInitial(() -> new SimpleDateFormat("EEE MMM d HH:mm:ss zzz yyyy"));
+
+  private static final ThreadLocal<SimpleDateFormat> DEFAULT_DATE_FORMAT =
+      ThreadLocal.withInitial(SimpleDateFormat::new);
+
   private static final String APPLICATION_JSON = "application/json";
 
   private static final String TYPE_KEY = "type";
@@ -122,6 +153,10 @@ public class EndpointUtil implements EndpointUtility {
 
   private static int pageSize = 250;
 
+  private static final int DEFAULT_BULK_LOOKUP_CHUNK_SIZE = 250;
+
+  private static final int DEFAULT_BULK_LOOKUP_THREADS = 4;
+
   private static final Gson GSON =
       new GsonBuilder()
           .disableHtmlEscaping()
@@ -134,6 +169,22 @@ public class EndpointUtil implements EndpointUtility {
 
   private List<String> whiteListedMetacardTypes = Collections.emptyList();
 
+  private volatile int bulkLookupChunkSize = DEFAULT_BULK_LOOKUP_CHUNK_SIZE;
+
+  private volatile int bulkLookupThreads = DEFAULT_BULK_LOOKUP_THREADS;
+
+  private final ThreadPoolExecutor bulkLookupExecutor =
+      new ThreadPoolExecutor(
+          DEFAULT_BULK_LOOKUP_THREADS,
+          DEFAULT_BULK_LOOKUP_THREADS,
+          60L,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          StandardThreadFactoryBuilder.newThreadFactory("bulkLookupThread"));
+
+  private final JsonSnapshot<Map<String, Object>> metacardTypeSnapshot =
+      new JsonSnapshot<>(this::buildMetacardTypeMap, GSON::toJson);
+
   public EndpointUtil(
       List<MetacardType> metacardTypes,
       CatalogFramework catalogFramework,
@@ -148,6 +199,7 @@ public class EndpointUtil implements EndpointUtility {
     this.attributeRegistry = attributeRegistry;
     this.config = config;
     registerGeoToolsFunctionFactory();
+    bulkLookupExecutor.allowCoreThreadTimeOut(true);
   }
 
   public List<String> getWhiteListedMetacardTypes() {
@@ -156,6 +208,48 @@ public class EndpointUtil implements EndpointUtility {
 
   public void setWhiteListedMetacardTypes(List<String> whiteListedMetacardTypes) {
     this.whiteListedMetacardTypes = whiteListedMetacardTypes;
+    metacardTypeSnapshot.invalidate();
+  }
+
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setBulkLookupChunkSize(int bulkLookupChunkSize) {
+    this.bulkLookupChunkSize = Math.max(1, bulkLookupChunkSize);
+  }
+
+  /** @param bulkLookupThreads threads used to query chunks concurrently, or 0 to query in turn */
+  @SuppressWarnings("WeakerAccess" /* setter must be public for blueprint access */)
+  public void setBulkLookupThreads(int bulkLookupThreads) {
+    this.bulkLookupThreads = Math.max(0, bulkLookupThreads);
+    int poolSize = Math.max(1, bulkLookupThreads);
+    // The core size may not exceed the maximum size, so they are changed in a different order when
+    // growing and shrinking the pool
+    if (poolSize > bulkLookupExecutor.getMaximumPoolSize()) {
+      bulkLookupExecutor.setMaximumPoolSize(poolSize);
+      bulkLookupExecutor.setCorePoolSize(poolSize);
+    } else {
+      bulkLookupExecutor.setCorePoolSize(poolSize);
+      bulkLookupExecutor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  public void destroy() {
+    bulkLookupExecutor.shutdownNow();
+  }
+
+  /**
+   * Invalidates the cached metacard type map. Called by blueprint when a {@code MetacardType} or
+   * {@code InjectableAttribute} service is registered.
+   */
+  public void bind(Object service) {
+    metacardTypeSnapshot.invalidate();
+  }
+
+  /**
+   * Invalidates the cached metacard type map. Called by blueprint when a {@code MetacardType} or
+   * {@code InjectableAttribute} service is removed.
+   */
+  public void unbind(Object service) {
+    metacardTypeSnapshot.invalidate();
   }
 
   @SuppressWarnings("squid:S1604") // generics cannot be lambdas
@@ -306,12 +400,57 @@ public class EndpointUtil implements EndpointUtility {
         filterBuilder.attribute(Core.METACARD_TAGS).is().like().text(tag));
   }
 
+  /**
+   * Looks up the metacards with any of the attribute values. Large sets of values are split into
+   * chunks of {@code bulkLookupChunkSize}, which keeps each filter small enough for the providers
+   * to translate, and the chunks are queried concurrently.
+   */
   public Map<String, Result> getMetacardsWithTagByAttributes(
       String attributeName, Collection<String> attributeValues, Filter tagFilter) {
     if (attributeValues.isEmpty()) {
       return new HashMap<>();
     }
 
+    List<List<String>> chunks =
+        Lists.partition(new ArrayList<>(new LinkedHashSet<>(attributeValues)), bulkLookupChunkSize);
+    if (chunks.size() == 1 || bulkLookupThreads == 0) {
+      Map<String, Result> results = new HashMap<>();
+      chunks.forEach(chunk -> merge(results, queryChunk(attributeName, chunk, tagFilter)));
+      return results;
+    }
+
+    Subject subject = ThreadContext.getSubject();
+    List<Future<Map<String, Result>>> futures = new ArrayList<>(chunks.size());
+    for (List<String> chunk : chunks) {
+      Callable<Map<String, Result>> task = () -> queryChunk(attributeName, chunk, tagFilter);
+      futures.add(bulkLookupExecutor.submit(subject == null ? task : subject.associateWith(task)));
+    }
+
+    Map<String, Result> results = new HashMap<>();
+    try {
+      for (Future<Map<String, Result>> future : futures) {
+        merge(results, future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.forEach(future -> future.cancel(true));
+      throw new IllegalStateException("Interrupted while looking up metacards", e);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to look up metacards", e.getCause());
+    }
+    return results;
+  }
+
+  private static void merge(Map<String, Result> results, Map<String, Result> chunkResults) {
+    chunkResults.forEach((id, result) -> results.merge(id, result, EndpointUtil::firstInWinsMerge));
+  }
+
+  private Map<String, Result> queryChunk(
+      String attributeName, Collection<String> attributeValues, Filter tagFilter) {
     Filter attributeFilter = buildAttributeFilter(attributeName, attributeValues, true);
     Filter queryFilter = filterBuilder.allOf(attributeFilter, tagFilter);
 
@@ -378,7 +517,20 @@ public class EndpointUtil implements EndpointUtility {
     return metacardTypes;
   }
 
+  /**
+   * @return an unmodifiable map of metacard type name to a map of attribute name to attribute
+   *     properties, which is cached until the metacard types change
+   */
   public Map<String, Object> getMetacardTypeMap() {
+    return metacardTypeSnapshot.get();
+  }
+
+  /** Spark route that serves {@link #getMetacardTypeMap()} as JSON with an ETag. */
+  public String getMetacardTypeJson(Request request, Response response) {
+    return metacardTypeSnapshot.serve(request, response);
+  }
+
+  private Map<String, Object> buildMetacardTypeMap() {
     Map<String, Object> resultTypes = new HashMap<>();
     for (MetacardType metacardType : getFilteredMetacardTypes()) {
       Map<String, Object> attributes = new HashMap<>();
@@ -415,7 +567,23 @@ public class EndpointUtil implements EndpointUtility {
                   mergeMetacardTypeIntoResults(resultTypes, attribute, attributeProperties, type));
     }
 
-    return resultTypes;
+    return unmodifiableTypeMap(resultTypes);
+  }
+
+  /** Copies the type map into unmodifiable maps, since the cached map is shared by all callers. */
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> unmodifiableTypeMap(Map<String, Object> resultTypes) {
+    Map<String, Object> types = new HashMap<>();
+    for (Entry<String, Object> type : resultTypes.entrySet()) {
+      Map<String, Object> attributes = new HashMap<>();
+      for (Entry<String, Object> attribute : ((Map<String, Object>) type.getValue()).entrySet()) {
+        attributes.put(
+            attribute.getKey(),
+            Collections.unmodifiableMap((Map<String, Object>) attribute.getValue()));
+      }
+      types.put(type.getKey(), Collections.unmodifiableMap(attributes));
+    }
+    return Collections.unmodifiableMap(types);
   }
 
   @SuppressWarnings("unchecked")
@@ -454,30 +622,27 @@ public class EndpointUtil implements EndpointUtility {
     return transformToMap(Collections.singletonList(metacard));
   }
 
+  /**
+   * Groups the metacards by type in a single pass, using the cached metacard type map for the type
+   * descriptions.
+   */
   public Map<String, Object> transformToMap(List<Metacard> metacards) {
-    List<Map<String, Object>> metacardJsons =
-        metacards.stream().map(this::getMetacardMap).collect(Collectors.toList());
-
-    Set<String> types =
-        metacards
-            .stream()
-            .map(Metacard::getMetacardType)
-            .map(MetacardType::getName)
-            .collect(Collectors.toSet());
-
-    List<Map<String, Object>> typesList = new ArrayList<>();
-    for (String type : types) {
+    Map<String, Object> metacardTypeMap = getMetacardTypeMap();
+    List<Map<String, Object>> metacardJsons = new ArrayList<>(metacards.size());
+    Map<String, List<String>> idsByType = new LinkedHashMap<>();
+    for (Metacard metacard : metacards) {
+      metacardJsons.add(getMetacardMap(metacard));
+      idsByType
+          .computeIfAbsent(metacard.getMetacardType().getName(), type -> new ArrayList<>())
+          .add(metacard.getId());
+    }
+
+    List<Map<String, Object>> typesList = new ArrayList<>(idsByType.size());
+    for (Entry<String, List<String>> entry : idsByType.entrySet()) {
       Map<String, Object> typeMap = new HashMap<>();
-      typeMap.put("type-name", type);
-      typeMap.put("type", getMetacardTypeMap().get(type));
-
-      typeMap.put(
-          "ids",
-          metacards
-              .stream()
-              .filter(mc -> type.equals(mc.getMetacardType().getName()))
-              .map(Metacard::getId)
-              .collect(Collectors.toList()));
+      typeMap.put("type-name", entry.getKey());
+      typeMap.put("type", metacardTypeMap.get(entry.getKey()));
+      typeMap.put("ids", entry.getValue());
       typesList.add(typeMap);
     }
 
@@ -501,6 +666,11 @@ public class EndpointUtil implements EndpointUtility {
     return getJson(transformToMap(metacards));
   }
 
+  /** Writes the JSON of {@link #transformToMap(List)} to {@code writer} without buffering it. */
+  public void writeMetacardsJson(List<Metacard> metacards, Writer writer) {
+    GSON.toJson(transformToMap(metacards), writer);
+  }
+
   public String getJson(Object result) {
     return GSON.toJson(result);
   }
@@ -577,8 +747,8 @@ public class EndpointUtil implements EndpointUtility {
     if (value instanceof Date) {
       return ((Date) value).toInstant();
     }
-    SimpleDateFormat dateFormat = new SimpleDateFormat(ISO_8601_DATE_FORMAT);
-    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    SimpleDateFormat dateFormat = ISO_8601_FORMAT.get();
+    dateFormat.setTimeZone(UTC);
     try {
       return dateFormat.parse(value.toString()).toInstant();
     } catch (ParseException e) {
@@ -608,14 +778,6 @@ public class EndpointUtil implements EndpointUtility {
         .orElse(entry);
   }
 
-  private Pattern jsonDefault =
-      Pattern.compile("[a-zA-Z]{3}\\s[a-zA-Z]{3}\\s\\d+\\s[0-9:]+\\s(\\w+\\s)?\\d+");
-
-  private Pattern iso8601Z = Pattern.compile("\\d+-?\\d+-?\\d+T\\d+:?\\d+:?\\d+(\\.\\d+)?Z");
-
-  private Pattern iso8601Offset =
-      Pattern.compile("\\d+-?\\d+-?\\d+T\\d+:?\\d+:?\\d+(\\.\\d+)?[+\\-]\\d+:\\d+");
-
   public Instant parseDate(Serializable value) {
 
     if (value instanceof Date) {
@@ -645,21 +807,20 @@ public class EndpointUtil implements EndpointUtility {
       }
     }
 
-    if (iso8601Z.matcher(string).matches()) {
-      return Instant.parse(string);
-    }
-
-    if (iso8601Offset.matcher(string).matches()) {
-      return OffsetDateTime.parse(string).toInstant();
-    }
-
     SimpleDateFormat dateFormat;
-    if (jsonDefault.matcher(string).matches()) {
-      dateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss zzz yyyy");
-    } else {
-      dateFormat = new SimpleDateFormat();
-    }
-    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    switch (DateFormatSniffer.sniff(string)) {
+      case ISO_INSTANT:
+        return Instant.parse(string);
+      case ISO_OFFSET:
+        return OffsetDateTime.parse(string).toInstant();
+      case DATE_TO_STRING:
+        dateFormat = DATE_TO_STRING_FORMAT.get();
+        break;
+      default:
+        dateFormat = DEFAULT_DATE_FORMAT.get();
+    }
+    // Parsing a time zone name changes the time zone of the format, so it is reset before each use
+    dateFormat.setTimeZone(UTC);
 
     try {
       return dateFormat.parse(string).toInstant();
@@ -670,17 +831,32 @@ public class EndpointUtil implements EndpointUtility {
   }
 
   public String safeGetBody(Request req) throws IOException {
-    if (req.contentLength() > config.getMaximumUploadSize()) {
-      throw new EntityTooLargeException(req.ip(), req.userAgent(), req.url(), random.nextInt());
+    try (Reader reader = safeGetBodyReader(req)) {
+      return IOUtils.toString(reader);
     }
-    byte[] bytes =
-        IOUtils.toByteArray(
-            new BoundedInputStream(req.raw().getInputStream(), config.getMaximumUploadSize() + 1L));
-    if (bytes.length > config.getMaximumUploadSize()) {
+  }
+
+  /**
+   * Reads the request body as UTF-8 without copying it into memory first, so that endpoints can
+   * parse it with {@code GSON.fromJson} directly.
+   *
+   * @throws EntityTooLargeException if the body is larger than the maximum upload size, either
+   *     when it is declared by the {@code Content-Length} or when it is read
+   */
+  public Reader safeGetBodyReader(Request req) throws IOException {
+    int maximumUploadSize = config.getMaximumUploadSize();
+    if (req.contentLength() > maximumUploadSize) {
       throw new EntityTooLargeException(req.ip(), req.userAgent(), req.url(), random.nextInt());
     }
 
-    return new String(bytes, Charset.defaultCharset());
+    InputStream body =
+        new SizeLimitedInputStream(
+            req.raw().getInputStream(),
+            maximumUploadSize,
+            () ->
+                new EntityTooLargeException(
+                    req.ip(), req.userAgent(), req.url(), random.nextInt()));
+    return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
   }
 
   @SuppressWarnings("squid:S1172") // needed for compilation
@@ -778,4 +954,58 @@ public class EndpointUtil implements EndpointUtility {
       return null;
     }
   }
+
+  /** Throws the given exception as soon as more than the limit has been read. */
+  private static class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+
+    private final Supplier<RuntimeException> tooLarge;
+
+    private long count = 0;
+
+    private SizeLimitedInputStream(
+        InputStream inputStream, long limit, Supplier<RuntimeException> tooLarge) {
+      super(inputStream);
+      this.limit = limit;
+      this.tooLarge = tooLarge;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(long read) {
+      count += read;
+      if (count > limit) {
+        throw tooLarge.get();
+      }
+    }
+  }
 }
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.util;
+
+import com.google.common.hash.Hashing;
+import com.google.common.net.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Caches a JSON payload that is expensive to build but rarely changes, together with a strong ETag
+ * of its serialized form. The payload is rebuilt the first time it is requested after {@link
+ * #invalidate()}, or after the maximum age if one is given, and clients that send the current ETag
+ * in {@code If-None-Match} are answered with {@code 304 Not Modified}.
+ *
+ * @param <T> the type of the payload before it is serialized
+ */
+public class JsonSnapshot<T> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JsonSnapshot.class);
+
+  private final Supplier<T> source;
+
+  private final Function<Object, String> serializer;
+
+  private final long maxAgeMillis;
+
+  private final AtomicLong version = new AtomicLong();
+
+  private volatile Snapshot<T> snapshot;
+
+  /**
+   * @param source builds the payload
+   * @param serializer converts the payload to JSON
+   * @param maxAgeMillis how long a snapshot may be served before it is rebuilt, for payloads that
+   *     depend on services that do not call {@link #invalidate()}, or 0 to only rebuild when
+   *     invalidated
+   */
+  public JsonSnapshot(Supplier<T> source, Function<Object, String> serializer, long maxAgeMillis) {
+    this.source = source;
+    this.serializer = serializer;
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  public JsonSnapshot(Supplier<T> source, Function<Object, String> serializer) {
+    this(source, serializer, 0);
+  }
+
+  /** @return the current payload, which must not be modified */
+  public T get() {
+    return current().value;
+  }
+
+  public String getJson() {
+    return current().json;
+  }
+
+  /** @return the quoted strong ETag of the current JSON */
+  public String getETag() {
+    return current().etag;
+  }
+
+  /** Discards the current snapshot, so that it is rebuilt the next time it is requested. */
+  public void invalidate() {
+    version.incrementAndGet();
+  }
+
+  /**
+   * Spark route that serves the current JSON with its ETag, or an empty {@code 304 Not Modified}
+   * response if the request's {@code If-None-Match} header contains the ETag.
+   */
+  public String serve(Request request, Response response) {
+    Snapshot<T> current = current();
+    response.header(HttpHeaders.ETAG, current.etag);
+    response.header(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+    if (matches(request.headers(HttpHeaders.IF_NONE_MATCH), current.etag)) {
+      response.status(304);
+      return "";
+    }
+    return current.json;
+  }
+
+  /**
+   * @param ifNoneMatch the value of the {@code If-None-Match} header
+   * @param etag a quoted strong ETag
+   * @return whether any of the tags in the header match the ETag, using the weak comparison that
+   *     {@code If-None-Match} requires
+   */
+  static boolean matches(@Nullable String ifNoneMatch, String etag) {
+    if (StringUtils.isBlank(ifNoneMatch)) {
+      return false;
+    }
+
+    for (String tag : ifNoneMatch.split(",")) {
+      String candidate = tag.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if ("*".equals(candidate) || etag.equals(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Snapshot<T> current() {
+    Snapshot<T> current = snapshot;
+    if (isCurrent(current, version.get())) {
+      return current;
+    }
+
+    synchronized (this) {
+      current = snapshot;
+      long expected = version.get();
+      if (!isCurrent(current, expected)) {
+        // A snapshot built while being invalidated keeps the older version and is rebuilt next time
+        T value = source.get();
+        String json = serializer.apply(value);
+        current = new Snapshot<>(expected, value, json, etag(json));
+        snapshot = current;
+        LOGGER.trace("Rebuilt JSON snapshot version {} with ETag {}", expected, current.etag);
+      }
+    }
+    return current;
+  }
+
+  private boolean isCurrent(@Nullable Snapshot<T> current, long expected) {
+    return current != null
+        && current.version == expected
+        && (maxAgeMillis <= 0 || System.currentTimeMillis() - current.created < maxAgeMillis);
+  }
+
+  private static String etag(String json) {
+    return '"' + Hashing.sha256().hashString(json, StandardCharsets.UTF_8).toString() + '"';
+  }
+
+  private static class Snapshot<T> {
+
+    private final long version;
+
+    private final long created = System.currentTimeMillis();
+
+    private final T value;
+
+    private final String json;
+
+    private final String etag;
+
+    private Snapshot(long version, T value, String json, String etag) {
+      this.version = version;
+      this.value = value;
+      this.json = json;
+      this.etag = etag;
+    }
+  }
+}
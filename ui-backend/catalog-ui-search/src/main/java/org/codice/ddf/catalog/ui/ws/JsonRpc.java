@@ -42,6 +42,7 @@ public class JsonRpc implements WebSocket {
   private static final String JSON_RPC = "jsonrpc";
   private static final String METHOD = "method";
   private static final String ID = "id";
+  private static final String PROGRESS = "progress";
 
   private static final Gson GSON =
       new GsonBuilder()
@@ -81,6 +82,19 @@ public class JsonRpc implements WebSocket {
     return response;
   }
 
+  private static void sendProgress(Session session, Object id, Object value) {
+    Map<String, Object> params = new HashMap<>();
+    params.put(ID, id);
+    params.put("result", value);
+
+    Map<String, Object> notification = new HashMap<>();
+    notification.put(JSON_RPC, VERSION);
+    notification.put(METHOD, PROGRESS);
+    notification.put("params", params);
+
+    session.getRemote().sendStringByFuture(GSON.toJson(notification));
+  }
+
   private static Error invalid(String message) {
     return invalid(message, null);
   }
@@ -114,7 +128,7 @@ public class JsonRpc implements WebSocket {
 
   @Override
   public void onMessage(Session session, String message) throws IOException {
-    handleMessage(session, message, this::callMethod);
+    handleMessage(session, message, (messageMap, id) -> callMethod(session, messageMap, id));
   }
 
   private void handleMessage(
@@ -176,7 +190,7 @@ public class JsonRpc implements WebSocket {
     }
   }
 
-  private Object callMethod(Map message, Object id) throws JsonRpcException {
+  private Object callMethod(Session session, Map message, Object id) throws JsonRpcException {
     if (!message.containsKey(METHOD)) {
       throw new JsonRpcException(id, invalid(String.format("required key `%s` missing", METHOD)));
     }
@@ -201,7 +215,12 @@ public class JsonRpc implements WebSocket {
     }
 
     try {
-      return methods.get(method).apply(params);
+      Function function = methods.get(method);
+      if (function instanceof ProgressiveFunction) {
+        return ((ProgressiveFunction) function)
+            .apply(params, value -> sendProgress(session, id, value));
+      }
+      return function.apply(params);
     } catch (RuntimeException e) {
       throw new JsonRpcException(id, error(INTERNAL_ERROR, "Internal Error"));
     }
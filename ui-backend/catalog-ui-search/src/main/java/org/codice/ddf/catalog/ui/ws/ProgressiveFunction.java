@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.ws;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A JSON-RPC method that reports intermediate results before it returns. Each value passed to the
+ * progress consumer is sent to the caller as a {@code progress} notification carrying the id of the
+ * request, and the returned value is sent as the response as usual. Callers that do not support
+ * progress notifications only receive the returned value.
+ */
+public interface ProgressiveFunction extends Function<Object, Object> {
+  Object apply(Object params, Consumer<Object> progress);
+
+  @Override
+  default Object apply(Object params) {
+    return apply(params, progress -> {});
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+
+public class ResponseCompressionTest {
+
+  private static final String BODY = StringUtils.repeat("{\"title\":\"compressible\"},", 100);
+
+  private ResponseCompression responseCompression;
+
+  private Request request;
+
+  private Response response;
+
+  private HttpServletResponse rawResponse;
+
+  private ByteArrayOutputStream written;
+
+  @Before
+  public void setUp() throws Exception {
+    responseCompression = new ResponseCompression();
+    request = mock(Request.class);
+    response = mock(Response.class);
+    rawResponse = mock(HttpServletResponse.class);
+    written = new ByteArrayOutputStream();
+
+    when(response.raw()).thenReturn(rawResponse);
+    when(response.body()).thenReturn(BODY);
+    when(request.pathInfo()).thenReturn("/config");
+    ServletOutputStream outputStream = mock(ServletOutputStream.class);
+    doAnswer(
+            invocation -> {
+              written.write(invocation.getArgumentAt(0, byte[].class));
+              return null;
+            })
+        .when(outputStream)
+        .write(any(byte[].class));
+    when(rawResponse.getOutputStream()).thenReturn(outputStream);
+  }
+
+  @Test
+  public void testNegotiationFollowsQValues() {
+    assertThat(ResponseCompression.negotiate("gzip, deflate"), is("gzip"));
+    assertThat(ResponseCompression.negotiate("deflate, gzip;q=0.5"), is("deflate"));
+    assertThat(ResponseCompression.negotiate("br, gzip;q=0"), nullValue());
+    assertThat(ResponseCompression.negotiate("gzip;q=0, *"), is("deflate"));
+    assertThat(ResponseCompression.negotiate("identity"), nullValue());
+    assertThat(ResponseCompression.negotiate(null), nullValue());
+  }
+
+  @Test
+  public void testCompressionRoundTrips() throws Exception {
+    byte[] content = BODY.getBytes(StandardCharsets.UTF_8);
+
+    byte[] gzipped = responseCompression.compress(content, ResponseCompression.GZIP);
+    byte[] deflated = responseCompression.compress(content, ResponseCompression.DEFLATE);
+
+    assertThat(gzipped.length < content.length, is(true));
+    assertThat(read(new GZIPInputStream(new ByteArrayInputStream(gzipped))), is(BODY));
+    assertThat(read(new InflaterInputStream(new ByteArrayInputStream(deflated))), is(BODY));
+  }
+
+  @Test
+  public void testWrappedStreamRoundTrips() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (OutputStream compressed = responseCompression.wrap(output, ResponseCompression.GZIP)) {
+      compressed.write(BODY.getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertThat(read(new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()))), is(BODY));
+  }
+
+  @Test
+  public void testResponseIsCompressedWithNegotiatedEncoding() throws Exception {
+    when(request.headers("Accept-Encoding")).thenReturn("deflate;q=0.9, gzip;q=0.1");
+
+    responseCompression.compress(request, response);
+
+    verify(rawResponse).setHeader("Content-Encoding", "deflate");
+    verify(rawResponse).flushBuffer();
+    assertThat(
+        read(new InflaterInputStream(new ByteArrayInputStream(written.toByteArray()))), is(BODY));
+  }
+
+  @Test
+  public void testSmallResponsesAreNotCompressed() throws Exception {
+    responseCompression.setMinimumCompressionSize(BODY.length() + 1);
+    when(request.headers("Accept-Encoding")).thenReturn("gzip");
+
+    responseCompression.compress(request, response);
+
+    verify(rawResponse, never()).setHeader(anyString(), anyString());
+    verify(rawResponse, never()).getOutputStream();
+  }
+
+  @Test
+  public void testDisabledCompressionIsNotNegotiated() {
+    responseCompression.setCompressionLevel(0);
+
+    assertThat(responseCompression.getContentEncoding("gzip"), nullValue());
+  }
+
+  @Test
+  public void testEncodedResponsesAreLeftAlone() throws Exception {
+    when(request.headers("Accept-Encoding")).thenReturn("gzip");
+    when(rawResponse.containsHeader("Content-Encoding")).thenReturn(true);
+
+    responseCompression.compress(request, response);
+
+    verify(rawResponse, never()).getOutputStream();
+    verify(rawResponse, never()).setContentLength(anyInt());
+  }
+
+  @Test
+  public void testIdenticalCachedBodiesAreCompressedOnce() throws Exception {
+    CountingResponseCompression counting = new CountingResponseCompression();
+    when(request.headers("Accept-Encoding")).thenReturn("gzip");
+
+    counting.compress(request, response);
+    byte[] first = written.toByteArray();
+    written.reset();
+    counting.compress(request, response);
+
+    assertThat(counting.compressions, is(1));
+    assertThat(written.toByteArray(), is(first));
+
+    when(request.pathInfo()).thenReturn("/cql");
+    counting.compress(request, response);
+    assertThat(counting.compressions, is(2));
+  }
+
+  private static String read(InputStream inputStream) throws IOException {
+    try (InputStream in = inputStream) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static class CountingResponseCompression extends ResponseCompression {
+
+    private int compressions = 0;
+
+    @Override
+    public byte[] compress(byte[] content, String encoding) {
+      compressions++;
+      return super.compress(content, encoding);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import ddf.platform.resource.bundle.locator.ResourceBundleLocator;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
@@ -81,6 +82,25 @@ public class ConfigurationApplicationTest {
     }
   }
 
+  @Test
+  public void testRefreshAppliesConfiguration() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("resultCount", 50);
+    properties.put("maximumUploadSize", 1024);
+    properties.put("readOnly", new String[] {"^id"});
+    properties.put("scheduleFrequencyList", new Long[] {60L});
+    properties.put("signInEnabled", "false");
+    properties.put("service.pid", "org.codice.ddf.catalog.ui");
+
+    configurationApplication.refresh(properties);
+
+    assertThat(configurationApplication.getResultCount(), is(50));
+    assertThat(configurationApplication.getMaximumUploadSize(), is(1024));
+    assertThat(configurationApplication.getReadOnly(), is(Collections.singletonList("^id")));
+    assertThat(configurationApplication.getScheduleFrequencyList(), hasItem(60L));
+    assertThat(configurationApplication.getSignInEnabled(), is(false));
+  }
+
   @Test
   public void testSetTerrainProvider() throws Exception {
     // Setup
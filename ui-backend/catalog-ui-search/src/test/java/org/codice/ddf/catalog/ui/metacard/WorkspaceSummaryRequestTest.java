@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.metacard;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.types.Core;
+import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.operation.Query;
+import java.util.Date;
+import java.util.Map;
+import org.junit.Test;
+import org.opengis.filter.sort.SortOrder;
+import spark.Request;
+
+public class WorkspaceSummaryRequestTest {
+
+  private static final FilterBuilder FILTER_BUILDER = mock(FilterBuilder.class, RETURNS_DEEP_STUBS);
+
+  @Test
+  public void testDefaultPageIsSortedByModified() {
+    Request request = mock(Request.class);
+
+    WorkspaceSummaryRequest summaryRequest = new WorkspaceSummaryRequest(request, FILTER_BUILDER);
+    Query query = summaryRequest.getQueryRequest().getQuery();
+
+    assertThat(query.getStartIndex(), is(1));
+    assertThat(query.getPageSize(), is(100));
+    assertThat(query.requestsTotalResultsCount(), is(true));
+    assertThat(query.getSortBy().getPropertyName().getPropertyName(), is(Core.MODIFIED));
+    assertThat(query.getSortBy().getSortOrder(), is(SortOrder.DESCENDING));
+  }
+
+  @Test
+  public void testPageSizeIsCapped() {
+    Request request = mock(Request.class);
+    when(request.queryParams("start")).thenReturn("0");
+    when(request.queryParams("count")).thenReturn("1000");
+    when(request.queryParams("attr")).thenReturn("title");
+    when(request.queryParams("sort_by")).thenReturn("asc");
+
+    WorkspaceSummaryRequest summaryRequest = new WorkspaceSummaryRequest(request, FILTER_BUILDER);
+    Query query = summaryRequest.getQueryRequest().getQuery();
+
+    assertThat(summaryRequest.getStart(), is(1));
+    assertThat(summaryRequest.getCount(), is(100));
+    assertThat(query.getSortBy().getPropertyName().getPropertyName(), is(Core.TITLE));
+    assertThat(query.getSortBy().getSortOrder(), is(SortOrder.ASCENDING));
+  }
+
+  @Test
+  public void testSummarizeProjectsAllFieldsByDefault() {
+    Date modified = new Date();
+    MetacardImpl metacard = new MetacardImpl();
+    metacard.setId("workspace");
+    metacard.setTitle("title");
+    metacard.setAttribute(Core.MODIFIED, modified);
+
+    Map<String, Object> summary =
+        new WorkspaceSummaryRequest(mock(Request.class), FILTER_BUILDER)
+            .summarize(metacard, ImmutableSet.of("workspace"));
+
+    assertThat(summary.keySet(), contains("id", "title", "owner", "modified", "subscribed"));
+    assertThat(summary.get("id"), is("workspace"));
+    assertThat(summary.get("title"), is("title"));
+    assertThat(summary.get("owner"), nullValue());
+    assertThat(summary.get("modified"), is(modified));
+    assertThat(summary.get("subscribed"), is(true));
+  }
+
+  @Test
+  public void testSummarizeProjectsRequestedFields() {
+    Request request = mock(Request.class);
+    when(request.queryParams("fields")).thenReturn("subscribed, ID,unknown");
+    MetacardImpl metacard = new MetacardImpl();
+    metacard.setId("workspace");
+
+    Map<String, Object> summary =
+        new WorkspaceSummaryRequest(request, FILTER_BUILDER)
+            .summarize(metacard, ImmutableSet.of());
+
+    assertThat(summary.keySet(), contains("id", "subscribed"));
+    assertThat(summary.get("subscribed"), is(false));
+  }
+}
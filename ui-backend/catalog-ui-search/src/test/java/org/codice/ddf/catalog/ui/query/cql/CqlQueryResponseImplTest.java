@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import ddf.action.ActionRegistry;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.filter.FilterAdapter;
+import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.filter.proxy.adapter.GeotoolsFilterAdapterImpl;
+import ddf.catalog.filter.proxy.builder.GeotoolsFilterBuilder;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.QueryResponseImpl;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.codice.ddf.catalog.ui.query.utility.CqlResult;
+import org.codice.ddf.catalog.ui.transformer.TransformerDescriptors;
+import org.codice.gsonsupport.GsonTypeAdapters.DateLongFormatTypeAdapter;
+import org.codice.gsonsupport.GsonTypeAdapters.LongDoubleTypeAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CqlQueryResponseImplTest {
+
+  private static final Gson GSON =
+      new GsonBuilder()
+          .disableHtmlEscaping()
+          .serializeNulls()
+          .registerTypeAdapterFactory(LongDoubleTypeAdapter.FACTORY)
+          .registerTypeAdapter(Date.class, new DateLongFormatTypeAdapter())
+          .create();
+
+  private FilterBuilder filterBuilder = new GeotoolsFilterBuilder();
+
+  private FilterAdapter filterAdapter = new GeotoolsFilterAdapterImpl();
+
+  private ActionRegistry actionRegistry;
+
+  private TransformerDescriptors descriptors;
+
+  private QueryRequest request;
+
+  private QueryResponseImpl queryResponse;
+
+  private ResultTransformExecutor transformExecutor;
+
+  private MetacardAttributeCache metacardAttributeCache;
+
+  @Before
+  public void setUp() {
+    actionRegistry = mock(ActionRegistry.class);
+    when(actionRegistry.list(any())).thenReturn(Collections.emptyList());
+    descriptors = mock(TransformerDescriptors.class);
+    transformExecutor = ResultTransformExecutor.sequential();
+    metacardAttributeCache = new MetacardAttributeCache();
+
+    request =
+        new QueryRequestImpl(
+            new QueryImpl(filterBuilder.attribute("anyText").is().like().text("*")));
+
+    List<Result> results = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      MetacardImpl metacard = new MetacardImpl();
+      metacard.setId("id" + i);
+      metacard.setTitle("title " + i);
+      metacard.setLocation("POINT (" + i + " " + i + ")");
+      results.add(new ResultImpl(metacard));
+    }
+    queryResponse = new QueryResponseImpl(request, results, 5L);
+  }
+
+  @Test
+  public void testStreamedResponseMatchesSerializedResponse() throws Exception {
+    CqlQueryResponseImpl eager = createResponse(false);
+    CqlQueryResponseImpl deferred = createResponse(true);
+
+    StringWriter streamed = new StringWriter();
+    try (JsonWriter writer = GSON.newJsonWriter(streamed)) {
+      deferred.writeTo(GSON, writer, () -> 42L);
+    }
+
+    JsonObject expected = withoutCachedDates(new JsonParser().parse(GSON.toJson(eager)));
+    JsonObject actual = withoutCachedDates(new JsonParser().parse(streamed.toString()));
+
+    assertThat(actual.getAsJsonObject("status").remove("allocated").getAsLong(), is(42L));
+    assertThat(actual, is(expected));
+  }
+
+  @Test
+  public void testDeferredResultsAreTransformedOnDemand() {
+    CqlQueryResponseImpl deferred = createResponse(true);
+
+    assertThat(deferred.getResults().size(), is(5));
+    assertThat(deferred.getResults().get(0).getMetacard() != null, is(true));
+  }
+
+  @Test
+  public void testParallelTransformKeepsResultOrder() {
+    transformExecutor = new ResultTransformExecutor(4);
+    transformExecutor.setParallelThreshold(2);
+    try {
+      List<CqlResult> results = createResponse(false).getResults();
+
+      assertThat(results.size(), is(5));
+      for (int i = 0; i < results.size(); i++) {
+        assertThat(getProperties(results.get(i)).get("id"), is("id" + i));
+      }
+    } finally {
+      transformExecutor.destroy();
+    }
+  }
+
+  @Test
+  public void testMetacardTypeAttributesAreCachedAcrossResponses() {
+    String typeName = MetacardImpl.BASIC_METACARD.getName();
+    CqlQueryResponseImpl first = createResponse(false);
+    CqlQueryResponseImpl second = createResponse(false);
+
+    assertThat(first.getTypes().keySet(), is(Collections.singleton(typeName)));
+    assertThat(
+        second.getTypes().get(typeName), is(sameInstance(first.getTypes().get(typeName))));
+    assertThat(metacardAttributeCache.getRebuildCount(), is(1L));
+    assertThat(metacardAttributeCache.getHitCount(), is(1L));
+
+    metacardAttributeCache.unbind(MetacardImpl.BASIC_METACARD);
+    createResponse(false);
+    assertThat(metacardAttributeCache.getRebuildCount(), is(2L));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getProperties(CqlResult result) {
+    return (Map<String, Object>) result.getMetacard().get("properties");
+  }
+
+  private CqlQueryResponseImpl createResponse(boolean deferResults) {
+    return new CqlQueryResponseImpl(
+        "queryId",
+        request,
+        queryResponse,
+        "ddf.distribution",
+        10L,
+        true,
+        filterAdapter,
+        actionRegistry,
+        descriptors,
+        metacardAttributeCache,
+        transformExecutor,
+        deferResults);
+  }
+
+  /** The cached date defaults to the time of the transform, so it differs between transforms. */
+  private static JsonObject withoutCachedDates(JsonElement response) {
+    JsonObject object = response.getAsJsonObject();
+    object
+        .getAsJsonArray("results")
+        .forEach(result -> result.getAsJsonObject().getAsJsonObject("metacard").remove("cached"));
+    return object;
+  }
+}
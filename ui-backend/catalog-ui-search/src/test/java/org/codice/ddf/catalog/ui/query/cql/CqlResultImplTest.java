@@ -14,6 +14,7 @@
 package org.codice.ddf.catalog.ui.query.cql;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -31,9 +32,13 @@ import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
 import java.util.Collections;
 import org.junit.Test;
+import org.locationtech.spatial4j.distance.DistanceUtils;
 
 public class CqlResultImplTest {
 
+  private static final double ONE_DEGREE_IN_METERS =
+      DistanceUtils.degrees2Dist(1, DistanceUtils.EARTH_MEAN_RADIUS_KM) * 1000;
+
   private FilterBuilder filterBuilder = new GeotoolsFilterBuilder();
 
   private FilterAdapter filterAdapter = new GeotoolsFilterAdapterImpl();
@@ -53,6 +58,33 @@ public class CqlResultImplTest {
     distanceCheck(123.0, 123.0);
   }
 
+  @Test
+  public void testDistanceToPointLocation() {
+    assertThat(spatialDistance("POINT (0 1)"), closeTo(ONE_DEGREE_IN_METERS, 1.0));
+  }
+
+  @Test
+  public void testDistanceToPolygonLocationCenter() {
+    String polygon = "POLYGON ((-1 0, 1 0, 1 2, -1 2, -1 0))";
+    assertThat(spatialDistance(polygon), closeTo(ONE_DEGREE_IN_METERS, 1.0));
+    assertThat(spatialDistance(polygon), closeTo(ONE_DEGREE_IN_METERS, 1.0));
+  }
+
+  private Double spatialDistance(String location) {
+    MetacardImpl metacard = new MetacardImpl();
+    metacard.setLocation(location);
+    ActionRegistry actionRegistry = mock(ActionRegistry.class);
+    when(actionRegistry.list(any())).thenReturn(Collections.emptyList());
+    QueryRequest request =
+        new QueryRequestImpl(
+            new QueryImpl(filterBuilder.attribute("location").intersecting().wkt("POINT (0 0)")));
+    SpatialQueryContext spatialQueryContext =
+        SpatialQueryContext.create(request.getQuery(), filterAdapter);
+    return new CqlResultImpl(
+            new ResultImpl(metacard), null, spatialQueryContext, false, actionRegistry)
+        .getDistance();
+  }
+
   private void distanceCheck(Double input, Double output) {
     MetacardImpl metacard = new MetacardImpl();
     ResultImpl result = new ResultImpl(metacard);
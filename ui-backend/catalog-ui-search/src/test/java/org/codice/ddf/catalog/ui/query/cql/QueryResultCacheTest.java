@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.filter.proxy.builder.GeotoolsFilterBuilder;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.operation.impl.DeleteResponseImpl;
+import ddf.catalog.operation.impl.ProcessingDetailsImpl;
+import ddf.catalog.operation.impl.QueryResponseImpl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.codice.ddf.catalog.ui.query.utility.CqlRequest.Sort;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+  private FilterBuilder filterBuilder = new GeotoolsFilterBuilder();
+
+  private String user = "user";
+
+  private QueryResultCache cache;
+
+  @Before
+  public void setUp() {
+    cache =
+        new QueryResultCache() {
+          @Override
+          protected List<Object> getSubjectKey() {
+            return Arrays.asList(user, Collections.singleton("role"));
+          }
+        };
+    cache.setResultCacheEnabled(true);
+  }
+
+  @Test
+  public void testDisabledCacheHasNoKey() {
+    cache.setResultCacheEnabled(false);
+    CqlRequestImpl cqlRequest = cqlRequest("title like 'a'", 1);
+
+    assertThat(cache.createKey(cqlRequest, queryRequest(cqlRequest)), nullValue());
+  }
+
+  @Test
+  public void testEquivalentCqlSharesEntry() {
+    CqlRequestImpl cqlRequest = cqlRequest("title like 'a'", 1);
+    QueryRequest request = queryRequest(cqlRequest);
+    cache.put(cache.createKey(cqlRequest, request), response(request, "id1", "id2"), noDetails());
+
+    CqlRequestImpl equivalent = cqlRequest("title   LIKE 'a'", 1);
+    QueryResponse cached =
+        cache.get(cache.createKey(equivalent, queryRequest(equivalent)), queryRequest(equivalent));
+
+    assertThat(cached, notNullValue());
+    assertThat(cached.getResults().size(), is(2));
+    assertThat(cached.getHits(), is(2L));
+    assertThat(cache.getHitRate(), is(1.0));
+    assertThat(cache.getCachedResultCount(), is(2L));
+  }
+
+  @Test
+  public void testDifferentPageSubjectOrSortMisses() {
+    CqlRequestImpl cqlRequest = cqlRequest("title like 'a'", 1);
+    QueryRequest request = queryRequest(cqlRequest);
+    List<Object> key = cache.createKey(cqlRequest, request);
+    cache.put(key, response(request, "id1"), noDetails());
+
+    CqlRequestImpl nextPage = cqlRequest("title like 'a'", 11);
+    assertThat(cache.createKey(nextPage, queryRequest(nextPage)), not(key));
+
+    CqlRequestImpl sorted = cqlRequest("title like 'a'", 1);
+    sorted.setSorts(Collections.singletonList(new Sort("title", "asc")));
+    assertThat(cache.createKey(sorted, queryRequest(sorted)), not(key));
+
+    user = "other";
+    assertThat(cache.get(cache.createKey(cqlRequest, request), request), nullValue());
+  }
+
+  @Test
+  public void testDeleteInvalidatesEntriesContainingMetacard() {
+    CqlRequestImpl first = cqlRequest("title like 'a'", 1);
+    CqlRequestImpl second = cqlRequest("title like 'b'", 1);
+    List<Object> firstKey = cache.createKey(first, queryRequest(first));
+    List<Object> secondKey = cache.createKey(second, queryRequest(second));
+    cache.put(firstKey, response(queryRequest(first), "id1", "id2"), noDetails());
+    cache.put(secondKey, response(queryRequest(second), "id3"), noDetails());
+
+    MetacardImpl deleted = new MetacardImpl();
+    deleted.setId("id2");
+    cache.process(new DeleteResponseImpl(null, null, Collections.singletonList(deleted)));
+
+    assertThat(cache.get(firstKey, queryRequest(first)), nullValue());
+    assertThat(cache.get(secondKey, queryRequest(second)), notNullValue());
+    assertThat(cache.getCachedResultCount(), is(1L));
+  }
+
+  @Test
+  public void testCreateInvalidatesEntriesForItsSource() {
+    CqlRequestImpl local = cqlRequest("title like 'a'", 1);
+    CqlRequestImpl remote = cqlRequest("title like 'a'", 1);
+    remote.setSrc("remote");
+    List<Object> localKey = cache.createKey(local, queryRequest(local));
+    List<Object> remoteKey = cache.createKey(remote, queryRequest(remote));
+    cache.put(localKey, response(queryRequest(local), "id1"), noDetails());
+    cache.put(remoteKey, response(queryRequest(remote), "id2"), noDetails());
+
+    MetacardImpl created = new MetacardImpl();
+    created.setId("id3");
+    created.setSourceId("ddf.distribution");
+    cache.process(new CreateResponseImpl(null, null, Collections.singletonList(created)));
+
+    assertThat(cache.get(localKey, queryRequest(local)), nullValue());
+    assertThat(cache.get(remoteKey, queryRequest(remote)), notNullValue());
+  }
+
+  @Test
+  public void testDependentCacheIsInvalidatedWithThisCache() {
+    QueryResultCache dependent =
+        new QueryResultCache() {
+          @Override
+          protected List<Object> getSubjectKey() {
+            return Arrays.asList(user, Collections.singleton("role"));
+          }
+        };
+    dependent.setResultCacheEnabled(true);
+    cache.addDependentCache(dependent);
+    CqlRequestImpl cqlRequest = cqlRequest("title like 'a'", 11);
+    QueryRequest request = queryRequest(cqlRequest);
+    List<Object> key = dependent.createKey(cqlRequest, request);
+    dependent.put(key, response(request, "id1"), noDetails());
+
+    MetacardImpl deleted = new MetacardImpl();
+    deleted.setId("id1");
+    cache.process(new DeleteResponseImpl(null, null, Collections.singletonList(deleted)));
+
+    assertThat(dependent.get(key, request), nullValue());
+  }
+
+  @Test
+  public void testResponseReadBeforeIngestIsNotCached() {
+    CqlRequestImpl cqlRequest = cqlRequest("title like 'a'", 1);
+    QueryRequest request = queryRequest(cqlRequest);
+    List<Object> key = cache.createKey(cqlRequest, request);
+    long generation = cache.getGeneration();
+
+    MetacardImpl deleted = new MetacardImpl();
+    deleted.setId("id1");
+    cache.process(new DeleteResponseImpl(null, null, Collections.singletonList(deleted)));
+    cache.put(key, generation, response(request, "id1"), noDetails());
+
+    assertThat(cache.get(key, request), nullValue());
+  }
+
+  @Test
+  public void testResponsesWithProcessingDetailsAreNotCached() {
+    CqlRequestImpl cqlRequest = cqlRequest("title like 'a'", 1);
+    QueryRequest request = queryRequest(cqlRequest);
+    QueryResponseImpl sourceResponse = response(request, "id1");
+    sourceResponse
+        .getProcessingDetails()
+        .add(new ProcessingDetailsImpl("source", new Exception("unavailable")));
+    List<Object> key = cache.createKey(cqlRequest, request);
+
+    cache.put(key, sourceResponse, Collections.singletonList(sourceResponse));
+
+    assertThat(cache.get(key, request), nullValue());
+  }
+
+  @Test
+  public void testCacheIsBoundedByResultCount() {
+    cache.setResultCacheMaxResults(3);
+    for (int i = 0; i < 10; i++) {
+      CqlRequestImpl cqlRequest = cqlRequest("title like '" + i + "'", 1);
+      QueryRequest request = queryRequest(cqlRequest);
+      cache.put(
+          cache.createKey(cqlRequest, request), response(request, "a" + i, "b" + i), noDetails());
+    }
+
+    assertThat(cache.getCachedResultCount() <= 3, is(true));
+    assertThat(cache.getEvictionCount() > 0, is(true));
+  }
+
+  private CqlRequestImpl cqlRequest(String cql, int start) {
+    CqlRequestImpl cqlRequest = new CqlRequestImpl();
+    cqlRequest.setCql(cql);
+    cqlRequest.setSrc("local");
+    cqlRequest.setStart(start);
+    return cqlRequest;
+  }
+
+  private QueryRequest queryRequest(CqlRequestImpl cqlRequest) {
+    return cqlRequest.createQueryRequest("ddf.distribution", filterBuilder);
+  }
+
+  private static QueryResponseImpl response(QueryRequest request, String... ids) {
+    List<Result> results = new ArrayList<>();
+    for (String id : ids) {
+      MetacardImpl metacard = new MetacardImpl();
+      metacard.setId(id);
+      results.add(new ResultImpl(metacard));
+    }
+    return new QueryResponseImpl(request, results, ids.length);
+  }
+
+  private static List<QueryResponse> noDetails() {
+    return Collections.emptyList();
+  }
+}
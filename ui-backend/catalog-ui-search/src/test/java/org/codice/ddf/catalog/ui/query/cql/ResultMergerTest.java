@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.filter.impl.SortByImpl;
+import ddf.catalog.filter.proxy.builder.GeotoolsFilterBuilder;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.opengis.filter.sort.SortOrder;
+
+public class ResultMergerTest {
+
+  @Test
+  public void testMergedByTitle() {
+    QueryRequest request = request(new SortByImpl("title", SortOrder.ASCENDING));
+
+    List<Result> merged =
+        ResultMerger.merge(
+            Arrays.asList(
+                Arrays.asList(result("a", 0), result("c", 0), result("e", 0)),
+                Arrays.asList(result("b", 0), result(null, 0), result("d", 0))),
+            request,
+            2,
+            3);
+
+    assertThat(titles(merged), contains("b", "c", "d"));
+  }
+
+  @Test
+  public void testMergedByTemporalDescending() {
+    QueryRequest request = request(new SortByImpl(Result.TEMPORAL, SortOrder.DESCENDING));
+
+    List<Result> merged =
+        ResultMerger.merge(
+            Arrays.asList(
+                Arrays.asList(result("old", 1), result("oldest", 0)),
+                Arrays.asList(result("new", 3), result("newer", 4))),
+            request,
+            1,
+            10);
+
+    assertThat(titles(merged), contains("newer", "new", "old", "oldest"));
+  }
+
+  @Test
+  public void testMergedWithDifferentTypesFromEachSource() {
+    QueryRequest request = request(new SortByImpl("sortKey", SortOrder.ASCENDING));
+
+    List<Result> merged =
+        ResultMerger.merge(
+            Arrays.asList(
+                Arrays.asList(result("date", 0, new Date(0)), result("long", 0, 2L)),
+                Arrays.asList(result("string", 0, "a"), result("integer", 0, 1))),
+            request,
+            1,
+            10);
+
+    assertThat(titles(merged), contains("integer", "long", "string", "date"));
+  }
+
+  private static QueryRequest request(SortByImpl sortBy) {
+    return new QueryRequestImpl(
+        new QueryImpl(
+            new GeotoolsFilterBuilder().attribute("anyText").is().like().text("*"),
+            1,
+            10,
+            sortBy,
+            true,
+            1000));
+  }
+
+  private static Result result(String title, long effective) {
+    MetacardImpl metacard = new MetacardImpl();
+    metacard.setTitle(title);
+    metacard.setEffectiveDate(new Date(effective));
+    return new ResultImpl(metacard);
+  }
+
+  private static Result result(String title, long effective, Serializable sortKey) {
+    Result result = result(title, effective);
+    result.getMetacard().setAttribute(new AttributeImpl("sortKey", sortKey));
+    return result;
+  }
+
+  private static List<String> titles(List<Result> results) {
+    return results
+        .stream()
+        .map(result -> result.getMetacard().getTitle())
+        .collect(Collectors.toList());
+  }
+}
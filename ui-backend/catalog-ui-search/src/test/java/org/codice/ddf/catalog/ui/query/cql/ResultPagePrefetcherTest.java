@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.cql;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultPagePrefetcherTest {
+
+  private String user = "user";
+
+  private ResultPagePrefetcher prefetcher;
+
+  private CountDownLatch release;
+
+  @Before
+  public void setUp() {
+    Subject subject = mock(Subject.class);
+    when(subject.associateWith(any(Callable.class)))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, Callable.class));
+    ThreadContext.bind(subject);
+
+    prefetcher =
+        new ResultPagePrefetcher() {
+          @Override
+          protected String getUserName(Subject subject) {
+            return user;
+          }
+        };
+    prefetcher.setEnabled(true);
+    release = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    prefetcher.destroy();
+    ThreadContext.unbindSubject();
+  }
+
+  @Test
+  public void testDisabledPrefetcherSkips() {
+    prefetcher.setEnabled(false);
+
+    assertThat(prefetcher.submit(() -> null), is(false));
+  }
+
+  @Test
+  public void testPerUserLimit() {
+    prefetcher.setMaxConcurrentPrefetchesPerUser(2);
+
+    assertThat(prefetcher.submit(this::block), is(true));
+    assertThat(prefetcher.submit(this::block), is(true));
+    assertThat(prefetcher.submit(this::block), is(false));
+
+    user = "other";
+    assertThat(prefetcher.submit(this::block), is(true));
+  }
+
+  @Test
+  public void testOverallLimit() {
+    prefetcher.setMaxConcurrentPrefetches(1);
+
+    assertThat(prefetcher.submit(this::block), is(true));
+
+    user = "other";
+    assertThat(prefetcher.submit(this::block), is(false));
+  }
+
+  @Test
+  public void testPermitsAreReleasedWhenPrefetchCompletes() throws Exception {
+    prefetcher.setMaxConcurrentPrefetches(1);
+    CountDownLatch done = new CountDownLatch(1);
+
+    assertThat(
+        prefetcher.submit(
+            () -> {
+              done.countDown();
+              throw new IllegalStateException("source unavailable");
+            }),
+        is(true));
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+
+    long deadline = System.currentTimeMillis() + 5000;
+    boolean submitted = false;
+    while (!submitted && System.currentTimeMillis() < deadline) {
+      submitted = prefetcher.submit(() -> null);
+    }
+    assertThat(submitted, is(true));
+  }
+
+  private Object block() throws InterruptedException {
+    release.await(5, TimeUnit.SECONDS);
+    return null;
+  }
+}
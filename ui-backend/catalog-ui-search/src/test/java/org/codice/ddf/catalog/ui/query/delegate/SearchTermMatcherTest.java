@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.delegate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class SearchTermMatcherTest {
+
+  private static final String METADATA =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\">\r\n"
+          + "  <gmd:title>Flood Imagery of the Lower Basin</gmd:title>\n"
+          + "\n"
+          + "  <gmd:abstract>Imagery collected after the flooding; basin-wide coverage."
+          + "</gmd:abstract>\n"
+          + "  <gmd:keyword>flood</gmd:keyword><gmd:keyword>FLOODPLAIN</gmd:keyword>\n"
+          + "</metadata>\n";
+
+  @Test
+  public void testExactAndWildcardTerms() {
+    SearchTermMatcher matcher = new SearchTermMatcher(terms("flood", "basin*", "*age*", "x*y"));
+
+    Map<String, Integer> matches = matcher.countMatches(ImmutableList.of(METADATA));
+
+    assertThat(matches, hasEntry("flood", 2));
+    assertThat(matches, hasEntry("basin*", 2));
+    assertThat(matches, hasEntry("*age*", 3));
+    assertThat(matches, not(hasKey("x*y")));
+  }
+
+  @Test
+  public void testNoValuesHasNoTokenCount() {
+    SearchTermMatcher matcher = new SearchTermMatcher(terms("flood"));
+
+    assertThat(matcher.countMatches(Collections.emptyList()).isEmpty(), is(true));
+  }
+
+  @Test
+  public void testScanIsCappedPerValue() {
+    SearchTermMatcher matcher = new SearchTermMatcher(terms("flood"), 11);
+
+    Map<String, Integer> matches =
+        matcher.countMatches(ImmutableList.of("flood flood flood", "flood"));
+
+    assertThat(matches, hasEntry("flood", 3));
+    assertThat(matches, hasEntry("*", 3));
+  }
+
+  @Test
+  public void testMatchesLegacyTokenizationOnLargeMetadata() throws IOException {
+    List<SearchTerm> searchTerms = terms("flood", "basin*", "*age*", "gmd", "imagery", "*");
+    List<String> values =
+        ImmutableList.of(StringUtils.repeat(METADATA, 500), "", "\n", " leading", "title");
+
+    assertThat(
+        new SearchTermMatcher(searchTerms).countMatches(values),
+        is(legacyCountMatches(searchTerms, values)));
+  }
+
+  @Test
+  public void testMatchesLegacyTokenizationOnRandomInput() throws IOException {
+    Random random = new Random(0);
+    String alphabet = "abAB c.\n\r-_*\t";
+    String[] termPool = {"a", "ab", "b*", "a*b", "*b", "**", "", "ba", "*", "a*b*a", "*a*"};
+
+    for (int i = 0; i < 2000; i++) {
+      List<SearchTerm> searchTerms = new ArrayList<>();
+      for (int j = random.nextInt(5); j > 0; j--) {
+        searchTerms.add(new SearchTerm(termPool[random.nextInt(termPool.length)]));
+      }
+      List<String> values = new ArrayList<>();
+      for (int j = random.nextInt(3); j > 0; j--) {
+        StringBuilder value = new StringBuilder();
+        for (int k = random.nextInt(12); k > 0; k--) {
+          value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        values.add(value.toString());
+      }
+
+      assertThat(
+          new SearchTermMatcher(searchTerms).countMatches(values),
+          is(legacyCountMatches(searchTerms, values)));
+    }
+  }
+
+  private static List<SearchTerm> terms(String... terms) {
+    return Arrays.stream(terms).map(SearchTerm::new).collect(Collectors.toList());
+  }
+
+  /** The per-token regular expression matching previously done by CqlResultImpl. */
+  private static Map<String, Integer> legacyCountMatches(
+      List<SearchTerm> searchTerms, List<String> textAttributes) throws IOException {
+    Map<String, Integer> matches = new HashMap<>();
+    List<SearchTerm> terms =
+        searchTerms
+            .stream()
+            .filter(term -> !"*".equals(term.getTerm()))
+            .collect(Collectors.toList());
+
+    int totalTokens = 0;
+    for (String value : textAttributes) {
+      BufferedReader reader = new BufferedReader(new StringReader(value.toLowerCase()));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        for (String token : line.split("[\\s\\p{Punct}]+")) {
+          totalTokens++;
+          for (SearchTerm term : terms) {
+            if (term.match(token)) {
+              matches.put(term.getTerm(), matches.getOrDefault(term.getTerm(), 0) + 1);
+            }
+          }
+        }
+      }
+      matches.put("*", totalTokens);
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+  @Test
+  public void testBoundedRange() {
+    ByteRange range = ByteRange.parse("bytes=10-19", 100);
+
+    assertThat(range.isSatisfiable(), is(true));
+    assertThat(range.getStart(), is(10L));
+    assertThat(range.getLength(), is(10L));
+    assertThat(range.getContentRange(), is("bytes 10-19/100"));
+  }
+
+  @Test
+  public void testOpenEndedRangeIsClampedToContent() {
+    assertThat(ByteRange.parse("bytes=90-", 100).getContentRange(), is("bytes 90-99/100"));
+    assertThat(ByteRange.parse("bytes=90-500", 100).getContentRange(), is("bytes 90-99/100"));
+  }
+
+  @Test
+  public void testSuffixRange() {
+    assertThat(ByteRange.parse("bytes=-30", 100).getContentRange(), is("bytes 70-99/100"));
+    assertThat(ByteRange.parse("bytes=-300", 100).getContentRange(), is("bytes 0-99/100"));
+  }
+
+  @Test
+  public void testRangePastContentIsUnsatisfiable() {
+    ByteRange range = ByteRange.parse("bytes=100-", 100);
+
+    assertThat(range.isSatisfiable(), is(false));
+    assertThat(range.getContentRange(), is("bytes */100"));
+  }
+
+  @Test
+  public void testUnsupportedRangesServeWholeContent() {
+    assertThat(ByteRange.parse(null, 100), nullValue());
+    assertThat(ByteRange.parse("items=0-10", 100), nullValue());
+    assertThat(ByteRange.parse("bytes=0-10,20-30", 100), nullValue());
+    assertThat(ByteRange.parse("bytes=20-10", 100), nullValue());
+    assertThat(ByteRange.parse("bytes=a-b", 100), nullValue());
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.shiro.subject.Subject;
+import org.codice.ddf.catalog.ui.query.export.ExportJob.Status;
+import org.codice.ddf.catalog.ui.query.handlers.CqlTransformHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportJobServiceTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String owner = "user";
+
+  private CqlTransformHandler transformHandler;
+
+  private ExportJobService exportJobService;
+
+  @Before
+  public void setUp() throws Exception {
+    transformHandler = mock(CqlTransformHandler.class);
+    when(transformHandler.hasTransformer("csv")).thenReturn(true);
+    when(transformHandler.getExportFileName("text/csv")).thenReturn("export.csv");
+    when(transformHandler.export(anyString(), anyString(), any(OutputStream.class)))
+        .thenAnswer(
+            invocation -> {
+              String body = invocation.getArgumentAt(1, String.class);
+              if (body.isEmpty()) {
+                throw new IllegalArgumentException("Cql not found in request");
+              }
+              invocation
+                  .getArgumentAt(2, OutputStream.class)
+                  .write(body.getBytes(StandardCharsets.UTF_8));
+              return "text/csv";
+            });
+
+    exportJobService =
+        new ExportJobService(transformHandler) {
+          @Override
+          protected String getOwner(Subject subject) {
+            return owner;
+          }
+        };
+    exportJobService.setExportDirectory(temporaryFolder.getRoot().getAbsolutePath());
+  }
+
+  @After
+  public void tearDown() {
+    exportJobService.destroy();
+  }
+
+  @Test
+  public void testCompletedExportIsWrittenToFile() throws Exception {
+    ExportJob job = awaitDone(exportJobService.submit("csv", "id,title"));
+
+    assertThat(job.getStatus(), is(Status.COMPLETE));
+    assertThat(job.getMimeType(), is("text/csv"));
+    assertThat(job.getFileName(), is("export.csv"));
+    assertThat(job.getSize(), is(8L));
+
+    Path file = exportJobService.getFile(job);
+    assertThat(file, notNullValue());
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), is("id,title"));
+  }
+
+  @Test
+  public void testFailedExportReportsMessage() throws Exception {
+    ExportJob job = awaitDone(exportJobService.submit("csv", ""));
+
+    assertThat(job.getStatus(), is(Status.FAILED));
+    assertThat(job.getMessage(), is("Cql not found in request"));
+    assertThat(exportJobService.getFile(job), nullValue());
+  }
+
+  @Test
+  public void testExportFailsIfTheDirectoryCannotBeCreated() throws Exception {
+    exportJobService.setExportDirectory(temporaryFolder.newFile().getAbsolutePath());
+
+    ExportJob job = awaitDone(exportJobService.submit("csv", "id,title"));
+
+    assertThat(job.getStatus(), is(Status.FAILED));
+    assertThat(job.getMessage(), is("Export failed"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownTransformerIsRejected() {
+    exportJobService.submit("kml", "id,title");
+  }
+
+  @Test
+  public void testJobsAreOnlyVisibleToTheirOwner() throws Exception {
+    ExportJob job = awaitDone(exportJobService.submit("csv", "id,title"));
+
+    owner = "other";
+    assertThat(exportJobService.getJob(job.getId()), nullValue());
+    assertThat(exportJobService.cancel(job.getId()), is(false));
+
+    owner = "user";
+    assertThat(exportJobService.cancel(job.getId()), is(true));
+    assertThat(exportJobService.getJob(job.getId()), nullValue());
+  }
+
+  @Test
+  public void testOldestExportsAreEvictedOverStorageLimit() throws Exception {
+    ExportJob oldest = awaitDone(exportJobService.submit("csv", "first"));
+    Thread.sleep(5);
+    ExportJob newest = awaitDone(exportJobService.submit("csv", "second"));
+
+    exportJobService.setMaxExportStorageMegabytes(0);
+    exportJobService.evict();
+
+    assertThat(exportJobService.getJob(oldest.getId()), nullValue());
+    assertThat(exportJobService.getJob(newest.getId()), nullValue());
+    assertThat(temporaryFolder.getRoot().list().length, is(0));
+  }
+
+  @Test
+  public void testExpiredExportsAreEvicted() throws Exception {
+    ExportJob job = awaitDone(exportJobService.submit("csv", "id,title"));
+
+    exportJobService.evict();
+    assertThat(exportJobService.getJob(job.getId()), notNullValue());
+
+    exportJobService.setExportRetentionMinutes(0);
+    Thread.sleep(5);
+    exportJobService.evict();
+    assertThat(exportJobService.getJob(job.getId()), nullValue());
+  }
+
+  private ExportJob awaitDone(ExportJob job) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+    while (!job.getStatus().isDone() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    return job;
+  }
+}
@@ -19,7 +19,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -33,6 +36,7 @@ import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.transform.QueryResponseTransformer;
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,8 +44,10 @@ import javax.activation.MimeType;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.HttpHeaders;
+import org.codice.ddf.catalog.ui.metacard.transformer.StreamingQueryResponseTransformer;
 import org.codice.ddf.catalog.ui.query.cql.CqlQueryResponseImpl;
 import org.codice.ddf.catalog.ui.query.cql.CqlRequestImpl;
+import org.codice.ddf.catalog.ui.transformer.CsvStreamingQueryResponseTransformer;
 import org.codice.ddf.catalog.ui.util.CqlQueriesImpl;
 import org.codice.ddf.catalog.ui.util.EndpointUtil;
 import org.codice.gsonsupport.GsonTypeAdapters.LongDoubleTypeAdapter;
@@ -70,6 +76,8 @@ public class CqlTransformHandlerTest {
   @Mock private QueryResponseTransformer mockQueryResponseTransformer;
   @Mock private ServletOutputStream mockServletOutputStream;
   @Mock private HttpServletResponse mockHttpServletResponse;
+  @Mock private ServiceReference<QueryResponseTransformer> mockCsvServiceReference;
+  @Mock private ServiceReference<StreamingQueryResponseTransformer> mockStreamingServiceReference;
 
   private static final Gson GSON =
       new GsonBuilder()
@@ -86,6 +94,10 @@ public class CqlTransformHandlerTest {
   private static final String SAFE_BODY =
       "{\"src\":\"ddf.distribution\",\"start\":1,\"count\":250,\"cql\":\"anyText ILIKE '*'\",\"sorts\":[{\"attribute\":\"modified\",\"direction\":\"descending\"}],\"id\":\"7a491439-948e-431b-815e-a04f32fecec9\"}";
   private static final String CONTENT = "test";
+  private static final String CSV_ID = "csv";
+  private static final String CSV_MIME_TYPE = "text/csv";
+  private static final String CSV_BODY =
+      "{\"src\":\"ddf.distribution\",\"count\":250,\"cql\":\"anyText ILIKE '*'\",\"columnOrder\":[\"title\",\"id\"]}";
   private static final String SERVICE_NOT_FOUND = "\"Service not found\"";
   private static final String SERVICE_SUCCESS = GSON.toJson("");
   private static final String ATTACHMENT_REGEX =
@@ -221,4 +233,53 @@ public class CqlTransformHandlerTest {
     assertNull(mockResponse.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
     assertThat(mockResponse.type(), is(MIME_TYPE));
   }
+
+  @Test
+  public void testCsvExportWithColumnOrderIsStreamed() throws Exception {
+    setUpCsvTransformers();
+    when(mockEndpointUtil.safeGetBody(mockRequest)).thenReturn(CSV_BODY);
+    when(mockCqlQueryUtil.pageResults(any(CqlRequestImpl.class), anyInt()))
+        .thenReturn(Collections.emptyIterator());
+
+    cqlTransformHandler.handle(mockRequest, mockResponse);
+
+    assertThat(mockResponse.type(), is(CSV_MIME_TYPE));
+    verify(mockCqlQueryUtil).pageResults(any(CqlRequestImpl.class), anyInt());
+    verify(mockCqlQueryUtil, never()).executeCqlQuery(any(CqlRequestImpl.class));
+  }
+
+  @Test
+  public void testCsvExportWithoutColumnOrderIsNotStreamed() throws Exception {
+    setUpCsvTransformers();
+
+    cqlTransformHandler.handle(mockRequest, mockResponse);
+
+    assertThat(mockResponse.type(), is(CSV_MIME_TYPE));
+    verify(mockCqlQueryUtil).executeCqlQuery(any(CqlRequestImpl.class));
+    verify(mockCqlQueryUtil, never()).pageResults(any(CqlRequestImpl.class), anyInt());
+  }
+
+  private void setUpCsvTransformers() throws Exception {
+    when(mockRequest.params(QUERY_PARAM)).thenReturn(CSV_ID);
+
+    when(mockCsvServiceReference.getProperty(Core.ID)).thenReturn(CSV_ID);
+    when(mockCsvServiceReference.getProperty("mime-type"))
+        .thenReturn(ImmutableList.of(CSV_MIME_TYPE));
+    when(mockBundleContext.getService(mockCsvServiceReference))
+        .thenReturn(mockQueryResponseTransformer);
+    when(mockQueryResponseTransformer.transform(any(QueryResponse.class), anyMap()))
+        .thenReturn(
+            new BinaryContentImpl(
+                new ByteArrayInputStream(CONTENT.getBytes()), new MimeType(CSV_MIME_TYPE)));
+    queryResponseTransformers.add(mockCsvServiceReference);
+
+    when(mockStreamingServiceReference.getProperty(Core.ID)).thenReturn(CSV_ID);
+    when(mockStreamingServiceReference.getProperty("mime-type"))
+        .thenReturn(ImmutableList.of(CSV_MIME_TYPE));
+    when(mockBundleContext.getService(mockStreamingServiceReference))
+        .thenReturn(new CsvStreamingQueryResponseTransformer());
+    cqlTransformHandler.setStreamingQueryResponseTransformers(
+        Collections.singletonList(mockStreamingServiceReference));
+    cqlTransformHandler.setStreamingExportsEnabled(true);
+  }
 }
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.monitor.email;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import org.apache.commons.lang3.tuple.Pair;
+import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
+import org.codice.ddf.catalog.ui.query.monitor.api.MetacardFormatter;
+import org.codice.ddf.catalog.ui.subscription.SubscriptionsPersistentStore;
+import org.codice.ddf.platform.email.SmtpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class EmailNotifierTest {
+
+  private static final String DIGEST_SUBJECT = "digest";
+
+  private SubscriptionsPersistentStore subscriptionsPersistentStore;
+
+  private SmtpClient smtpClient;
+
+  private EmailNotifier emailNotifier;
+
+  @Before
+  public void setup() {
+    MetacardFormatter metacardFormatter = mock(MetacardFormatter.class);
+    when(metacardFormatter.format(anyString(), any(), anyLong()))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, String.class));
+    subscriptionsPersistentStore = mock(SubscriptionsPersistentStore.class);
+    smtpClient = mock(SmtpClient.class);
+    when(smtpClient.createSession()).thenReturn(Session.getInstance(new Properties()));
+
+    emailNotifier =
+        new EmailNotifier(
+            "body",
+            "subject",
+            "from@example.com",
+            metacardFormatter,
+            subscriptionsPersistentStore,
+            smtpClient);
+    emailNotifier.setDigestSubject(DIGEST_SUBJECT);
+    emailNotifier.setWorkerThreads(1);
+  }
+
+  @After
+  public void tearDown() {
+    emailNotifier.destroy();
+  }
+
+  @Test
+  public void testNotificationsForARecipientAreGrouped() throws MessagingException {
+    when(smtpClient.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+    when(subscriptionsPersistentStore.getEmails(any()))
+        .thenReturn(
+            ImmutableMap.of(
+                "1", ImmutableSet.of("a@example.com"), "2", ImmutableSet.of("a@example.com")));
+
+    emailNotifier.notify(notifications("1", "2"));
+
+    ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+    verify(smtpClient, timeout(5000)).send(captor.capture());
+    assertThat(recipient(captor.getValue()), is("a@example.com"));
+    assertThat(captor.getValue().getSubject(), is(DIGEST_SUBJECT));
+  }
+
+  @Test
+  public void testQueuedNotificationsForARecipientAreMerged()
+      throws MessagingException, InterruptedException {
+    // Keep the only worker busy with an email to b until both workspaces are queued for a, one call
+    // at a time
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(smtpClient.send(any()))
+        .thenAnswer(
+            invocation -> {
+              if ("b@example.com".equals(recipient(invocation.getArgumentAt(0, Message.class)))) {
+                sending.countDown();
+                release.await();
+              }
+              return CompletableFuture.completedFuture(null);
+            });
+
+    when(subscriptionsPersistentStore.getEmails(any()))
+        .thenReturn(ImmutableMap.of("0", ImmutableSet.of("b@example.com")))
+        .thenReturn(ImmutableMap.of("1", ImmutableSet.of("a@example.com")))
+        .thenReturn(ImmutableMap.of("2", ImmutableSet.of("a@example.com")));
+
+    emailNotifier.notify(notifications("0"));
+    sending.await();
+    emailNotifier.notify(notifications("1"));
+    emailNotifier.notify(notifications("2"));
+    release.countDown();
+
+    ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+    verify(smtpClient, timeout(5000).times(2)).send(captor.capture());
+    List<Message> messages = captor.getAllValues();
+    assertThat(recipient(messages.get(1)), is("a@example.com"));
+    assertThat(messages.get(1).getSubject(), is(DIGEST_SUBJECT));
+    assertThat(messages.get(0).getSubject(), is("subject"));
+  }
+
+  @Test
+  public void testNotifyFailsWhenTheQueueIsFull() throws InterruptedException {
+    emailNotifier.setMaxQueuedEmails(1);
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(smtpClient.send(any()))
+        .thenAnswer(
+            invocation -> {
+              sending.countDown();
+              release.await();
+              return CompletableFuture.completedFuture(null);
+            });
+    when(subscriptionsPersistentStore.getEmails(any()))
+        .thenReturn(ImmutableMap.of("0", ImmutableSet.of("b@example.com")))
+        .thenReturn(ImmutableMap.of("1", ImmutableSet.of("a@example.com")))
+        .thenReturn(ImmutableMap.of("2", ImmutableSet.of("c@example.com")));
+
+    emailNotifier.notify(notifications("0"));
+    sending.await();
+    emailNotifier.notify(notifications("1"));
+    try {
+      emailNotifier.notify(notifications("2"));
+      fail("Expected the email to c to be rejected while the email to a is queued");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("Unable to queue the emails to 1 recipients"));
+    } finally {
+      release.countDown();
+    }
+
+    verify(smtpClient, timeout(5000).times(2)).send(any());
+  }
+
+  @Test
+  public void testFailedEmailIsRetried() {
+    CompletableFuture<Void> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new MessagingException("unavailable"));
+    when(smtpClient.send(any()))
+        .thenReturn(failed)
+        .thenReturn(CompletableFuture.completedFuture(null));
+    when(subscriptionsPersistentStore.getEmails(any()))
+        .thenReturn(ImmutableMap.of("1", ImmutableSet.of("a@example.com")));
+
+    emailNotifier.notify(notifications("1"));
+
+    verify(smtpClient, timeout(5000).times(2)).send(any());
+  }
+
+  @Test
+  public void testNotifyAsyncReportsTheWorkspacesThatWereSent() throws Exception {
+    CompletableFuture<Void> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new MessagingException("unavailable"));
+    when(smtpClient.send(any()))
+        .thenAnswer(
+            invocation ->
+                "b@example.com".equals(recipient(invocation.getArgumentAt(0, Message.class)))
+                    ? failed
+                    : CompletableFuture.completedFuture(null));
+    when(subscriptionsPersistentStore.getEmails(any()))
+        .thenReturn(
+            ImmutableMap.of(
+                "1",
+                ImmutableSet.of("a@example.com"),
+                "2",
+                ImmutableSet.of("a@example.com", "b@example.com")));
+
+    // The email to b is given up after its last attempts, so the second workspace was not sent
+    assertThat(
+        emailNotifier.notifyAsync(notifications("1", "2", "3")).get(30, TimeUnit.SECONDS),
+        is(ImmutableSet.of("1", "3")));
+  }
+
+  private static Map<String, Pair<WorkspaceMetacardImpl, Long>> notifications(String... ids) {
+    Map<String, Pair<WorkspaceMetacardImpl, Long>> notifications = new HashMap<>();
+    for (String id : ids) {
+      notifications.put(id, Pair.of(new WorkspaceMetacardImpl(id), 1L));
+    }
+    return notifications;
+  }
+
+  private static String recipient(Message message) throws MessagingException {
+    return message.getRecipients(Message.RecipientType.TO)[0].toString();
+  }
+}
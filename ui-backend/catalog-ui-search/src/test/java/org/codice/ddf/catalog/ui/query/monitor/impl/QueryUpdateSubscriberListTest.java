@@ -13,14 +13,20 @@
  */
 package org.codice.ddf.catalog.ui.query.monitor.impl;
 
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.tuple.Pair;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
 import org.codice.ddf.catalog.ui.query.monitor.api.QueryUpdateSubscriber;
@@ -41,7 +47,7 @@ public class QueryUpdateSubscriberListTest {
 
   /**
    * Test that if the first subscriber throws an exception that the second subscriber is still
-   * called.
+   * called, and that the exception is then rethrown.
    */
   @Test
   public void testExceptions() {
@@ -50,15 +56,50 @@ public class QueryUpdateSubscriberListTest {
     QueryUpdateSubscriber childSubscriber1 = mock(QueryUpdateSubscriber.class);
     QueryUpdateSubscriber childSubscriber2 = mock(QueryUpdateSubscriber.class);
 
-    Mockito.doThrow(RuntimeException.class).when(childSubscriber1).notify(workspaceMetacardMap);
+    RuntimeException exception = new RuntimeException();
+    Mockito.doThrow(exception).when(childSubscriber1).notify(workspaceMetacardMap);
 
     QueryUpdateSubscriberList queryUpdateSubscriberList =
         new QueryUpdateSubscriberList(Arrays.asList(childSubscriber1, childSubscriber2));
-    queryUpdateSubscriberList.notify(workspaceMetacardMap);
+    try {
+      queryUpdateSubscriberList.notify(workspaceMetacardMap);
+      fail("Expected the exception of the first subscriber");
+    } catch (RuntimeException e) {
+      assertThat(e, is(exception));
+    }
 
     verify(childSubscriber2).notify(workspaceMetacardMap);
   }
 
+  @Test
+  public void testNotifyAsyncReportsWorkspacesDeliveredByEverySubscriber() throws Exception {
+    Map<String, Pair<WorkspaceMetacardImpl, Long>> workspaceMetacardMap = new HashMap<>();
+    workspaceMetacardMap.put("1", Pair.of(mock(WorkspaceMetacardImpl.class), 1L));
+    workspaceMetacardMap.put("2", Pair.of(mock(WorkspaceMetacardImpl.class), 2L));
+    workspaceMetacardMap.put("3", Pair.of(mock(WorkspaceMetacardImpl.class), 3L));
+
+    QueryUpdateSubscriber subscriber1 = mock(QueryUpdateSubscriber.class);
+    when(subscriber1.notifyAsync(workspaceMetacardMap))
+        .thenReturn(CompletableFuture.completedFuture(new HashSet<>(Arrays.asList("1", "2"))));
+    QueryUpdateSubscriber subscriber2 = mock(QueryUpdateSubscriber.class);
+    when(subscriber2.notifyAsync(workspaceMetacardMap))
+        .thenReturn(CompletableFuture.completedFuture(new HashSet<>(Arrays.asList("2", "3"))));
+    QueryUpdateSubscriber subscriber3 = mock(QueryUpdateSubscriber.class);
+    when(subscriber3.notifyAsync(workspaceMetacardMap)).thenThrow(new RuntimeException());
+
+    QueryUpdateSubscriberList queryUpdateSubscriberList =
+        new QueryUpdateSubscriberList(Arrays.asList(subscriber1, subscriber2));
+    assertThat(
+        queryUpdateSubscriberList.notifyAsync(workspaceMetacardMap).get(),
+        is(Collections.singleton("2")));
+
+    queryUpdateSubscriberList =
+        new QueryUpdateSubscriberList(Arrays.asList(subscriber1, subscriber2, subscriber3));
+    assertThat(
+        queryUpdateSubscriberList.notifyAsync(workspaceMetacardMap).get(),
+        is(Collections.emptySet()));
+  }
+
   @Test
   public void testToString() {
     assertThat(new QueryUpdateSubscriberList(Collections.emptyList()).toString(), notNullValue());
@@ -18,6 +18,7 @@ import static org.codice.ddf.catalog.ui.query.monitor.impl.SubscriptionsPersiste
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,6 +26,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import org.codice.ddf.persistence.PersistenceException;
 import org.codice.ddf.persistence.PersistentStore;
@@ -43,12 +45,16 @@ public class SubscriptionsPersistentStoreImplTest {
 
   private static final String IDSTRING = "idstring";
 
+  private static final String IDSTRING2 = "idstring2";
+
+  private MemoryPersistentStore persistentStore;
+
   private SubscriptionsPersistentStoreImpl store;
 
   @Before
   public void setup() {
 
-    PersistentStore persistentStore = new MemoryPersistentStore();
+    persistentStore = new MemoryPersistentStore();
 
     store = new SubscriptionsPersistentStoreImpl(persistentStore);
   }
@@ -123,10 +129,68 @@ public class SubscriptionsPersistentStoreImplTest {
     assertThat(store.getEmails(IDSTRING), is(Collections.emptySet()));
   }
 
+  @Test
+  public void testGetEmailsIsCached() {
+    store.addEmail(IDSTRING, EMAIL1);
+    int gets = persistentStore.gets;
+
+    store.getEmails(IDSTRING);
+    store.getEmails(IDSTRING);
+
+    assertThat(persistentStore.gets, is(gets));
+  }
+
+  @Test
+  public void testGetEmailsBatch() {
+    store.addEmails(IDSTRING, new HashSet<>(Arrays.asList(EMAIL1, EMAIL2)));
+    store.addEmail(IDSTRING2, EMAIL3);
+    store = new SubscriptionsPersistentStoreImpl(persistentStore);
+    int gets = persistentStore.gets;
+
+    Map<String, Set<String>> results =
+        store.getEmails(new HashSet<>(Arrays.asList(IDSTRING, IDSTRING2, "other")));
+
+    assertThat(persistentStore.gets, is(gets + 1));
+    assertThat(results.get(IDSTRING), is(new HashSet<>(Arrays.asList(EMAIL1, EMAIL2))));
+    assertThat(results.get(IDSTRING2), is(Collections.singleton(EMAIL3)));
+    assertThat(results.get("other"), is(Collections.emptySet()));
+    assertThat(store.getEmails(IDSTRING2), is(Collections.singleton(EMAIL3)));
+    assertThat(persistentStore.gets, is(gets + 1));
+  }
+
+  @Test
+  public void testGetSubscriptionsFollowsWrites() {
+    store.addEmail(IDSTRING, EMAIL1);
+    assertThat(store.getSubscriptions(EMAIL1), is(Collections.singleton(IDSTRING)));
+
+    store.addEmail(IDSTRING2, EMAIL1);
+    assertThat(
+        store.getSubscriptions(EMAIL1), is(new HashSet<>(Arrays.asList(IDSTRING, IDSTRING2))));
+
+    store.removeEmail(IDSTRING, EMAIL1);
+    assertThat(store.getSubscriptions(EMAIL1), is(Collections.singleton(IDSTRING2)));
+  }
+
+  @Test
+  public void testGetSubscriptionsLoadOverlappingWriteIsNotCached() {
+    persistentStore.afterGet =
+        () -> {
+          persistentStore.afterGet = () -> {};
+          store.addEmail(IDSTRING, EMAIL1);
+        };
+    assertThat(store.getSubscriptions(EMAIL1), is(Collections.emptySet()));
+
+    assertThat(store.getSubscriptions(EMAIL1), is(Collections.singleton(IDSTRING)));
+  }
+
   private static class MemoryPersistentStore implements PersistentStore {
 
     private Map<String, Map<String, Object>> map = new HashMap<>();
 
+    private int gets;
+
+    private Runnable afterGet = () -> {};
+
     @SuppressWarnings("unchecked")
     @Override
     public void add(String type, Map<String, Object> properties) throws PersistenceException {
@@ -172,12 +236,25 @@ public class SubscriptionsPersistentStoreImplTest {
     @Override
     public List<Map<String, Object>> get(String type, String ecql, int startIndex, int pageSize)
         throws PersistenceException {
-      String id = ecql.split("=")[1].replaceAll("'", "");
-      if (map.containsKey(id)) {
-        return Collections.singletonList(map.get(id));
-      } else {
-        return Collections.emptyList();
+      gets++;
+      List<Map<String, Object>> results = new ArrayList<>();
+      for (String clause : ecql.split(" OR ")) {
+        String[] terms = clause.replaceAll("['\"]", "").split("=");
+        if ("id".equals(terms[0])) {
+          Optional.ofNullable(map.get(terms[1])).ifPresent(results::add);
+        } else {
+          map.values()
+              .stream()
+              .filter(item -> contains(item.get(terms[0] + "_txt"), terms[1]))
+              .forEach(results::add);
+        }
       }
+      afterGet.run();
+      return results;
+    }
+
+    private static boolean contains(Object value, String term) {
+      return value instanceof Set ? ((Set) value).contains(term) : term.equals(value);
     }
 
     @Override
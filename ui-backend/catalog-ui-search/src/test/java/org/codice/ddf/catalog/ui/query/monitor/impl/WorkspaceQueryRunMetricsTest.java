@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.monitor.impl;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Test;
+
+public class WorkspaceQueryRunMetricsTest {
+
+  @Test
+  public void testPercentiles() {
+    List<Long> durations = LongStream.rangeClosed(1, 200).boxed().collect(Collectors.toList());
+    Collections.shuffle(durations);
+
+    WorkspaceQueryRunMetrics metrics = new WorkspaceQueryRunMetrics(200, 200, 0, 0, durations, 0);
+
+    assertThat(metrics.getP50DurationMillis(), is(100L));
+    assertThat(metrics.getP99DurationMillis(), is(198L));
+  }
+
+  @Test
+  public void testPercentilesOfSingleAndNoDurations() {
+    assertThat(WorkspaceQueryRunMetrics.percentile(Collections.singletonList(7L), 99), is(7L));
+    assertThat(WorkspaceQueryRunMetrics.percentile(Collections.emptyList(), 50), is(0L));
+  }
+}
@@ -16,10 +16,16 @@ package org.codice.ddf.catalog.ui.query.monitor.impl;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableSet;
 import ddf.catalog.CatalogFramework;
 import ddf.catalog.data.Attribute;
 import ddf.catalog.data.Metacard;
@@ -33,11 +39,18 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.shiro.authc.AuthenticationException;
@@ -53,6 +66,7 @@ import org.codice.ddf.catalog.ui.query.monitor.api.FilterService;
 import org.codice.ddf.catalog.ui.query.monitor.api.QueryUpdateSubscriber;
 import org.codice.ddf.catalog.ui.query.monitor.api.SecurityService;
 import org.codice.ddf.catalog.ui.query.monitor.api.WorkspaceService;
+import org.codice.ddf.persistence.PersistenceException;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
@@ -73,7 +87,7 @@ public class WorkspaceQueryServiceTest {
 
     String workspaceId = "3";
 
-    QueryUpdateSubscriber queryUpdateSubscriber = mock(QueryUpdateSubscriber.class);
+    QueryUpdateSubscriber queryUpdateSubscriber = mockDeliveringSubscriber();
     WorkspaceService workspaceService = mock(WorkspaceService.class);
     CatalogFramework catalogFramework = mock(CatalogFramework.class);
     FilterBuilder filterBuilder = mock(FilterBuilder.class);
@@ -95,7 +109,7 @@ public class WorkspaceQueryServiceTest {
           }
         };
     FilterService filterService = mock(FilterService.class);
-    when(filterService.getModifiedDateFilter(any())).thenReturn(mock(Filter.class));
+    when(filterService.getModifiedDateFilter(any(), any())).thenReturn(mock(Filter.class));
 
     when(filterBuilder.anyOf(Mockito.any(Filter.class))).thenReturn(mock(Or.class));
     when(filterBuilder.allOf(Mockito.<Filter>anyVararg())).thenReturn(mock(And.class));
@@ -108,7 +122,8 @@ public class WorkspaceQueryServiceTest {
             filterBuilder,
             schedulerSupplier,
             securityService,
-            filterService);
+            filterService,
+            mock(WorkspaceQueryWatermarks.class));
 
     workspaceQueryServiceImpl.setQueryTimeInterval(60);
     String ecql = "area( Polygon((10 10, 20 10, 20 20, 10 10)) ) BETWEEN 10000 AND 30000";
@@ -139,7 +154,7 @@ public class WorkspaceQueryServiceTest {
                 workspaceMetacard,
                 Arrays.asList(queryMetacardWithSource, queryMetacardWithoutSource)));
 
-    when(workspaceService.getQueryMetacards()).thenReturn(queryMetacards);
+    mockQueryMetacardPages(workspaceService, queryMetacards);
 
     long hitCount1 = 10;
     long hitCount2 = 20;
@@ -314,7 +329,7 @@ public class WorkspaceQueryServiceTest {
     verify(securityServiceSubject).execute(securitySubjectCaptor.capture());
     securitySubjectCaptor.getValue().run();
     ArgumentCaptor<Map> argumentCaptor = ArgumentCaptor.forClass(Map.class);
-    verify(queryUpdateSubscriber).notify(argumentCaptor.capture());
+    verify(queryUpdateSubscriber).notifyAsync(argumentCaptor.capture());
 
     Map queryUpdateSubscriberArgumentRaw = argumentCaptor.getValue();
 
@@ -323,5 +338,417 @@ public class WorkspaceQueryServiceTest {
 
     assertThat(
         queryUpdateSubscriberArgument.get(workspaceId).getRight(), is(hitCount1 + hitCount2));
+
+    WorkspaceQueryRunMetrics metrics = workspaceQueryServiceImpl.getLastRunMetrics();
+    assertThat(metrics.getSubmitted(), is(2));
+    assertThat(metrics.getCompleted(), is(2));
+    assertThat(metrics.getTimedOut(), is(0));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRunSharesIdenticalQueriesBetweenWorkspaces()
+      throws SchedulerException, UnsupportedQueryException, SourceUnavailableException,
+          FederationException, PersistenceException {
+    QueryUpdateSubscriber queryUpdateSubscriber = mockDeliveringSubscriber();
+    WorkspaceService workspaceService = mock(WorkspaceService.class);
+    CatalogFramework catalogFramework = mock(CatalogFramework.class);
+    FilterBuilder filterBuilder = mock(FilterBuilder.class);
+    Scheduler scheduler = mock(Scheduler.class);
+    when(scheduler.getContext()).thenReturn(mock(SchedulerContext.class));
+    Date watermark = new Date(0);
+    WorkspaceQueryWatermarks watermarks = mock(WorkspaceQueryWatermarks.class);
+    when(watermarks.get(any()))
+        .thenAnswer(
+            invocation ->
+                ((Collection<String>) invocation.getArgumentAt(0, Collection.class))
+                    .stream()
+                    .collect(Collectors.toMap(key -> key, key -> watermark)));
+    Subject securityServiceSubject = mock(Subject.class);
+    SecurityService securityService = mock(SecurityService.class);
+    when(securityService.getSystemSubject()).thenReturn(securityServiceSubject);
+    when(securityService.addSystemSubject(any()))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, Map.class));
+    FilterService filterService = mock(FilterService.class);
+    when(filterService.getModifiedDateFilter(any(), any())).thenReturn(mock(Filter.class));
+    when(filterBuilder.allOf(Mockito.<Filter>anyVararg())).thenReturn(mock(And.class));
+
+    WorkspaceQueryServiceImpl workspaceQueryServiceImpl =
+        new WorkspaceQueryServiceImpl(
+            queryUpdateSubscriber,
+            workspaceService,
+            catalogFramework,
+            filterBuilder,
+            () -> Optional.of(scheduler),
+            securityService,
+            filterService,
+            watermarks);
+    workspaceQueryServiceImpl.setQueryTimeInterval(60);
+    workspaceQueryServiceImpl.setQueryTimeoutMinutes(5L);
+
+    // The same query, written differently, in two workspaces
+    WorkspaceMetacardImpl workspace1 = mock(WorkspaceMetacardImpl.class);
+    when(workspace1.getId()).thenReturn("1");
+    QueryMetacardImpl query1 = mock(QueryMetacardImpl.class);
+    when(query1.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query1.getCql()).thenReturn("title LIKE 'a%'");
+
+    WorkspaceMetacardImpl workspace2 = mock(WorkspaceMetacardImpl.class);
+    when(workspace2.getId()).thenReturn("2");
+    QueryMetacardImpl query2 = mock(QueryMetacardImpl.class);
+    when(query2.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query2.getCql()).thenReturn("( title  LIKE 'a%' )");
+
+    Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards =
+        new HashMap<>();
+    queryMetacards.put("1", Pair.of(workspace1, Collections.singletonList(query1)));
+    queryMetacards.put("2", Pair.of(workspace2, Collections.singletonList(query2)));
+    mockQueryMetacardPages(workspaceService, queryMetacards);
+
+    QueryResponse queryResponse = mock(QueryResponse.class);
+    when(queryResponse.getHits()).thenReturn(7L);
+    when(catalogFramework.query(any())).thenReturn(queryResponse);
+
+    workspaceQueryServiceImpl.run();
+    ArgumentCaptor<Runnable> securitySubjectCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(securityServiceSubject).execute(securitySubjectCaptor.capture());
+    securitySubjectCaptor.getValue().run();
+
+    verify(catalogFramework, times(1)).query(any());
+    ArgumentCaptor<Map> argumentCaptor = ArgumentCaptor.forClass(Map.class);
+    verify(queryUpdateSubscriber).notifyAsync(argumentCaptor.capture());
+    Map<String, Pair<WorkspaceMetacardImpl, Long>> results = argumentCaptor.getValue();
+    assertThat(results.get("1").getRight(), is(7L));
+    assertThat(results.get("2").getRight(), is(7L));
+
+    // One query task is submitted and completed for both workspaces
+    WorkspaceQueryRunMetrics metrics = workspaceQueryServiceImpl.getLastRunMetrics();
+    assertThat(metrics.getSubmitted(), is(1));
+    assertThat(metrics.getCompleted(), is(1));
+
+    // Both workspaces query from their stored watermark, and both watermarks are advanced
+    verify(filterService, times(1)).getModifiedDateFilter(eq(watermark), any());
+    ArgumentCaptor<Map> watermarkCaptor = ArgumentCaptor.forClass(Map.class);
+    verify(watermarks).put(watermarkCaptor.capture());
+    Map<String, Date> advanced = watermarkCaptor.getValue();
+    assertThat(advanced.size(), is(2));
+    assertThat(advanced.values().stream().allMatch(watermark::before), is(true));
+  }
+
+  @Test
+  public void testRunKeepsWatermarksWhenNotifyFails()
+      throws SchedulerException, UnsupportedQueryException, SourceUnavailableException,
+          FederationException, PersistenceException {
+    QueryUpdateSubscriber queryUpdateSubscriber = mockDeliveringSubscriber();
+    CompletableFuture<Set<String>> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new RuntimeException());
+    when(queryUpdateSubscriber.notifyAsync(any())).thenReturn(failed);
+    WorkspaceService workspaceService = mock(WorkspaceService.class);
+    CatalogFramework catalogFramework = mock(CatalogFramework.class);
+    FilterBuilder filterBuilder = mock(FilterBuilder.class);
+    Scheduler scheduler = mock(Scheduler.class);
+    when(scheduler.getContext()).thenReturn(mock(SchedulerContext.class));
+    WorkspaceQueryWatermarks watermarks = mock(WorkspaceQueryWatermarks.class);
+    Subject securityServiceSubject = mock(Subject.class);
+    SecurityService securityService = mock(SecurityService.class);
+    when(securityService.getSystemSubject()).thenReturn(securityServiceSubject);
+    when(securityService.addSystemSubject(any()))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, Map.class));
+    FilterService filterService = mock(FilterService.class);
+    when(filterService.getModifiedDateFilter(any(), any())).thenReturn(mock(Filter.class));
+    when(filterBuilder.allOf(Mockito.<Filter>anyVararg())).thenReturn(mock(And.class));
+
+    WorkspaceQueryServiceImpl workspaceQueryServiceImpl =
+        new WorkspaceQueryServiceImpl(
+            queryUpdateSubscriber,
+            workspaceService,
+            catalogFramework,
+            filterBuilder,
+            () -> Optional.of(scheduler),
+            securityService,
+            filterService,
+            watermarks);
+    workspaceQueryServiceImpl.setQueryTimeInterval(60);
+    workspaceQueryServiceImpl.setQueryTimeoutMinutes(5L);
+
+    WorkspaceMetacardImpl workspace = mock(WorkspaceMetacardImpl.class);
+    when(workspace.getId()).thenReturn("1");
+    QueryMetacardImpl query = mock(QueryMetacardImpl.class);
+    when(query.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query.getCql()).thenReturn("title LIKE 'a%'");
+
+    mockQueryMetacardPages(
+        workspaceService,
+        Collections.singletonMap("1", Pair.of(workspace, Collections.singletonList(query))));
+
+    QueryResponse queryResponse = mock(QueryResponse.class);
+    when(queryResponse.getHits()).thenReturn(7L);
+    when(catalogFramework.query(any())).thenReturn(queryResponse);
+
+    workspaceQueryServiceImpl.run();
+    ArgumentCaptor<Runnable> securitySubjectCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(securityServiceSubject).execute(securitySubjectCaptor.capture());
+    securitySubjectCaptor.getValue().run();
+
+    // The workspace is queried over the same range again next time
+    verify(queryUpdateSubscriber).notifyAsync(any());
+    verify(watermarks, never()).put(any());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRunAdvancesOnlyTheWatermarksOfDeliveredWorkspaces()
+      throws SchedulerException, UnsupportedQueryException, SourceUnavailableException,
+          FederationException, PersistenceException {
+    // Only the notification of the first workspace is delivered
+    QueryUpdateSubscriber queryUpdateSubscriber = mock(QueryUpdateSubscriber.class);
+    when(queryUpdateSubscriber.notifyAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Collections.singleton("1")));
+    WorkspaceService workspaceService = mock(WorkspaceService.class);
+    CatalogFramework catalogFramework = mock(CatalogFramework.class);
+    FilterBuilder filterBuilder = mock(FilterBuilder.class);
+    Scheduler scheduler = mock(Scheduler.class);
+    when(scheduler.getContext()).thenReturn(mock(SchedulerContext.class));
+    WorkspaceQueryWatermarks watermarks = mock(WorkspaceQueryWatermarks.class);
+    Subject securityServiceSubject = mock(Subject.class);
+    SecurityService securityService = mock(SecurityService.class);
+    when(securityService.getSystemSubject()).thenReturn(securityServiceSubject);
+    when(securityService.addSystemSubject(any()))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, Map.class));
+    FilterService filterService = mock(FilterService.class);
+    when(filterService.getModifiedDateFilter(any(), any())).thenReturn(mock(Filter.class));
+    when(filterBuilder.allOf(Mockito.<Filter>anyVararg())).thenReturn(mock(And.class));
+
+    WorkspaceQueryServiceImpl workspaceQueryServiceImpl =
+        new WorkspaceQueryServiceImpl(
+            queryUpdateSubscriber,
+            workspaceService,
+            catalogFramework,
+            filterBuilder,
+            () -> Optional.of(scheduler),
+            securityService,
+            filterService,
+            watermarks);
+    workspaceQueryServiceImpl.setQueryTimeInterval(60);
+    workspaceQueryServiceImpl.setQueryTimeoutMinutes(5L);
+
+    WorkspaceMetacardImpl workspace1 = mock(WorkspaceMetacardImpl.class);
+    when(workspace1.getId()).thenReturn("1");
+    QueryMetacardImpl query1 = mock(QueryMetacardImpl.class);
+    when(query1.getId()).thenReturn("query1");
+    when(query1.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query1.getCql()).thenReturn("title LIKE 'a%'");
+
+    WorkspaceMetacardImpl workspace2 = mock(WorkspaceMetacardImpl.class);
+    when(workspace2.getId()).thenReturn("2");
+    QueryMetacardImpl query2 = mock(QueryMetacardImpl.class);
+    when(query2.getId()).thenReturn("query2");
+    when(query2.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query2.getCql()).thenReturn("title LIKE 'b%'");
+
+    Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> queryMetacards =
+        new HashMap<>();
+    queryMetacards.put("1", Pair.of(workspace1, Collections.singletonList(query1)));
+    queryMetacards.put("2", Pair.of(workspace2, Collections.singletonList(query2)));
+    mockQueryMetacardPages(workspaceService, queryMetacards);
+
+    QueryResponse queryResponse = mock(QueryResponse.class);
+    when(queryResponse.getHits()).thenReturn(7L);
+    when(catalogFramework.query(any())).thenReturn(queryResponse);
+
+    workspaceQueryServiceImpl.run();
+    ArgumentCaptor<Runnable> securitySubjectCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(securityServiceSubject).execute(securitySubjectCaptor.capture());
+    securitySubjectCaptor.getValue().run();
+
+    // The second workspace is queried over the same range again next time
+    ArgumentCaptor<Map> watermarkCaptor = ArgumentCaptor.forClass(Map.class);
+    verify(watermarks).put(watermarkCaptor.capture());
+    assertThat(
+        watermarkCaptor.getValue().keySet(), is(ImmutableSet.of("1\nquery1\nSomeSource")));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRunQueriesEachQueryFromItsOwnWatermark()
+      throws SchedulerException, UnsupportedQueryException, SourceUnavailableException,
+          FederationException, PersistenceException {
+    QueryUpdateSubscriber queryUpdateSubscriber = mockDeliveringSubscriber();
+    WorkspaceService workspaceService = mock(WorkspaceService.class);
+    CatalogFramework catalogFramework = mock(CatalogFramework.class);
+    FilterBuilder filterBuilder = mock(FilterBuilder.class);
+    Scheduler scheduler = mock(Scheduler.class);
+    when(scheduler.getContext()).thenReturn(mock(SchedulerContext.class));
+    // Only the first query has been notified before
+    Date watermark = new Date(0);
+    WorkspaceQueryWatermarks watermarks = mock(WorkspaceQueryWatermarks.class);
+    when(watermarks.get(any()))
+        .thenReturn(Collections.singletonMap("1\nquery1\nSomeSource", watermark));
+    Subject securityServiceSubject = mock(Subject.class);
+    SecurityService securityService = mock(SecurityService.class);
+    when(securityService.getSystemSubject()).thenReturn(securityServiceSubject);
+    when(securityService.addSystemSubject(any()))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, Map.class));
+    FilterService filterService = mock(FilterService.class);
+    when(filterService.getModifiedDateFilter(any(), any())).thenReturn(mock(Filter.class));
+    when(filterBuilder.allOf(Mockito.<Filter>anyVararg())).thenReturn(mock(And.class));
+
+    WorkspaceQueryServiceImpl workspaceQueryServiceImpl =
+        new WorkspaceQueryServiceImpl(
+            queryUpdateSubscriber,
+            workspaceService,
+            catalogFramework,
+            filterBuilder,
+            () -> Optional.of(scheduler),
+            securityService,
+            filterService,
+            watermarks);
+    workspaceQueryServiceImpl.setQueryTimeInterval(60);
+    workspaceQueryServiceImpl.setQueryTimeoutMinutes(5L);
+
+    WorkspaceMetacardImpl workspace = mock(WorkspaceMetacardImpl.class);
+    when(workspace.getId()).thenReturn("1");
+    QueryMetacardImpl query1 = mock(QueryMetacardImpl.class);
+    when(query1.getId()).thenReturn("query1");
+    when(query1.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query1.getCql()).thenReturn("title LIKE 'a%'");
+    QueryMetacardImpl query2 = mock(QueryMetacardImpl.class);
+    when(query2.getId()).thenReturn("query2");
+    when(query2.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query2.getCql()).thenReturn("title LIKE 'b%'");
+
+    mockQueryMetacardPages(
+        workspaceService,
+        Collections.singletonMap("1", Pair.of(workspace, Arrays.asList(query1, query2))));
+
+    QueryResponse queryResponse = mock(QueryResponse.class);
+    when(queryResponse.getHits()).thenReturn(7L);
+    when(catalogFramework.query(any())).thenReturn(queryResponse);
+
+    workspaceQueryServiceImpl.run();
+    ArgumentCaptor<Runnable> securitySubjectCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(securityServiceSubject).execute(securitySubjectCaptor.capture());
+    securitySubjectCaptor.getValue().run();
+
+    // The queries start from different watermarks, so they are queried separately
+    verify(catalogFramework, times(2)).query(any());
+    verify(filterService, times(1)).getModifiedDateFilter(eq(watermark), any());
+    ArgumentCaptor<Map> argumentCaptor = ArgumentCaptor.forClass(Map.class);
+    verify(queryUpdateSubscriber).notifyAsync(argumentCaptor.capture());
+    Map<String, Pair<WorkspaceMetacardImpl, Long>> results = argumentCaptor.getValue();
+    assertThat(results.get("1").getRight(), is(14L));
+
+    ArgumentCaptor<Map> watermarkCaptor = ArgumentCaptor.forClass(Map.class);
+    verify(watermarks).put(watermarkCaptor.capture());
+    assertThat(
+        watermarkCaptor.getValue().keySet(),
+        is(ImmutableSet.of("1\nquery1\nSomeSource", "1\nquery2\nSomeSource")));
+    verify(watermarks).deleteOlderThan(any());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRunNotifiesWorkspacesOfEveryPageOnce()
+      throws SchedulerException, UnsupportedQueryException, SourceUnavailableException,
+          FederationException {
+    QueryUpdateSubscriber queryUpdateSubscriber = mockDeliveringSubscriber();
+    WorkspaceService workspaceService = mock(WorkspaceService.class);
+    CatalogFramework catalogFramework = mock(CatalogFramework.class);
+    FilterBuilder filterBuilder = mock(FilterBuilder.class);
+    Scheduler scheduler = mock(Scheduler.class);
+    when(scheduler.getContext()).thenReturn(mock(SchedulerContext.class));
+    Subject securityServiceSubject = mock(Subject.class);
+    SecurityService securityService = mock(SecurityService.class);
+    when(securityService.getSystemSubject()).thenReturn(securityServiceSubject);
+    when(securityService.addSystemSubject(any()))
+        .thenAnswer(invocation -> invocation.getArgumentAt(0, Map.class));
+    FilterService filterService = mock(FilterService.class);
+    when(filterService.getModifiedDateFilter(any(), any())).thenReturn(mock(Filter.class));
+    when(filterBuilder.allOf(Mockito.<Filter>anyVararg())).thenReturn(mock(And.class));
+
+    WorkspaceQueryServiceImpl workspaceQueryServiceImpl =
+        new WorkspaceQueryServiceImpl(
+            queryUpdateSubscriber,
+            workspaceService,
+            catalogFramework,
+            filterBuilder,
+            () -> Optional.of(scheduler),
+            securityService,
+            filterService,
+            mock(WorkspaceQueryWatermarks.class));
+    workspaceQueryServiceImpl.setQueryTimeInterval(60);
+    workspaceQueryServiceImpl.setQueryTimeoutMinutes(5L);
+    workspaceQueryServiceImpl.setWorkspacePageSize(1);
+
+    // Two pages of one workspace each, with different queries
+    WorkspaceMetacardImpl workspace1 = mock(WorkspaceMetacardImpl.class);
+    when(workspace1.getId()).thenReturn("1");
+    QueryMetacardImpl query1 = mock(QueryMetacardImpl.class);
+    when(query1.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query1.getCql()).thenReturn("title LIKE 'a%'");
+
+    WorkspaceMetacardImpl workspace2 = mock(WorkspaceMetacardImpl.class);
+    when(workspace2.getId()).thenReturn("2");
+    QueryMetacardImpl query2 = mock(QueryMetacardImpl.class);
+    when(query2.getSources()).thenReturn(Collections.singletonList("SomeSource"));
+    when(query2.getCql()).thenReturn("title LIKE 'b%'");
+
+    mockQueryMetacardPages(
+        workspaceService,
+        Collections.singletonMap("1", Pair.of(workspace1, Collections.singletonList(query1))),
+        Collections.singletonMap("2", Pair.of(workspace2, Collections.singletonList(query2))));
+
+    QueryResponse queryResponse = mock(QueryResponse.class);
+    when(queryResponse.getHits()).thenReturn(7L);
+    when(catalogFramework.query(any())).thenReturn(queryResponse);
+
+    workspaceQueryServiceImpl.run();
+    ArgumentCaptor<Runnable> securitySubjectCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(securityServiceSubject).execute(securitySubjectCaptor.capture());
+    securitySubjectCaptor.getValue().run();
+
+    verify(catalogFramework, times(2)).query(any());
+    ArgumentCaptor<Map> argumentCaptor = ArgumentCaptor.forClass(Map.class);
+    // Both pages are notified together, so a recipient of both workspaces gets a single email
+    verify(queryUpdateSubscriber).notifyAsync(argumentCaptor.capture());
+    Map<String, Pair<WorkspaceMetacardImpl, Long>> results = argumentCaptor.getValue();
+    assertThat(results.keySet(), is(ImmutableSet.of("1", "2")));
+
+    WorkspaceQueryRunMetrics metrics = workspaceQueryServiceImpl.getLastRunMetrics();
+    assertThat(metrics.getSubmitted(), is(2));
+    assertThat(metrics.getCompleted(), is(2));
+  }
+
+  /** Makes a subscriber that delivers the notification of every workspace. */
+  @SuppressWarnings("unchecked")
+  private static QueryUpdateSubscriber mockDeliveringSubscriber() {
+    QueryUpdateSubscriber queryUpdateSubscriber = mock(QueryUpdateSubscriber.class);
+    when(queryUpdateSubscriber.notifyAsync(any()))
+        .thenAnswer(
+            invocation ->
+                CompletableFuture.completedFuture(
+                    new HashSet<>(invocation.getArgumentAt(0, Map.class).keySet())));
+    return queryUpdateSubscriber;
+  }
+
+  /** Makes the workspace service hand out the pages to the page consumer in order. */
+  @SuppressWarnings("unchecked")
+  @SafeVarargs
+  private static void mockQueryMetacardPages(
+      WorkspaceService workspaceService,
+      Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>>... pages) {
+    doAnswer(
+            invocation -> {
+              Predicate<Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>>>
+                  pageConsumer = invocation.getArgumentAt(1, Predicate.class);
+              for (Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>> page : pages) {
+                if (!pageConsumer.test(page)) {
+                  break;
+                }
+              }
+              return null;
+            })
+        .when(workspaceService)
+        .forEachQueryMetacardsPage(anyInt(), any());
   }
 }
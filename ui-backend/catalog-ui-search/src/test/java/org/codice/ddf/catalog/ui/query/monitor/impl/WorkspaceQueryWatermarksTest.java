@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.query.monitor.impl;
+
+import static org.codice.ddf.catalog.ui.query.monitor.impl.WorkspaceQueryWatermarks.WATERMARKS_TYPE;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.codice.ddf.persistence.PersistenceException;
+import org.codice.ddf.persistence.PersistentStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class WorkspaceQueryWatermarksTest {
+
+  private static final String KEY1 = "workspace1\nquery1\nsource";
+
+  private static final String KEY2 = "workspace2\nquery2\nsource";
+
+  private PersistentStore persistentStore;
+
+  private WorkspaceQueryWatermarks watermarks;
+
+  @Before
+  public void setup() {
+    persistentStore = mock(PersistentStore.class);
+    watermarks = new WorkspaceQueryWatermarks(persistentStore);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testStoredWatermarksAreReadBack() throws PersistenceException {
+    Date date1 = new Date(1000);
+    Date date2 = new Date(2000);
+    watermarks.put(ImmutableMap.of(KEY1, date1, KEY2, date2));
+
+    ArgumentCaptor<Collection> itemsCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(persistentStore).add(eq(WATERMARKS_TYPE), itemsCaptor.capture());
+    List<Map<String, Object>> items =
+        (List<Map<String, Object>>) (List<?>) Arrays.asList(itemsCaptor.getValue().toArray());
+    assertThat(items.size(), is(2));
+
+    when(persistentStore.get(eq(WATERMARKS_TYPE), anyString(), anyInt(), anyInt()))
+        .thenReturn(items);
+
+    assertThat(
+        watermarks.get(Arrays.asList(KEY1, KEY2, "unknown")),
+        is(ImmutableMap.of(KEY1, date1, KEY2, date2)));
+  }
+
+  @Test
+  public void testNoWatermarksAreNotWritten() throws PersistenceException {
+    watermarks.put(Collections.emptyMap());
+
+    verify(persistentStore, never()).add(anyString(), anyCollection());
+  }
+
+  @Test
+  public void testOldWatermarksAreDeletedAPageAtATime() throws PersistenceException {
+    String ecql = "watermark BEFORE 1970-01-01T00:00:01Z";
+    when(persistentStore.delete(WATERMARKS_TYPE, ecql, 0, 1000)).thenReturn(1000, 3);
+
+    assertThat(watermarks.deleteOlderThan(new Date(1000)), is(1003));
+    verify(persistentStore, times(2)).delete(WATERMARKS_TYPE, ecql, 0, 1000);
+  }
+}
@@ -14,15 +14,19 @@
 package org.codice.ddf.catalog.ui.query.monitor.impl;
 
 import static org.codice.ddf.persistence.PersistentStore.PersistenceType.SUBSCRIPTION_TYPE;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,10 +43,13 @@ import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
 import ddf.security.SecurityConstants;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import javax.ws.rs.NotFoundException;
+import org.apache.commons.lang3.tuple.Pair;
 import org.codice.ddf.catalog.ui.metacard.query.data.metacard.QueryMetacardImpl;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceConstants;
 import org.codice.ddf.catalog.ui.metacard.workspace.WorkspaceMetacardImpl;
@@ -56,6 +63,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.opengis.filter.Filter;
@@ -253,6 +261,55 @@ public class WorkspaceServiceImplTest {
     assertThat(queries, hasSize(2));
   }
 
+  @Test
+  public void testForEachQueryMetacardsPage()
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException,
+          PersistenceException {
+    mockSubscriptionPages();
+
+    List<Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>>> pages =
+        new ArrayList<>();
+    workspaceServiceImpl.forEachQueryMetacardsPage(1, pages::add);
+
+    assertThat(pages, hasSize(2));
+    assertThat(pages.get(0).keySet(), contains(TEST_ID));
+    verify(persistentStore).get(eq(SUBSCRIPTION_TYPE.toString()), anyString(), anyInt(), anyInt());
+    InOrder inOrder = inOrder(workspaceQueryBuilder);
+    inOrder.verify(workspaceQueryBuilder).createFilter(Collections.singleton("1"));
+    inOrder.verify(workspaceQueryBuilder).createFilter(Collections.singleton("2"));
+  }
+
+  @Test
+  public void testForEachQueryMetacardsPageStopsWhenConsumerReturnsFalse()
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException,
+          PersistenceException {
+    mockSubscriptionPages();
+
+    List<Map<String, Pair<WorkspaceMetacardImpl, List<QueryMetacardImpl>>>> pages =
+        new ArrayList<>();
+    workspaceServiceImpl.forEachQueryMetacardsPage(
+        1,
+        page -> {
+          pages.add(page);
+          return false;
+        });
+
+    assertThat(pages, hasSize(1));
+    verify(workspaceQueryBuilder, never()).createFilter(Collections.singleton("2"));
+  }
+
+  /** Two subscriptions, out of order, for pages of one subscription each. */
+  private void mockSubscriptionPages()
+      throws UnsupportedQueryException, SourceUnavailableException, FederationException,
+          PersistenceException {
+    mockCatalogFrameworkQuery(TEST_ID, TEST_SUBJECT);
+    when(workspaceQueryBuilder.createFilter(any())).thenReturn(mock(Filter.class));
+    when(persistentStore.get(eq(SUBSCRIPTION_TYPE.toString()), anyString(), eq(0), eq(100)))
+        .thenReturn(
+            Arrays.asList(
+                Collections.singletonMap("id_txt", "2"), Collections.singletonMap("id_txt", "1")));
+  }
+
   @Test
   public void testGetWorkspaceMetacardFromQueryId()
       throws UnsupportedQueryException, SourceUnavailableException, FederationException {
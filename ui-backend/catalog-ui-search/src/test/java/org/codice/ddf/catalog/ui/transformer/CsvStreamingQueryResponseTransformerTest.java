@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.transformer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.google.common.collect.ImmutableMap;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.codice.ddf.catalog.ui.metacard.transformer.StreamingQueryResponseTransformer.ResultPageWriter;
+import org.junit.Test;
+
+public class CsvStreamingQueryResponseTransformerTest {
+
+  private final CsvStreamingQueryResponseTransformer transformer =
+      new CsvStreamingQueryResponseTransformer();
+
+  @Test
+  public void testPagesAreWrittenUnderOneHeader() throws Exception {
+    Map<String, Serializable> arguments = new HashMap<>();
+    arguments.put("columnOrder", new ArrayList<>(Arrays.asList("title", "id", "description")));
+    arguments.put("hiddenFields", new HashSet<>(Collections.singleton("description")));
+    arguments.put("aliases", new HashMap<>(ImmutableMap.of("title", "Title")));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    try (ResultPageWriter writer = transformer.open(output, arguments)) {
+      writer.write(Collections.singletonList(result("1", "first")));
+      assertThat(csv(output), is("Title,id\r\nfirst,1\r\n"));
+
+      writer.write(Arrays.asList(result("2", "a, \"quoted\" title"), result("3", null)));
+    }
+
+    assertThat(csv(output), is("Title,id\r\nfirst,1\r\n\"a, \"\"quoted\"\" title\",2\r\n,3\r\n"));
+  }
+
+  @Test
+  public void testMultiValuedAttributesAreJoined() throws Exception {
+    Map<String, Serializable> arguments = new HashMap<>();
+    arguments.put("columnOrder", new ArrayList<>(Collections.singletonList("keywords")));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    MetacardImpl metacard = new MetacardImpl();
+    metacard.setAttribute(new AttributeImpl("keywords", Arrays.<Serializable>asList("a", "b")));
+
+    try (ResultPageWriter writer = transformer.open(output, arguments)) {
+      writer.write(Collections.singletonList(new ResultImpl(metacard)));
+    }
+
+    assertThat(csv(output), is("keywords\r\n\"a\nb\"\r\n"));
+  }
+
+  @Test
+  public void testEmptyExportHasHeader() throws Exception {
+    Map<String, Serializable> arguments = new HashMap<>();
+    arguments.put("columnOrder", new ArrayList<>(Arrays.asList("id", "title")));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    transformer.open(output, arguments).close();
+
+    assertThat(csv(output), is("id,title\r\n"));
+  }
+
+  @Test
+  public void testOnlyExportsWithAColumnOrderCanBeStreamed() {
+    Map<String, Serializable> arguments = new HashMap<>();
+    arguments.put("columnOrder", new ArrayList<>());
+    assertThat(transformer.canStream(arguments), is(false));
+
+    arguments.put("columnOrder", new ArrayList<>(Collections.singletonList("id")));
+    assertThat(transformer.canStream(arguments), is(true));
+  }
+
+  private static Result result(String id, String title) {
+    MetacardImpl metacard = new MetacardImpl();
+    metacard.setId(id);
+    metacard.setTitle(title);
+    return new ResultImpl(metacard);
+  }
+
+  private static String csv(ByteArrayOutputStream output) {
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -14,11 +14,15 @@
 package org.codice.ddf.catalog.ui.util;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import ddf.action.ActionRegistry;
@@ -27,16 +31,24 @@ import ddf.catalog.filter.AttributeBuilder;
 import ddf.catalog.filter.ContextualExpressionBuilder;
 import ddf.catalog.filter.FilterAdapter;
 import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.source.UnsupportedQueryException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.codice.ddf.catalog.ui.config.ConfigurationApplication;
 import org.codice.ddf.catalog.ui.query.cql.CqlRequestImpl;
+import org.codice.ddf.catalog.ui.query.cql.HitCount;
 import org.codice.ddf.catalog.ui.query.utility.CqlQueryResponse;
 import org.codice.ddf.catalog.ui.query.utility.CqlResult;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.opengis.filter.Filter;
 
 public class CqlQueriesImplTest {
@@ -104,4 +116,80 @@ public class CqlQueriesImplTest {
     assertThat(results, hasSize(0));
     assertThat(cqlQueryResponse.getQueryResponse().getHits(), is(hitCount));
   }
+
+  @Test
+  public void testBatchedHitCounts() throws Exception {
+    when(responseMock.getHits()).thenReturn(7L);
+    when(catalogFrameworkMock.query(any(QueryRequest.class))).thenReturn(responseMock);
+    when(catalogFrameworkMock.query(
+            argThat(
+                new ArgumentMatcher<QueryRequest>() {
+                  @Override
+                  public boolean matches(Object request) {
+                    return request instanceof QueryRequest
+                        && "failing".equals(((QueryRequest) request).getPropertyValue("requestId"));
+                  }
+                })))
+        .thenThrow(new UnsupportedQueryException("unsupported"));
+
+    CqlRequestImpl first = generateCqlRequest(10);
+    first.setId("first");
+    CqlRequestImpl failing = generateCqlRequest(10);
+    failing.setId("failing");
+    List<HitCount> hitCounts =
+        cqlQueryUtil.executeHitCountQueries(Arrays.asList(first, failing));
+
+    assertThat(hitCounts, hasSize(2));
+    assertThat(hitCounts.get(0).getId(), is("first"));
+    assertThat(hitCounts.get(0).getHits(), is(7L));
+    assertThat(hitCounts.get(0).isSuccessful(), is(true));
+    assertThat(hitCounts.get(1).getId(), is("failing"));
+    assertThat(hitCounts.get(1).isSuccessful(), is(false));
+
+    ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+    verify(catalogFrameworkMock, times(2)).query(captor.capture());
+    for (QueryRequest request : captor.getAllValues()) {
+      assertThat(request.getQuery().getPageSize(), is(0));
+      assertThat(request.getQuery().requestsTotalResultsCount(), is(true));
+    }
+  }
+
+  @Test
+  public void testSingleHitCountFailureIsReportedAndRequestIsUnchanged() throws Exception {
+    when(catalogFrameworkMock.query(any(QueryRequest.class)))
+        .thenThrow(new IllegalStateException("failed"));
+
+    CqlRequestImpl request = generateCqlRequest(10);
+    request.setId("single");
+    List<HitCount> hitCounts = cqlQueryUtil.executeHitCountQueries(Arrays.asList(request));
+
+    assertThat(hitCounts, hasSize(1));
+    assertThat(hitCounts.get(0).getId(), is("single"));
+    assertThat(hitCounts.get(0).getHits(), is(-1L));
+    assertThat(hitCounts.get(0).isSuccessful(), is(false));
+    assertThat(request.getCount(), is(10));
+  }
+
+  @Test
+  public void testBatchQueriesDeduplicateIdenticalRequests() throws Exception {
+    when(responseMock.getResults()).thenReturn(Collections.emptyList());
+    when(responseMock.getHits()).thenReturn(3L);
+    when(catalogFrameworkMock.query(any(QueryRequest.class))).thenReturn(responseMock);
+
+    CqlRequestImpl first = generateCqlRequest(10);
+    first.setId("first");
+    CqlRequestImpl second = generateCqlRequest(10);
+    second.setId("second");
+    List<CqlQueryResponse> responses = new ArrayList<>();
+
+    cqlQueryUtil.executeCqlQueries(Arrays.asList(first, second), responses::add);
+
+    verify(catalogFrameworkMock, times(1)).query(any(QueryRequest.class));
+    assertThat(
+        responses.stream().map(CqlQueryResponse::getId).collect(Collectors.toSet()),
+        containsInAnyOrder("first", "second"));
+    for (CqlQueryResponse response : responses) {
+      assertThat(response.getQueryResponse().getHits(), is(3L));
+    }
+  }
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.codice.ddf.catalog.ui.util.DateFormatSniffer.Format;
+import org.junit.Test;
+
+public class DateFormatSnifferTest {
+
+  // The patterns that parseDate used before the sniffer, which it must agree with
+  private static final Pattern ISO_INSTANT =
+      Pattern.compile("\\d+-?\\d+-?\\d+T\\d+:?\\d+:?\\d+(\\.\\d+)?Z");
+
+  private static final Pattern ISO_OFFSET =
+      Pattern.compile("\\d+-?\\d+-?\\d+T\\d+:?\\d+:?\\d+(\\.\\d+)?[+\\-]\\d+:\\d+");
+
+  private static final Pattern DATE_TO_STRING =
+      Pattern.compile("[a-zA-Z]{3}\\s[a-zA-Z]{3}\\s\\d+\\s[0-9:]+\\s(\\w+\\s)?\\d+");
+
+  private static final List<String> CORPUS =
+      Arrays.asList(
+          "2018-09-05T14:03:17.000Z",
+          "2018-09-05T14:03:17Z",
+          "20180905T140317Z",
+          "2018-09-05T14:03Z",
+          "1-2T1:2:3Z",
+          "12-3T123Z",
+          "1-2T12:3Z",
+          "2018-09-05T14:03:17.Z",
+          "2018-09-05T14:03:17.000",
+          "2018--09-05T14:03:17Z",
+          "-2018-09-05T14:03:17Z",
+          "2018-09-05T14:03:17.000+00:00",
+          "2018-09-05T10:03:17.000-04:00",
+          "2018-09-05T10:03:17-0400",
+          "2018-09-05T10:03:17+04:",
+          "2018-09-05T10:03:17.5-4:0",
+          "2018-09-05 14:03:17Z",
+          "Wed Sep 5 14:03:17 UTC 2018",
+          "Wed Sep 05 14:03:17 EDT 2018",
+          "Wed Sep 5 14:03:17 2018",
+          "Wed Sep 5 14:03:17 GMT_1 2018",
+          "Wed Sep 5 14:03:17 GMT-04:00 2018",
+          "Wed  Sep 5 14:03:17 UTC 2018",
+          "Wed Sep 5 14:03:17 UTC 2018 ",
+          "Wed\tSep\t5\t14:03:17\tUTC\t2018",
+          "Wedn Sep 5 14:03:17 UTC 2018",
+          "Wed Sep 5 :: 2018",
+          "9/5/18 2:03 PM",
+          "T",
+          "Tue",
+          "");
+
+  @Test
+  public void testSniffedFormatsMatchLegacyPatterns() {
+    for (String string : CORPUS) {
+      assertThat(string, DateFormatSniffer.sniff(string), is(legacyFormat(string)));
+    }
+  }
+
+  private static Format legacyFormat(String string) {
+    if (ISO_INSTANT.matcher(string).matches()) {
+      return Format.ISO_INSTANT;
+    }
+    if (ISO_OFFSET.matcher(string).matches()) {
+      return Format.ISO_OFFSET;
+    }
+    if (DATE_TO_STRING.matcher(string).matches()) {
+      return Format.DATE_TO_STRING;
+    }
+    return Format.OTHER;
+  }
+}
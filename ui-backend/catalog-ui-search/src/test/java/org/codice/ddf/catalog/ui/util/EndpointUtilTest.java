@@ -26,6 +26,7 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -50,9 +51,15 @@ import ddf.catalog.filter.AttributeBuilder;
 import ddf.catalog.filter.ContextualExpressionBuilder;
 import ddf.catalog.filter.EqualityExpressionBuilder;
 import ddf.catalog.filter.FilterBuilder;
+import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.operation.impl.QueryRequestImpl;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -66,13 +73,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.io.IOUtils;
 import org.codice.ddf.catalog.ui.config.ConfigurationApplication;
+import org.codice.ddf.catalog.ui.metacard.EntityTooLargeException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.Or;
+import spark.Request;
 
 public class EndpointUtilTest {
 
@@ -205,6 +217,30 @@ public class EndpointUtilTest {
     assertThat(metacardTypes, hasKey("mockType"));
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testTransformToMapGroupsIdsByType() {
+    when(metacardTypeMock.getName()).thenReturn("mockType");
+    when(attributeRegistryMock.lookup(any())).thenReturn(Optional.empty());
+    MetacardImpl first = new MetacardImpl(metacardTypeMock);
+    first.setId("first");
+    MetacardImpl second = new MetacardImpl();
+    second.setId("second");
+    MetacardImpl third = new MetacardImpl(metacardTypeMock);
+    third.setId("third");
+
+    Map<String, Object> result =
+        endpointUtil.transformToMap(ImmutableList.<Metacard>of(first, second, third));
+
+    List<Map<String, Object>> types = (List<Map<String, Object>>) result.get("metacard-types");
+    assertThat(types, hasSize(2));
+    assertThat(types.get(0).get("type-name"), is("mockType"));
+    assertThat(types.get(0).get("ids"), is(ImmutableList.of("first", "third")));
+    assertThat(types.get(0).get("type"), is(endpointUtil.getMetacardTypeMap().get("mockType")));
+    assertThat(types.get(1).get("ids"), is(ImmutableList.of("second")));
+    assertThat((List<Object>) result.get("metacards"), hasSize(3));
+  }
+
   @Test
   public void testGetMetacardsByIdListExpectAll() throws Exception {
 
@@ -230,6 +266,49 @@ public class EndpointUtilTest {
     assertThat(result.keySet(), hasSize(expected));
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGetMetacardsByIdListQueriesChunksConcurrently() throws Exception {
+    String attributeName = "attr";
+    List<Result> resultList = populateResultMockList(25, attributeName);
+    Collection<String> ids =
+        resultList
+            .stream()
+            .map(result -> result.getMetacard().getId())
+            .collect(Collectors.toList());
+
+    QueryResponse firstPage = mock(QueryResponse.class);
+    when(firstPage.getResults()).thenReturn(resultList);
+    QueryResponse lastPage = mock(QueryResponse.class);
+    when(lastPage.getResults()).thenReturn(Collections.emptyList());
+    when(catalogFrameworkMock.query(any(QueryRequestImpl.class)))
+        .thenAnswer(
+            invocation ->
+                invocation.getArgumentAt(0, QueryRequest.class).getQuery().getStartIndex() == 1
+                    ? firstPage
+                    : lastPage);
+    when(filterBuilderMock.attribute(attributeName).is().equalTo())
+        .thenReturn(mock(EqualityExpressionBuilder.class));
+    ArgumentCaptor<List> capturedFilterList = ArgumentCaptor.forClass(List.class);
+    when(filterBuilderMock.anyOf(capturedFilterList.capture())).thenReturn(mock(Or.class));
+    when(filterBuilderMock.allOf(any(Filter.class), any(Filter.class))).thenReturn(mock(And.class));
+
+    endpointUtil.setBulkLookupChunkSize(10);
+    Map<String, Result> result =
+        endpointUtil.getMetacardsWithTagByAttributes(attributeName, ids, mock(Filter.class));
+
+    assertThat(result.keySet(), hasSize(25));
+    List<Integer> chunkSizes =
+        capturedFilterList
+            .getAllValues()
+            .stream()
+            .map(List::size)
+            .sorted()
+            .collect(Collectors.toList());
+    assertThat(chunkSizes, is(ImmutableList.of(5, 10, 10)));
+    endpointUtil.destroy();
+  }
+
   @Test
   public void testGetMetacardsByTagWithLikeAttributes() throws Exception {
 
@@ -330,6 +409,52 @@ public class EndpointUtilTest {
     return resultMockList;
   }
 
+  @Test
+  public void testSafeGetBodyReadsUtf8() throws Exception {
+    String body = "{\"title\":\"caf\u00e9\"}";
+
+    assertThat(limitedEndpointUtil(64).safeGetBody(requestWithBody(body)), is(body));
+  }
+
+  @Test(expected = EntityTooLargeException.class)
+  public void testSafeGetBodyReaderRejectsBodyLargerThanLimit() throws Exception {
+    // Without a Content-Length the limit is only enforced while the body is read
+    Reader reader =
+        limitedEndpointUtil(8).safeGetBodyReader(requestWithBody("{\"a\":\"too long\"}"));
+
+    IOUtils.toString(reader);
+  }
+
+  private EndpointUtil limitedEndpointUtil(int maximumUploadSize) {
+    ConfigurationApplication config = mock(ConfigurationApplication.class);
+    when(config.getMaximumUploadSize()).thenReturn(maximumUploadSize);
+    return new EndpointUtil(
+        new ArrayList<>(),
+        catalogFrameworkMock,
+        filterBuilderMock,
+        new ArrayList<>(),
+        attributeRegistryMock,
+        config);
+  }
+
+  private Request requestWithBody(String body) throws IOException {
+    InputStream content = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    ServletInputStream inputStream = mock(ServletInputStream.class);
+    when(inputStream.read(any(byte[].class), anyInt(), anyInt()))
+        .thenAnswer(
+            invocation ->
+                content.read(
+                    invocation.getArgumentAt(0, byte[].class),
+                    invocation.getArgumentAt(1, Integer.class),
+                    invocation.getArgumentAt(2, Integer.class)));
+    HttpServletRequest rawRequest = mock(HttpServletRequest.class);
+    when(rawRequest.getInputStream()).thenReturn(inputStream);
+    Request request = mock(Request.class);
+    when(request.contentLength()).thenReturn(-1);
+    when(request.raw()).thenReturn(rawRequest);
+    return request;
+  }
+
   @Test
   public void testParseDateEmptyString() {
     Serializable serializable = endpointUtil.parseDate("");
@@ -418,6 +543,16 @@ public class EndpointUtilTest {
     assertThat(dateConverted, is(date));
   }
 
+  @Test
+  public void testParseDateToStringFormat() {
+    Instant date = new Date(DATE_EPOCH).toInstant();
+
+    assertThat(endpointUtil.parseDate("Wed Sep 5 10:03:17 EDT 2018"), is(date));
+    // The zone parsed above must not carry over to the next date parsed on this thread
+    assertThat(endpointUtil.parseDate("Wed Sep 5 14:03:17 UTC 2018"), is(date));
+    assertThat(endpointUtil.parseDate("Wed Sep 5 14:03:17 2018"), nullValue());
+  }
+
   @Test
   public void testParseDateWhiteSpaceString() {
     Instant dateConverted = endpointUtil.parseDate("  ");
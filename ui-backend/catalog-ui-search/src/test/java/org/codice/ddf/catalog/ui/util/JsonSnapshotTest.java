@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * <p>This is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details. A copy of the GNU Lesser General Public
+ * License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.ddf.catalog.ui.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.gson.Gson;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+
+public class JsonSnapshotTest {
+
+  private static final Gson GSON = new Gson();
+
+  private AtomicInteger builds;
+
+  private JsonSnapshot<Map<String, Object>> snapshot;
+
+  @Before
+  public void setUp() {
+    builds = new AtomicInteger();
+    snapshot =
+        new JsonSnapshot<>(
+            () -> Collections.singletonMap("builds", builds.incrementAndGet()), GSON::toJson);
+  }
+
+  @Test
+  public void testSnapshotIsBuiltOnceUntilInvalidated() {
+    String etag = snapshot.getETag();
+    assertThat(snapshot.getJson(), is("{\"builds\":1}"));
+    assertThat(snapshot.get().get("builds"), is(1));
+    assertThat(builds.get(), is(1));
+
+    snapshot.invalidate();
+
+    assertThat(snapshot.getJson(), is("{\"builds\":2}"));
+    assertThat(snapshot.getETag(), not(etag));
+    assertThat(builds.get(), is(2));
+  }
+
+  @Test
+  public void testUnchangedPayloadKeepsETag() {
+    JsonSnapshot<String> constant = new JsonSnapshot<>(() -> "value", GSON::toJson);
+    String etag = constant.getETag();
+
+    constant.invalidate();
+
+    assertThat(constant.getETag(), is(etag));
+    assertThat(etag.startsWith("\"") && etag.endsWith("\""), is(true));
+  }
+
+  @Test
+  public void testMatchingIfNoneMatchIsNotModified() {
+    Request request = mock(Request.class);
+    Response response = mock(Response.class);
+    String etag = snapshot.getETag();
+    when(request.headers("If-None-Match")).thenReturn("\"other\", W/" + etag);
+
+    assertThat(snapshot.serve(request, response), is(""));
+    verify(response).status(304);
+    verify(response).header("ETag", etag);
+  }
+
+  @Test
+  public void testStaleIfNoneMatchIsServedJson() {
+    Request request = mock(Request.class);
+    Response response = mock(Response.class);
+    when(request.headers("If-None-Match")).thenReturn(snapshot.getETag());
+    snapshot.invalidate();
+
+    assertThat(snapshot.serve(request, response), is("{\"builds\":2}"));
+    verify(response, never()).status(anyInt());
+    verify(response).header("ETag", snapshot.getETag());
+  }
+
+  @Test
+  public void testIfNoneMatchParsing() {
+    assertThat(JsonSnapshot.matches(null, "\"a\""), is(false));
+    assertThat(JsonSnapshot.matches("\"b\"", "\"a\""), is(false));
+    assertThat(JsonSnapshot.matches("\"b\", \"a\"", "\"a\""), is(true));
+    assertThat(JsonSnapshot.matches("*", "\"a\""), is(true));
+  }
+}
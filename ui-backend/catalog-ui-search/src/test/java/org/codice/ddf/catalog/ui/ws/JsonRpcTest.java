@@ -15,10 +15,12 @@ package org.codice.ddf.catalog.ui.ws;
 
 import static org.codice.gsonsupport.GsonTypeAdapters.MAP_STRING_TO_OBJECT_TYPE;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.google.common.collect.ImmutableList;
@@ -29,6 +31,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.codice.gsonsupport.GsonTypeAdapters.LongDoubleTypeAdapter;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
@@ -44,7 +47,17 @@ public class JsonRpcTest {
           .registerTypeAdapterFactory(LongDoubleTypeAdapter.FACTORY)
           .create();
 
-  private Map<String, Function> methods = ImmutableMap.of("id", (value) -> value);
+  private Map<String, Function> methods =
+      ImmutableMap.of(
+          "id",
+          (value) -> value,
+          "progressive",
+          (ProgressiveFunction)
+              (value, progress) -> {
+                progress.accept("first");
+                progress.accept("second");
+                return value;
+              });
 
   private JsonRpc rpc = new JsonRpc(methods);
 
@@ -95,4 +108,31 @@ public class JsonRpcTest {
     assertThat(resp.get("id"), is(6L));
     assertThat(resp.get("result"), is(value));
   }
+
+  @Test
+  public void testProgressiveCall() throws Exception {
+    String message = "{\"method\":\"progressive\",\"id\":7,\"jsonrpc\":\"2.0\",\"params\":[0]}";
+    ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+    Session session = mock(Session.class);
+    RemoteEndpoint endpoint = mock(RemoteEndpoint.class);
+    doReturn(endpoint).when(session).getRemote();
+
+    rpc.onMessage(session, message);
+
+    verify(endpoint, times(3)).sendStringByFuture(captor.capture());
+    List<Map<String, Object>> sent =
+        captor
+            .getAllValues()
+            .stream()
+            .map(json -> GSON.<Map<String, Object>>fromJson(json, MAP_STRING_TO_OBJECT_TYPE))
+            .collect(Collectors.toList());
+
+    assertThat(sent.get(0).get("method"), is("progress"));
+    assertThat(sent.get(0).get("id"), is(nullValue()));
+    assertThat(((Map) sent.get(0).get("params")).get("id"), is(7L));
+    assertThat(((Map) sent.get(0).get("params")).get("result"), is("first"));
+    assertThat(((Map) sent.get(1).get("params")).get("result"), is("second"));
+    assertThat(sent.get(2).get("id"), is(7L));
+    assertThat(sent.get(2).get("result"), is(ImmutableList.of(0L)));
+  }
 }